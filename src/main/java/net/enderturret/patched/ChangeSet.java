@@ -0,0 +1,358 @@
+package net.enderturret.patched;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import net.enderturret.patched.IMutationListener.Mutation;
+import net.enderturret.patched.IMutationListener.Type;
+import net.enderturret.patched.patch.JsonPatch;
+
+/**
+ * <p>The parts of a document changed by patching, as a minimal set of subtrees ("roots") that together cover every modification.</p>
+ * <p>
+ * Replacing an element changes only that element, while adding or removing one changes its parent
+ * (adding to or removing from an array shifts the indices of everything after it, so the whole array is considered changed).
+ * Roots inside other roots are dropped.
+ * </p>
+ * <p>
+ * A change set can be used to {@linkplain #splice(String, JsonDocument, Gson) update} the previously serialized form of a document,
+ * by only serializing the changed subtrees again.
+ * </p>
+ * @author EnderTurret
+ * @see JsonPatch#patchTracked(JsonDocument, net.enderturret.patched.patch.context.PatchContext)
+ * @since 2.1.0
+ */
+public final class ChangeSet {
+
+	private static final ChangeSet EMPTY = new ChangeSet(new Node());
+
+	private final Node root;
+
+	private ChangeSet(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * @return A change set without any changes.
+	 * @since 2.1.0
+	 */
+	public static ChangeSet empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @return {@code true} if nothing was changed.
+	 * @since 2.1.0
+	 */
+	public boolean isEmpty() {
+		return !root.changed && root.children.isEmpty();
+	}
+
+	/**
+	 * @return The JSON pointers to the changed subtrees, in document order of their paths (names sorted, indices ascending).
+	 * The empty pointer {@code ""} means the whole document changed.
+	 * @since 2.1.0
+	 */
+	public List<String> roots() {
+		final List<String> ret = new ArrayList<>();
+		root.collect("", ret);
+		return Collections.unmodifiableList(ret);
+	}
+
+	/**
+	 * <p>Updates the serialized form of a document from before it was patched, by serializing only the changed subtrees again and splicing them in.</p>
+	 * <p>
+	 * The given {@code Gson} should be the one that produced {@code previous}.
+	 * If it pretty-prints, the spliced subtrees are indented to match the line they start on, which gives the same result as serializing the whole document
+	 * with Gson's pretty printing. Everything outside the changed subtrees is kept as-is, including formatting and the order of members.
+	 * </p>
+	 * @param previous The serialized form of the document before it was patched.
+	 * @param doc The patched document.
+	 * @param gson The {@code Gson} to serialize changed subtrees with.
+	 * @return The serialized form of the patched document.
+	 * @throws IllegalArgumentException If {@code previous} doesn't have the structure this change set expects, such as when it is from a different document.
+	 * @since 2.1.0
+	 */
+	public String splice(String previous, JsonDocument doc, Gson gson) {
+		if (isEmpty()) return previous;
+		if (root.changed) return gson.toJson(doc.getRoot());
+
+		final Splicer splicer = new Splicer(previous, gson);
+		final int end = splicer.skipWhitespace(splicer.visit(splicer.skipWhitespace(0), root, doc.getRoot()));
+
+		if (end != previous.length())
+			throw new IllegalArgumentException("Unexpected trailing data at " + end + "!");
+		if (splicer.visited != root.count())
+			throw new IllegalArgumentException("Previous text doesn't contain every changed element!");
+
+		splicer.out.append(previous, splicer.copied, previous.length());
+		return splicer.out.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeSet" + roots();
+	}
+
+	/**
+	 * <p>Collects modifications into a {@code ChangeSet}.</p>
+	 * <p>Recorders are not thread-safe.</p>
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static final class Recorder implements IMutationListener {
+
+		private final List<String[]> paths = new ArrayList<>();
+
+		/**
+		 * Constructs a new, empty {@code Recorder}.
+		 * @since 2.1.0
+		 */
+		public Recorder() {}
+
+		@Override
+		public void mutated(Mutation mutation) {
+			if (mutation.path() == null) {
+				// We don't know where the modification was, so assume it could have been anywhere.
+				paths.add(new String[0]);
+				return;
+			}
+
+			final String[] path = parse(mutation.path());
+			paths.add(mutation.type() == Type.REPLACE || path.length == 0 ? path : Arrays.copyOf(path, path.length - 1));
+		}
+
+		/**
+		 * @return The change set of the modifications recorded so far.
+		 * @since 2.1.0
+		 */
+		public ChangeSet toChangeSet() {
+			if (paths.isEmpty()) return EMPTY;
+
+			final List<String[]> sorted = new ArrayList<>(paths);
+			sorted.sort(Comparator.comparingInt(path -> path.length));
+
+			final Node root = new Node();
+
+			outer:
+			for (String[] path : sorted) {
+				Node node = root;
+
+				for (String segment : path) {
+					if (node.changed) continue outer;
+					node = node.children.computeIfAbsent(segment, k -> new Node());
+				}
+
+				// Paths are sorted by length, so anything inside this one can only come later.
+				node.changed = true;
+			}
+
+			return new ChangeSet(root);
+		}
+
+		private static String[] parse(String pointer) {
+			if (pointer.isEmpty()) return new String[0];
+
+			final String[] ret = pointer.substring(1).split("/", -1);
+			for (int i = 0; i < ret.length; i++)
+				ret[i] = ret[i].replace("~1", "/").replace("~0", "~");
+			return ret;
+		}
+	}
+
+	private static final class Node {
+
+		private final Map<String, Node> children = new TreeMap<>(Node::compare);
+		private boolean changed;
+
+		private void collect(String prefix, List<String> into) {
+			if (changed) {
+				into.add(prefix);
+				return;
+			}
+
+			children.forEach((name, child) -> child.collect(prefix + "/" + name.replace("~", "~0").replace("/", "~1"), into));
+		}
+
+		private int count() {
+			if (changed) return 1;
+
+			int ret = 0;
+			for (Node child : children.values())
+				ret += child.count();
+			return ret;
+		}
+
+		private static int compare(String a, String b) {
+			final boolean indexA = isIndex(a);
+			final boolean indexB = isIndex(b);
+
+			// Sort indices numerically, so that "10" comes after "9".
+			if (indexA != indexB) return indexA ? -1 : 1;
+			if (indexA && a.length() != b.length()) return Integer.compare(a.length(), b.length());
+			return a.compareTo(b);
+		}
+
+		private static boolean isIndex(String s) {
+			for (int i = 0; i < s.length(); i++)
+				if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+			return !s.isEmpty();
+		}
+	}
+
+	/**
+	 * Walks through the previous text, replacing the changed subtrees as it encounters them.
+	 */
+	private static final class Splicer {
+
+		private final String text;
+		private final Gson gson;
+		private final StringBuilder out;
+		private int copied;
+		private int visited;
+
+		private Splicer(String text, Gson gson) {
+			this.text = text;
+			this.gson = gson;
+			out = new StringBuilder(text.length() + 64);
+		}
+
+		/**
+		 * @param start The position of the value.
+		 * @param node The node of the value.
+		 * @param elem The value in the patched document.
+		 * @return The position after the value.
+		 */
+		private int visit(int start, Node node, @Nullable JsonElement elem) {
+			if (elem == null)
+				throw new IllegalArgumentException("Changed element at " + start + " is missing from the patched document!");
+
+			if (node.changed) {
+				final int end = skipValue(start);
+				out.append(text, copied, start).append(serialize(start, elem));
+				copied = end;
+				visited++;
+				return end;
+			}
+
+			final char c = charAt(start);
+
+			if (c == '{' && elem instanceof JsonObject o) {
+				int i = skipWhitespace(start + 1);
+				if (charAt(i) == '}') return i + 1;
+
+				while (true) {
+					final int keyEnd = skipString(i);
+					final String key = key(i, keyEnd);
+					final Node child = node.children.get(key);
+
+					i = skipWhitespace(keyEnd);
+					if (charAt(i) != ':') throw unexpected(i);
+					i = skipWhitespace(i + 1);
+					i = skipWhitespace(child != null ? visit(i, child, o.get(key)) : skipValue(i));
+
+					if (charAt(i) == '}') return i + 1;
+					if (charAt(i) != ',') throw unexpected(i);
+					i = skipWhitespace(i + 1);
+				}
+			}
+
+			if (c == '[' && elem instanceof JsonArray a) {
+				int i = skipWhitespace(start + 1);
+				if (charAt(i) == ']') return i + 1;
+
+				for (int index = 0;; index++) {
+					final Node child = node.children.get(Integer.toString(index));
+					i = skipWhitespace(child != null ? visit(i, child, index < a.size() ? a.get(index) : null) : skipValue(i));
+
+					if (charAt(i) == ']') return i + 1;
+					if (charAt(i) != ',') throw unexpected(i);
+					i = skipWhitespace(i + 1);
+				}
+			}
+
+			throw new IllegalArgumentException("Previous text at " + start + " doesn't have the same structure as the patched document!");
+		}
+
+		private String serialize(int start, JsonElement elem) {
+			final String json = gson.toJson(elem);
+			if (json.indexOf('\n') == -1) return json;
+
+			// Indent to match the line the value starts on.
+			final int lineStart = text.lastIndexOf('\n', start - 1) + 1;
+			int indentEnd = lineStart;
+			while (indentEnd < start && (text.charAt(indentEnd) == ' ' || text.charAt(indentEnd) == '\t')) indentEnd++;
+
+			return json.replace("\n", "\n" + text.substring(lineStart, indentEnd));
+		}
+
+		private String key(int start, int end) {
+			final String raw = text.substring(start + 1, end - 1);
+			return raw.indexOf('\\') == -1 ? raw : JsonParser.parseString(text.substring(start, end)).getAsString();
+		}
+
+		private int skipValue(int start) {
+			final char c = charAt(start);
+			if (c == '"') return skipString(start);
+
+			if (c == '{' || c == '[') {
+				int depth = 0;
+
+				for (int i = start; i < text.length(); i++) {
+					final char ch = text.charAt(i);
+					if (ch == '"') i = skipString(i) - 1;
+					else if (ch == '{' || ch == '[') depth++;
+					else if ((ch == '}' || ch == ']') && --depth == 0) return i + 1;
+				}
+
+				throw unexpected(text.length());
+			}
+
+			// Numbers, booleans and null.
+			int i = start;
+			while (i < text.length() && ",}] \t\r\n".indexOf(text.charAt(i)) == -1) i++;
+			if (i == start) throw unexpected(start);
+			return i;
+		}
+
+		private int skipString(int start) {
+			if (charAt(start) != '"') throw unexpected(start);
+
+			for (int i = start + 1; i < text.length(); i++) {
+				final char c = text.charAt(i);
+				if (c == '\\') i++;
+				else if (c == '"') return i + 1;
+			}
+
+			throw unexpected(text.length());
+		}
+
+		private int skipWhitespace(int start) {
+			int i = start;
+			while (i < text.length() && " \t\r\n".indexOf(text.charAt(i)) != -1) i++;
+			return i;
+		}
+
+		private char charAt(int i) {
+			if (i >= text.length()) throw unexpected(i);
+			return text.charAt(i);
+		}
+
+		private IllegalArgumentException unexpected(int i) {
+			return new IllegalArgumentException(i >= text.length() ? "Unexpected end of previous text!" : "Unexpected '" + text.charAt(i) + "' in previous text at " + i + "!");
+		}
+	}
+}
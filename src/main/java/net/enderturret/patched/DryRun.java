@@ -0,0 +1,32 @@
+package net.enderturret.patched;
+
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patched.IMutationListener.Mutation;
+import net.enderturret.patched.patch.JsonPatch;
+
+/**
+ * <p>The outcome of {@linkplain JsonPatch#dryRun(JsonDocument, net.enderturret.patched.patch.context.PatchContext) trying} a patch against a document without keeping its changes.</p>
+ * <p>
+ * The elements in the mutations are the ones that were in the document while the patch was being tried:
+ * {@linkplain Mutation#oldValue() old values} are back in the document, and {@linkplain Mutation#newValue() new values} are no longer part of it.
+ * Neither should be modified.
+ * </p>
+ * @param failure The exception the patch threw, or {@code null} if it would apply successfully.
+ * @param mutations Every modification the patch would make (up to the point of failure, if it fails), in order.
+ * @param changes The parts of the document the patch would change.
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+public record DryRun(@Nullable RuntimeException failure, List<Mutation> mutations, ChangeSet changes) {
+
+	/**
+	 * @return {@code true} if the patch would apply successfully.
+	 * @since 2.1.0
+	 */
+	public boolean succeeded() {
+		return failure == null;
+	}
+}
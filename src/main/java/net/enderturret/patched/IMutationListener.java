@@ -0,0 +1,68 @@
+package net.enderturret.patched;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonElement;
+
+import net.enderturret.patched.patch.PatchUtil;
+import net.enderturret.patched.patch.context.ConfigurablePatchContext;
+
+/**
+ * <p>Receives every modification made to documents while patching, so that anything derived from them can be updated incrementally.</p>
+ * <p>
+ * Every element added, replaced or removed through {@link PatchUtil#applyAdd(net.enderturret.patched.patch.context.ElementContext, JsonElement, boolean)}
+ * or {@link PatchUtil#applyRemove(net.enderturret.patched.patch.context.ElementContext)} is reported, which covers every built-in patch
+ * ({@code move} patches are reported as a removal followed by an addition).
+ * Mutations are reported in the order they happen, after they happen.
+ * </p>
+ * @author EnderTurret
+ * @see ConfigurablePatchContext#mutationListener(IMutationListener)
+ * @since 2.1.0
+ */
+@FunctionalInterface
+public interface IMutationListener {
+
+	/**
+	 * Called after a document has been modified.
+	 * @param mutation The modification.
+	 * @since 2.1.0
+	 */
+	public void mutated(Mutation mutation);
+
+	/**
+	 * The kinds of modification.
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static enum Type {
+		/**
+		 * An element was added to an object or inserted into an array.
+		 * @since 2.1.0
+		 */
+		ADD,
+		/**
+		 * An element was replaced, including adding to an object over an existing element, and replacing the root of a document.
+		 * @since 2.1.0
+		 */
+		REPLACE,
+		/**
+		 * An element was removed from an object or array.
+		 * @since 2.1.0
+		 */
+		REMOVE;
+	}
+
+	/**
+	 * <p>A single modification of a document.</p>
+	 * <p>The elements are the ones in (or formerly in) the document, so they must not be modified.</p>
+	 * @param type The kind of modification.
+	 * @param doc The modified document, or {@code null} if it isn't known.
+	 * @param path The JSON pointer to the modified element in the document, or {@code null} if it isn't known.
+	 * Indices in the path are the ones at the time of the modification.
+	 * @param oldValue The element before the modification, or {@code null} for additions.
+	 * @param newValue The element after the modification, or {@code null} for removals.
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static record Mutation(Type type, @Nullable JsonDocument doc, @Nullable String path, @Nullable JsonElement oldValue, @Nullable JsonElement newValue) {}
+}
@@ -0,0 +1,69 @@
+package net.enderturret.patched;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patched.audit.PatchAudit;
+import net.enderturret.patched.metrics.PatchMetrics;
+import net.enderturret.patched.patch.IncludePatch;
+import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.context.ConfigurablePatchContext;
+
+/**
+ * <p>Receives measurements about patches as they are applied, to find out where patching time goes.</p>
+ * <p>
+ * An event is recorded for every patch applied (except compound patches, which are just lists of other patches), and for every test evaluated.
+ * Events are only recorded for patches applied through {@link JsonPatch#patch(JsonDocument, net.enderturret.patched.patch.context.PatchContext)},
+ * {@link Patches#applyPatch(com.google.gson.Gson, java.io.Reader, JsonDocument, net.enderturret.patched.patch.context.PatchContext)}
+ * or {@link net.enderturret.patched.patch.PatchUtil#apply(JsonPatch, net.enderturret.patched.patch.context.ElementContext, net.enderturret.patched.patch.context.PatchContext)},
+ * and for everything they apply in turn.
+ * </p>
+ * <p>
+ * If no listener is installed, nothing is measured at all. Listeners may be called from several threads at once if {@code find} patches run in parallel,
+ * so they must be thread-safe. See {@link PatchMetrics} for a ready-made listener that aggregates events.
+ * </p>
+ * @author EnderTurret
+ * @see ConfigurablePatchContext#metrics(IPatchMetrics)
+ * @since 2.1.0
+ */
+@FunctionalInterface
+public interface IPatchMetrics {
+
+	/**
+	 * Records the given event.
+	 * @param event The event.
+	 * @since 2.1.0
+	 */
+	public void record(PatchEvent event);
+
+	/**
+	 * <p>Returns whether this listener wants {@linkplain PatchEvent#allocated() allocations} to be measured.</p>
+	 * <p>Measuring allocations queries the JVM twice per patch, so it is only done when asked for.</p>
+	 * @return {@code true} if allocations should be measured.
+	 * @since 2.1.0
+	 */
+	public default boolean measuresAllocations() {
+		return false;
+	}
+
+	/**
+	 * <p>Measurements about a single patch application or test evaluation.</p>
+	 * <p>
+	 * Measurements are inclusive: the time, traversals and copies of a patch include those of any patches it applies in turn,
+	 * such as the patches applied by a {@code find} patch, which are recorded as events of their own too.
+	 * </p>
+	 * @param operation The operation of the patch, such as {@code add} or {@code test}.
+	 * @param path The path of the patch, or {@code null} if it doesn't have one (such as {@code include} patches).
+	 * @param source The path of the {@linkplain IncludePatch included patch} the patch came from, or else the {@linkplain PatchAudit#getPatchPath() audit's patch path},
+	 * or {@code null} if neither is known.
+	 * @param depth How deeply nested the patch is within its source. Patches at depth {@code 0} are not part of any other recorded patch from the same source.
+	 * @param nanos The time spent, in nanoseconds.
+	 * @param allocated The number of bytes allocated by the applying thread, or {@code 0} if allocations {@linkplain #measuresAllocations() weren't measured}
+	 * or the JVM can't measure them. Allocations made by other threads (such as those patching children of a parallel {@code find}) are not included.
+	 * @param traversed The number of path segments traversed.
+	 * @param copied The number of elements deep-copied into the document.
+	 * @param testResult Whether the test passed, or {@code null} if this isn't a test (or it threw an exception).
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static record PatchEvent(String operation, @Nullable String path, @Nullable String source, int depth, long nanos, long allocated, long traversed, long copied, @Nullable Boolean testResult) {}
+}
@@ -33,4 +33,69 @@ public interface ITestEvaluator {
 	 * @since 1.1.0
 	 */
 	public boolean test(JsonElement root, String type, @Nullable JsonElement target, @Nullable JsonElement value, PatchContext context);
+
+	/**
+	 * <p>Prepares a custom condition ahead of time, so that it doesn't need to be looked up and interpreted every time it is tested.</p>
+	 * <p>
+	 * Each {@code test} patch compiles its condition once per evaluator, the first time it is tested (or when
+	 * {@linkplain net.enderturret.patched.patch.PatchUtil#compileTests(net.enderturret.patched.patch.JsonPatch, ITestEvaluator) compiled explicitly}),
+	 * and uses the result from then on. By default, this returns a test that calls {@link #test(JsonElement, String, JsonElement, JsonElement, PatchContext)}.
+	 * </p>
+	 * <p>If tests of this type are {@linkplain #isSideEffectFree(String) side-effect-free}, the compiled test must be thread-safe.</p>
+	 * @param type The {@code test} patch's type, as specified in the {@code type} field.
+	 * @param value The value, as in {@link #test(JsonElement, String, JsonElement, JsonElement, PatchContext)}. May be {@code null}.
+	 * @return The compiled test.
+	 * @since 2.1.0
+	 */
+	public default CompiledTest compile(String type, @Nullable JsonElement value) {
+		return (root, target, context) -> test(root, type, target, value, context);
+	}
+
+	/**
+	 * <p>Returns whether tests of the given type only depend on their arguments and do not modify anything.</p>
+	 * <p>
+	 * Evaluators returning {@code true} for a type may be called from several threads at once for that type,
+	 * which allows {@code find} patches to test the children of large arrays and objects in parallel.
+	 * See {@link PatchContext#parallelFindThreshold()}.
+	 * </p>
+	 * @param type The test type, as specified in the {@code type} field.
+	 * @return {@code true} if tests of this type are side-effect-free and may be evaluated concurrently. Defaults to {@code false}.
+	 * @since 2.1.0
+	 */
+	public default boolean isSideEffectFree(String type) {
+		return false;
+	}
+
+	/**
+	 * <p>Returns whether tests of the given type give the same result for every document and every element.</p>
+	 * <p>
+	 * This is meant for "global" conditions, such as whether some feature is enabled. Such tests are evaluated
+	 * {@linkplain net.enderturret.patched.patch.PatchUtil#fold(net.enderturret.patched.patch.JsonPatch, PatchContext) ahead of time}
+	 * when they have no {@code path}, with a {@linkplain com.google.gson.JsonNull JSON null} root and a {@code null} target.
+	 * </p>
+	 * @param type The test type, as specified in the {@code type} field.
+	 * @return {@code true} if the result of tests of this type only depends on their {@code value}. Defaults to {@code false}.
+	 * @since 2.1.0
+	 */
+	public default boolean isDocumentIndependent(String type) {
+		return false;
+	}
+
+	/**
+	 * A custom condition {@linkplain ITestEvaluator#compile(String, JsonElement) prepared} for a specific type and value.
+	 * @since 2.1.0
+	 */
+	@FunctionalInterface
+	public static interface CompiledTest {
+
+		/**
+		 * Determines whether the condition succeeds.
+		 * @param root The root element.
+		 * @param target The target element. May be {@code null}.
+		 * @param context The patch context.
+		 * @return {@code true} if the test succeeds, {@code false} otherwise.
+		 * @since 2.1.0
+		 */
+		public boolean test(JsonElement root, @Nullable JsonElement target, PatchContext context);
+	}
 }
\ No newline at end of file
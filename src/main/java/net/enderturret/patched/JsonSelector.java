@@ -7,6 +7,7 @@ import net.enderturret.patched.audit.PatchAudit;
 import net.enderturret.patched.exception.TraversalException;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.ElementContexts;
+import net.enderturret.patched.patch.context.PlaceholderSlots;
 
 /**
  * <p>
@@ -259,15 +260,40 @@ public interface JsonSelector {
 	 * @param placeholder The name of the placeholder.
 	 * @author EnderTurret
 	 * @param raw The 'raw' version of the placeholder.
+	 * @param slot The {@linkplain PlaceholderSlots slot} of the placeholder, or {@link PlaceholderSlots#NONE} if it doesn't have one.
 	 * @since 2.0.0
 	 */
-	public static record PlaceholderSelector(String placeholder, String raw) implements JsonSelector {
+	public static record PlaceholderSelector(String placeholder, String raw, int slot) implements JsonSelector {
+
+		/**
+		 * Constructs a new placeholder selector.
+		 * @param placeholder The name of the placeholder.
+		 * @param raw The 'raw' version of the placeholder.
+		 * @param slot The {@linkplain PlaceholderSlots slot} of the placeholder.
+		 * @throws IllegalArgumentException If {@code slot} isn't the slot of the placeholder.
+		 * @since 2.1.0
+		 */
+		public PlaceholderSelector {
+			if (slot != PlaceholderSlots.slot(placeholder))
+				throw new IllegalArgumentException("Placeholder " + placeholder + " does not have slot " + slot + "!");
+		}
+
+		/**
+		 * Constructs a new placeholder selector, looking up the slot of the placeholder.
+		 * @param placeholder The name of the placeholder.
+		 * @param raw The 'raw' version of the placeholder.
+		 * @since 2.0.0
+		 */
+		public PlaceholderSelector(String placeholder, String raw) {
+			this(placeholder, raw, PlaceholderSlots.slot(placeholder));
+		}
+
 		@Override
 		public ElementContext select(ElementContext context, boolean throwOnError, TraversalMode mode) throws TraversalException {
 			if (context == null)
 				return error(throwOnError, "Attempted to traverse null context!");
 
-			final JsonSelector selector = context.getPlaceholder(placeholder);
+			final JsonSelector selector = binding(context);
 			if (selector == null) {
 				if (context.elem() instanceof JsonObject obj) {
 					if (mode.strictHas() && !obj.has(raw))
@@ -289,9 +315,13 @@ public interface JsonSelector {
 
 		@Override
 		public String toAuditString(ElementContext context) {
-			final JsonSelector selector = context.getPlaceholder(placeholder);
+			final JsonSelector selector = binding(context);
 			return selector == null ? toString() : selector.toAuditString(context);
 		}
+
+		private JsonSelector binding(ElementContext context) {
+			return slot != PlaceholderSlots.NONE ? context.getPlaceholder(slot) : context.getPlaceholder(placeholder);
+		}
 	}
 
 	/**
@@ -356,6 +386,9 @@ public interface JsonSelector {
 				ElementContext ctx = context;
 				if (absolute) ctx = new ElementContexts.Document(ctx, ctx.doc());
 
+				if (context.context().metrics() != null && context.session() != null)
+					context.session().counters().countTraversed(path.length);
+
 				for (int i = 0; i < path.length; i++) {
 					ctx = path[i].select(ctx, throwOnError, i < path.length - 1 ? TraversalMode.NORMAL : mode);
 					if (ctx == null) return null; // Avoid invoking more selectors if we've encountered a soft error.
@@ -0,0 +1,511 @@
+package net.enderturret.patched;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.exception.PatchingException;
+import net.enderturret.patched.exception.TraversalException;
+import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.ElementContexts;
+import net.enderturret.patched.patch.context.ImmutablePatchContext;
+import net.enderturret.patched.patch.context.PatchContext;
+
+/**
+ * <p>A document that is only parsed as far as it needs to be.</p>
+ * <p>
+ * The document starts out as its UTF-8 source. When a patch is {@linkplain #patch(JsonPatch, PatchContext) applied},
+ * only the parts of the document that the patch can {@linkplain JsonPatch#footprint(ITestEvaluator) look at or modify} are loaded:
+ * the objects along the way are indexed (the positions of their members in the source), and only the elements the patch reaches are parsed.
+ * Arrays along the way are loaded fully, since adding or removing an element shifts the ones after it;
+ * this way, neither patches nor their error messages ever see anything that wasn't loaded.
+ * Patches that may look at anything, such as ones with placeholders or custom tests, load the whole document.
+ * </p>
+ * <p>
+ * When {@linkplain #write(OutputStream) writing} the document, everything that wasn't modified is copied from the source byte for byte,
+ * including its formatting. Objects and arrays that were modified (or contain modified elements) are written compactly,
+ * except for their unmodified members. Syntax errors in parts of the source that are never loaded are not detected.
+ * </p>
+ * <p>Lazy documents are not thread-safe.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+public final class LazyDocument {
+
+	private static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+	private final byte[] source;
+	private final JsonDocument doc;
+
+	/**
+	 * The regions of the source that elements were loaded from, including unloaded ones. Elements not in here were added by patches.
+	 */
+	private final Map<JsonElement, Span> spans = new IdentityHashMap<>();
+
+	/**
+	 * Stand-ins for elements that haven't been loaded yet.
+	 */
+	private final Set<JsonElement> unloaded = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Objects and arrays with unloaded members.
+	 */
+	private final Set<JsonElement> partial = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Objects and arrays that were modified, or contain modified elements.
+	 */
+	private final Set<JsonElement> modified = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Whether something was modified at an unknown location, in which case every loaded object and array is considered modified.
+	 */
+	private boolean modifiedAnywhere;
+
+	private LazyDocument(byte[] source) {
+		this.source = source;
+		doc = new JsonDocument(JsonNull.INSTANCE);
+	}
+
+	/**
+	 * Constructs a new {@code LazyDocument} from the given source, without parsing it.
+	 * @param utf8 The UTF-8 encoded source of the document. It should not be modified afterwards.
+	 * @return The document.
+	 * @throws JsonSyntaxException If the source doesn't contain exactly one value.
+	 * @since 2.1.0
+	 */
+	public static LazyDocument of(byte[] utf8) throws JsonSyntaxException {
+		final LazyDocument ret = new LazyDocument(utf8);
+		final int start = ret.skipWhitespace(0);
+		final int end = ret.skipValue(start);
+
+		if (ret.skipWhitespace(end) != utf8.length)
+			throw ret.unexpected(ret.skipWhitespace(end));
+
+		ret.doc.setRoot(ret.unloaded(new Span(start, end)));
+		return ret;
+	}
+
+	/**
+	 * Applies the given patch to this document, loading the parts of it the patch needs first.
+	 * @param patch The patch to apply.
+	 * @param context The {@link PatchContext}. If it has a {@linkplain PatchContext#mutationListener() mutation listener}, it is still told about every modification.
+	 * @throws PatchingException If the patch could not be applied for some reason. The document may have been partially modified.
+	 * @throws TraversalException If a path in the patch could not be traversed.
+	 * @throws JsonSyntaxException If a part of the source that had to be loaded is malformed.
+	 * @since 2.1.0
+	 */
+	public void patch(JsonPatch patch, PatchContext context) throws PatchingException, TraversalException, JsonSyntaxException {
+		final List<JsonSelector[]> footprint = patch.footprint(context.testEvaluator());
+
+		if (footprint == null)
+			loadAt(doc.getRoot(), doc::setRoot, true);
+		else
+			for (JsonSelector[] path : footprint)
+				load(path);
+
+		final IMutationListener listener = context.mutationListener();
+
+		patch.patch(doc, ImmutablePatchContext.newContext(context).mutationListener(mutation -> {
+			modified(mutation.path());
+			if (listener != null) listener.mutated(mutation);
+		}));
+	}
+
+	/**
+	 * Loads and returns the element at the given path.
+	 * The element should not be modified; use {@link #patch(JsonPatch, PatchContext)} instead, so that the modifications are written.
+	 * @param path The JSON pointer to the element.
+	 * @return The element, or {@code null} if there is no such element.
+	 * @throws TraversalException If the path isn't a valid JSON pointer, is {@linkplain JsonSelector.CompoundSelector#absolute() absolute}, or contains placeholders.
+	 * @throws JsonSyntaxException If the part of the source the element is in is malformed.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public JsonElement get(String path) throws TraversalException, JsonSyntaxException {
+		final JsonSelector.CompoundSelector selector = JsonSelector.of(path);
+		if (selector.absolute())
+			throw new TraversalException("Absolute paths are not supported!");
+
+		for (JsonSelector part : selector.path())
+			if (!(part instanceof JsonSelector.NameSelector) && !(part instanceof NumericSelector))
+				throw new TraversalException("Cannot load non-static path " + path + "!");
+
+		load(selector.path());
+
+		final ElementContext ctx = selector.select(new ElementContexts.Document(ImmutablePatchContext.newContext(), null, doc), false);
+		return ctx == null ? null : ctx.elem();
+	}
+
+	/**
+	 * Writes this document in UTF-8, copying everything that wasn't modified from the source.
+	 * @param out The stream to write to.
+	 * @throws IOException If writing fails.
+	 * @since 2.1.0
+	 */
+	public void write(OutputStream out) throws IOException {
+		if (!isModified(doc.getRoot()) && spans.containsKey(doc.getRoot())) {
+			out.write(source);
+			return;
+		}
+
+		final JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		write(writer, doc.getRoot());
+		writer.flush();
+	}
+
+	/**
+	 * @return The UTF-8 encoded form of this document. See {@link #write(OutputStream)}.
+	 * @since 2.1.0
+	 */
+	public byte[] toByteArray() {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(source.length + 64);
+
+		try {
+			write(out);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // ByteArrayOutputStream doesn't throw.
+		}
+
+		return out.toByteArray();
+	}
+
+	@Override
+	public String toString() {
+		return new String(toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private void write(JsonWriter writer, JsonElement elem) throws IOException {
+		final Span span = spans.get(elem);
+
+		if (span != null && !isModified(elem))
+			writer.jsonValue(new String(source, span.start, span.end - span.start, StandardCharsets.UTF_8));
+		else if (elem instanceof JsonObject obj) {
+			writer.beginObject();
+			for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+				writer.name(entry.getKey());
+				write(writer, entry.getValue());
+			}
+			writer.endObject();
+		} else if (elem instanceof JsonArray arr) {
+			writer.beginArray();
+			for (JsonElement child : arr)
+				write(writer, child);
+			writer.endArray();
+		} else
+			ELEMENT_ADAPTER.write(writer, elem);
+	}
+
+	private boolean isModified(JsonElement elem) {
+		return modifiedAnywhere ? !unloaded.contains(elem) : modified.contains(elem);
+	}
+
+	/**
+	 * Marks everything from the root to the parent of the element at the given path as modified.
+	 * @param pointer The JSON pointer to the modified element, or {@code null} if it isn't known.
+	 */
+	private void modified(@Nullable String pointer) {
+		if (pointer == null) {
+			modifiedAnywhere = true;
+			return;
+		}
+
+		// Replacing the root leaves nothing from the source to mark.
+		if (pointer.isEmpty()) return;
+
+		final String[] segments = pointer.substring(1).split("/", -1);
+		JsonElement elem = doc.getRoot();
+
+		for (int i = 0; i < segments.length; i++) {
+			modified.add(elem);
+			if (i == segments.length - 1) break;
+
+			final String name = segments[i].replace("~1", "/").replace("~0", "~");
+			elem = elem instanceof JsonObject obj ? obj.get(name) : elem instanceof JsonArray arr ? arr.get(Integer.parseInt(name)) : null;
+
+			if (elem == null) {
+				modifiedAnywhere = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Loads everything inside the given path, as well as the objects and arrays leading up to it.
+	 * @param path The path, made of {@link JsonSelector.NameSelector}s and {@link NumericSelector}s.
+	 */
+	private void load(JsonSelector[] path) {
+		JsonElement elem = loadAt(doc.getRoot(), doc::setRoot, path.length == 0 || isArray(doc.getRoot()));
+
+		for (int i = 0; i < path.length; i++) {
+			final boolean last = i == path.length - 1;
+
+			// Arrays are always loaded fully, so only objects can have unloaded members.
+			if (elem instanceof JsonObject obj) {
+				final String name = path[i] instanceof NumericSelector num ? num.strIndex() : ((JsonSelector.NameSelector) path[i]).name();
+				final JsonElement child = obj.get(name);
+				if (child == null) return;
+
+				elem = loadAt(child, value -> obj.add(name, value), last || isArray(child));
+			} else
+				return; // The patch will fail to traverse this path on its own, or it's already loaded.
+		}
+	}
+
+	private boolean isArray(JsonElement elem) {
+		return elem instanceof JsonArray || unloaded.contains(elem) && source[spans.get(elem).start] == '[';
+	}
+
+	/**
+	 * Loads the given element if it is unloaded, replacing it with the loaded version.
+	 * @param elem The element.
+	 * @param replace Replaces the element in its parent.
+	 * @param fully {@code true} to load everything inside the element, or {@code false} to only index it.
+	 * @return The loaded element.
+	 */
+	private JsonElement loadAt(JsonElement elem, Consumer<JsonElement> replace, boolean fully) {
+		// Nothing is forgotten until loading succeeds, so that malformed parts stay as they were.
+		if (unloaded.contains(elem)) {
+			final Span span = spans.get(elem);
+			final JsonElement loaded = fully ? parse(span) : index(span);
+			unloaded.remove(elem);
+			spans.remove(elem);
+			replace.accept(loaded);
+			return loaded;
+		}
+
+		if (fully && partial.contains(elem)) {
+			if (elem instanceof JsonObject obj)
+				for (String name : new ArrayList<>(obj.keySet()))
+					loadAt(obj.get(name), value -> obj.add(name, value), true);
+			else if (elem instanceof JsonArray arr)
+				for (int i = 0; i < arr.size(); i++) {
+					final int index = i;
+					loadAt(arr.get(i), value -> arr.set(index, value), true);
+				}
+
+			partial.remove(elem);
+		}
+
+		return elem;
+	}
+
+	/**
+	 * Loads the object or array at the given span, leaving its members unloaded.
+	 */
+	private JsonElement index(Span span) {
+		final List<String> names = new ArrayList<>();
+		final List<Span> members = members(span.start, names);
+		if (members == null) return parse(span);
+
+		final JsonElement ret;
+
+		if (source[span.start] == '{') {
+			final JsonObject obj = new JsonObject();
+			for (int i = 0; i < members.size(); i++)
+				obj.add(names.get(i), unloaded(members.get(i)));
+			ret = obj;
+		} else {
+			final JsonArray arr = new JsonArray(members.size());
+			for (Span member : members)
+				arr.add(unloaded(member));
+			ret = arr;
+		}
+
+		spans.put(ret, span);
+		if (!members.isEmpty()) partial.add(ret);
+		return ret;
+	}
+
+	/**
+	 * Loads the element at the given span, including everything inside it.
+	 */
+	private JsonElement parse(Span span) {
+		final List<String> names = new ArrayList<>();
+		final List<Span> members = members(span.start, names);
+		final JsonElement ret;
+
+		if (members == null) {
+			ret = primitive(span);
+			if (ret == JsonNull.INSTANCE) return ret; // It's a singleton, so it can't be told apart from other nulls.
+		} else if (source[span.start] == '{') {
+			final JsonObject obj = new JsonObject();
+			for (int i = 0; i < members.size(); i++)
+				obj.add(names.get(i), parse(members.get(i)));
+			ret = obj;
+		} else {
+			final JsonArray arr = new JsonArray(members.size());
+			for (Span member : members)
+				arr.add(parse(member));
+			ret = arr;
+		}
+
+		spans.put(ret, span);
+		return ret;
+	}
+
+	private JsonElement primitive(Span span) {
+		final String text = new String(source, span.start, span.end - span.start, StandardCharsets.UTF_8);
+		final byte first = source[span.start];
+
+		if (first == '"')
+			return text.indexOf('\\') == -1 ? new JsonPrimitive(text.substring(1, text.length() - 1)) : JsonParser.parseString(text);
+		if (first == '-' || first >= '0' && first <= '9')
+			return number(text, span.start);
+
+		return switch (text) {
+			case "true" -> new JsonPrimitive(true);
+			case "false" -> new JsonPrimitive(false);
+			case "null" -> JsonNull.INSTANCE;
+			default -> throw unexpected(span.start);
+		};
+	}
+
+	private static JsonElement number(String text, int start) {
+		// Values are only skipped over when indexing, so this is the first time the number is checked.
+		// The reader isn't lenient, so anything that isn't a valid number is rejected instead of being read as a string.
+		final JsonReader reader = new JsonReader(new StringReader(text));
+
+		try {
+			if (reader.peek() == JsonToken.NUMBER) {
+				final JsonElement ret = ELEMENT_ADAPTER.read(reader);
+				if (reader.peek() == JsonToken.END_DOCUMENT) return ret;
+			}
+		} catch (IOException e) {
+			throw new JsonSyntaxException("Malformed number '" + text + "' at byte " + start + "!", e);
+		}
+
+		throw new JsonSyntaxException("Malformed number '" + text + "' at byte " + start + "!");
+	}
+
+	private JsonElement unloaded(Span span) {
+		// Each stand-in is a different instance, so that it can be told apart from the others.
+		// Patches never reach stand-ins, since everything a patch can reach is loaded before it is applied.
+		final JsonElement ret = new JsonObject();
+		spans.put(ret, span);
+		unloaded.add(ret);
+		return ret;
+	}
+
+	/**
+	 * Indexes the object or array at the given position.
+	 * @param start The position of the object or array.
+	 * @param names The list to add the names of the members of an object to.
+	 * @return The spans of the members, or {@code null} if the value at the given position isn't an object or array.
+	 */
+	@Nullable
+	private List<Span> members(int start, List<String> names) {
+		final byte open = byteAt(start);
+		if (open != '{' && open != '[') return null;
+
+		final byte close = (byte) (open == '{' ? '}' : ']');
+		final List<Span> ret = new ArrayList<>();
+
+		int i = skipWhitespace(start + 1);
+		if (byteAt(i) == close) return ret;
+
+		while (true) {
+			if (open == '{') {
+				final int nameEnd = skipString(i);
+				names.add(name(i, nameEnd));
+				i = skipWhitespace(nameEnd);
+				if (byteAt(i) != ':') throw unexpected(i);
+				i = skipWhitespace(i + 1);
+			}
+
+			final int end = skipValue(i);
+			ret.add(new Span(i, end));
+			i = skipWhitespace(end);
+
+			if (byteAt(i) == close) return ret;
+			if (byteAt(i) != ',') throw unexpected(i);
+			i = skipWhitespace(i + 1);
+		}
+	}
+
+	private String name(int start, int end) {
+		final String raw = new String(source, start, end - start, StandardCharsets.UTF_8);
+		return raw.indexOf('\\') == -1 ? raw.substring(1, raw.length() - 1) : JsonParser.parseString(raw).getAsString();
+	}
+
+	private int skipValue(int start) {
+		final byte b = byteAt(start);
+		if (b == '"') return skipString(start);
+
+		if (b == '{' || b == '[') {
+			int depth = 0;
+
+			for (int i = start; i < source.length; i++) {
+				final byte c = source[i];
+				if (c == '"') i = skipString(i) - 1;
+				else if (c == '{' || c == '[') depth++;
+				else if ((c == '}' || c == ']') && --depth == 0) return i + 1;
+			}
+
+			throw unexpected(source.length);
+		}
+
+		// Numbers, booleans and null.
+		int i = start;
+		while (i < source.length && ",:{}[]\" \t\r\n".indexOf(source[i]) == -1) i++;
+		if (i == start) throw unexpected(start);
+		return i;
+	}
+
+	private int skipString(int start) {
+		if (byteAt(start) != '"') throw unexpected(start);
+
+		// Multi-byte UTF-8 sequences never contain bytes that look like quotes or backslashes.
+		for (int i = start + 1; i < source.length; i++) {
+			final byte b = source[i];
+			if (b == '\\') i++;
+			else if (b == '"') return i + 1;
+		}
+
+		throw unexpected(source.length);
+	}
+
+	private int skipWhitespace(int start) {
+		int i = start;
+		while (i < source.length && (source[i] == ' ' || source[i] == '\t' || source[i] == '\r' || source[i] == '\n')) i++;
+		return i;
+	}
+
+	private byte byteAt(int i) {
+		if (i >= source.length) throw unexpected(i);
+		return source[i];
+	}
+
+	private JsonSyntaxException unexpected(int i) {
+		return new JsonSyntaxException(i >= source.length ? "Unexpected end of document!" : "Unexpected '" + (char) (source[i] & 0xFF) + "' at byte " + i + "!");
+	}
+
+	private static record Span(int start, int end) {}
+}
@@ -1,13 +1,30 @@
 package net.enderturret.patched;
 
+import java.io.IOException;
 import java.io.Reader;
 
+import org.jetbrains.annotations.Nullable;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
 import net.enderturret.patched.exception.PatchingException;
+import net.enderturret.patched.exception.TraversalException;
+import net.enderturret.patched.patch.CompoundPatch;
 import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.JsonPatchAdapter;
+import net.enderturret.patched.patch.PatchInterner;
+import net.enderturret.patched.patch.PatchUtil;
+import net.enderturret.patched.patch.TestPatch;
+import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.ElementContexts;
 import net.enderturret.patched.patch.context.PatchContext;
 
 /**
@@ -20,15 +37,29 @@ public final class Patches {
 	private Patches() {}
 
 	/**
-	 * Creates a {@link GsonBuilder} configured to serialize and deserialize patches with the given extensions enabled or disabled.
+	 * <p>Creates a {@link GsonBuilder} configured to serialize and deserialize patches with the given extensions enabled or disabled.</p>
+	 * <p>As of 2.1.0, patches are read using the streaming {@link JsonPatchAdapter} rather than {@link JsonPatch.Serializer}.</p>
 	 * @param testExtensions Whether extensions to the {@code test} operation are enabled. See {@link PatchContext}.
 	 * @param patchedExtensions Whether extensions from this library are enabled. See {@link PatchContext}.
 	 * @return The created {@code GsonBuilder}.
 	 * @since 1.0.0
 	 */
 	public static GsonBuilder patchGson(boolean testExtensions, boolean patchedExtensions) {
+		return patchGson(testExtensions, patchedExtensions, null);
+	}
+
+	/**
+	 * <p>Creates a {@link GsonBuilder} configured to serialize and deserialize patches with the given extensions enabled or disabled.</p>
+	 * <p>Patches read using the resulting {@link Gson} share their paths and values through the given {@link PatchInterner}.</p>
+	 * @param testExtensions Whether extensions to the {@code test} operation are enabled. See {@link PatchContext}.
+	 * @param patchedExtensions Whether extensions from this library are enabled. See {@link PatchContext}.
+	 * @param interner The interner used to deduplicate patches, or {@code null} to disable interning.
+	 * @return The created {@code GsonBuilder}.
+	 * @since 2.1.0
+	 */
+	public static GsonBuilder patchGson(boolean testExtensions, boolean patchedExtensions, @Nullable PatchInterner interner) {
 		return new GsonBuilder()
-				.registerTypeHierarchyAdapter(JsonPatch.class, new JsonPatch.Serializer(testExtensions, patchedExtensions))
+				.registerTypeHierarchyAdapter(JsonPatch.class, new JsonPatchAdapter(null, false, testExtensions, patchedExtensions, interner))
 				.serializeNulls();
 	}
 
@@ -77,4 +108,72 @@ public final class Patches {
 	public static JsonPatch readPatch(Gson gson, JsonElement elem) throws PatchingException {
 		return gson.fromJson(elem, JsonPatch.class);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * <p>Reads a patch from the given reader and applies it to the given document, one operation at a time.</p>
+	 * <p>
+	 * If the patch is an array of patches, each patch is applied as soon as it has been read, instead of first reading the whole array into a {@link CompoundPatch}.
+	 * This means the memory used is independent of the number of patches in the array.
+	 * The result is otherwise the same as reading the patch using {@link #readPatch(Gson, Reader)} and then applying it.
+	 * In particular, a failing {@link TestPatch} stops the application of any further patches.
+	 * </p>
+	 * <p>
+	 * Note that since patches are applied while reading, any patches preceding a malformed one will already have been applied by the time the exception is thrown.
+	 * The remaining patches after a failing {@link TestPatch} are skipped without being read.
+	 * </p>
+	 * @param gson The {@link Gson} to use to read the patch. See {@link #patchGson(boolean, boolean)}.
+	 * @param reader The reader to read the patch Json from.
+	 * @param doc The document to apply the patch to.
+	 * @param context The {@link PatchContext}. This customizes what features are available, among other things.
+	 * @throws PatchingException If an exception occurs reading or applying the patch.
+	 * @throws TraversalException If a path in the patch could not be traversed.
+	 * @throws JsonSyntaxException If the patch Json is malformed.
+	 * @throws JsonIOException If an exception occurs reading from {@code reader}.
+	 * @since 2.1.0
+	 */
+	public static void applyPatch(Gson gson, Reader reader, JsonDocument doc, PatchContext context) throws PatchingException, TraversalException {
+		final TypeAdapter<JsonPatch> adapter = gson.getAdapter(JsonPatch.class);
+		final JsonReader in = gson.newJsonReader(reader);
+		// Gson.fromJson() always reads leniently, so we do too.
+		in.setLenient(true);
+
+		try {
+			if (in.peek() != JsonToken.BEGIN_ARRAY)
+				readPatch(adapter, in).patch(doc, context);
+			else {
+				// Mirrors CompoundPatch.patch().
+				final ElementContext root = new ElementContexts.Document(context, null, doc);
+
+				in.beginArray();
+				while (in.hasNext()) {
+					final JsonPatch patch = readPatch(adapter, in);
+
+					if (patch instanceof TestPatch tp && !tp.test(root)) {
+						while (in.hasNext())
+							in.skipValue();
+						break;
+					}
+
+					PatchUtil.apply(patch, root, context);
+				}
+				in.endArray();
+			}
+
+			if (in.peek() != JsonToken.END_DOCUMENT)
+				throw new JsonSyntaxException("JSON document was not fully consumed.");
+		} catch (MalformedJsonException e) {
+			throw new JsonSyntaxException(e);
+		} catch (IOException e) {
+			throw new JsonIOException(e);
+		}
+	}
+
+	private static JsonPatch readPatch(TypeAdapter<JsonPatch> adapter, JsonReader in) throws IOException {
+		try {
+			return adapter.read(in);
+		} catch (IllegalStateException e) {
+			// Don't let these get mixed up with exceptions thrown while applying patches.
+			throw new JsonSyntaxException(e);
+		}
+	}
+}
@@ -142,6 +142,30 @@ public final class PatchAudit {
 		pathKey = null;
 	}
 
+	/**
+	 * <p>Returns a new, empty audit with the same patch path as this one.</p>
+	 * <p>This allows patches that are applied concurrently to record their changes separately,
+	 * after which they can be {@linkplain #merge(PatchAudit) merged} back in a fixed order.</p>
+	 * @return The new audit.
+	 * @since 2.1.0
+	 */
+	public PatchAudit fork() {
+		return new PatchAudit(patchPath);
+	}
+
+	/**
+	 * Adds all of the records in the given audit to this one, as if the changes they describe were made after the ones recorded so far.
+	 * @param other The audit to merge into this one.
+	 * @see #fork()
+	 * @since 2.1.0
+	 */
+	public void merge(PatchAudit other) {
+		records.putAll(other.records);
+
+		for (Map.Entry<String, List<RemovalRecord>> entry : other.removals.entrySet())
+			removals.computeIfAbsent(entry.getKey(), k -> new ArrayList<>(entry.getValue().size())).addAll(entry.getValue());
+	}
+
 	/**
 	 * Correctly resolves paths that reference nonexistent parts of an array, such as out-of-bounds indices and end references ({@code -}).
 	 * @param name The path to fix.
@@ -153,6 +177,15 @@ public final class PatchAudit {
 		return Objects.requireNonNull(name.toAuditString(context));
 	}
 
+	/**
+	 * Returns the patch path. See {@link #PatchAudit(String)}.
+	 * @return The patch path.
+	 * @since 2.1.0
+	 */
+	public String getPatchPath() {
+		return patchPath;
+	}
+
 	/**
 	 * Sets the patch path. See {@link #PatchAudit(String)}.
 	 * @param value The new value.
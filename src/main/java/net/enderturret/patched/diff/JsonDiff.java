@@ -0,0 +1,262 @@
+package net.enderturret.patched.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import net.enderturret.patched.patch.CompoundPatch;
+import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.PatchUtil;
+
+/**
+ * <p>Computes patches that turn one json element into another.</p>
+ * <p>
+ * The patches only use the standard {@code add}, {@code remove}, {@code replace} and {@code move} operations, so they can be applied without any extensions,
+ * and can be serialized and {@linkplain net.enderturret.patched.Patches#readPatch(com.google.gson.Gson, String) read} back.
+ * </p>
+ * <p>
+ * Objects are compared member by member. Arrays are aligned using Myers' difference algorithm, so that inserting or removing an element
+ * doesn't turn into replacing everything after it. Elements removed in one place and added in another (of the same array or object) become {@code move}s,
+ * and elements removed and added at the same place in an array are compared in turn, so that only what changed inside them is replaced.
+ * Aligning very large, very different arrays could take a long time, so the effort spent on each array is {@linkplain #diff(JsonElement, JsonElement, long) limited};
+ * past that, arrays are compared position by position instead, which still gives a correct (if longer) patch.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+public final class JsonDiff {
+
+	/**
+	 * The default maximum number of element comparisons spent aligning each array.
+	 * @since 2.1.0
+	 */
+	public static final long DEFAULT_MAX_WORK = 1 << 24;
+
+	private static final byte ADDED = 0;
+	private static final byte KEPT = 1;
+	private static final byte MOVED = 2;
+	private static final byte CHANGED = 3;
+
+	/**
+	 * The maximum combined size of two arrays for moves to be detected between them.
+	 */
+	private static final int MAX_MOVE_SEARCH = 4096;
+
+	private final long maxWork;
+	private final List<JsonPatch> patches = new ArrayList<>();
+
+	private JsonDiff(long maxWork) {
+		this.maxWork = maxWork;
+	}
+
+	/**
+	 * Computes a patch that turns {@code source} into {@code target}.
+	 * @param source The original element.
+	 * @param target The element the patch should produce.
+	 * @return The patch. It is empty if the elements are equal.
+	 * @since 2.1.0
+	 */
+	public static CompoundPatch diff(JsonElement source, JsonElement target) {
+		return diff(source, target, DEFAULT_MAX_WORK);
+	}
+
+	/**
+	 * Computes a patch that turns {@code source} into {@code target}.
+	 * @param source The original element.
+	 * @param target The element the patch should produce.
+	 * @param maxWork Roughly the maximum number of element comparisons spent aligning each array.
+	 * Arrays that would take more than that are compared position by position instead.
+	 * @return The patch. It is empty if the elements are equal.
+	 * @since 2.1.0
+	 */
+	public static CompoundPatch diff(JsonElement source, JsonElement target, long maxWork) {
+		final JsonDiff diff = new JsonDiff(maxWork);
+		diff.diff("", source, target);
+		return PatchUtil.compound(diff.patches.toArray(new JsonPatch[0]));
+	}
+
+	private void diff(String path, JsonElement source, JsonElement target) {
+		if (source.equals(target)) return;
+
+		if (source instanceof JsonObject a && target instanceof JsonObject b)
+			diffObjects(path, a, b);
+		else if (source instanceof JsonArray a && target instanceof JsonArray b)
+			diffArrays(path, a, b);
+		else
+			patches.add(PatchUtil.replace(path, target.deepCopy()));
+	}
+
+	private void diffObjects(String path, JsonObject source, JsonObject target) {
+		final Set<String> sourceKeys = source.keySet();
+		final Set<String> targetKeys = target.keySet();
+
+		// Values added under one name and removed from another are moved instead.
+		final Map<JsonElement, List<String>> added = new HashMap<>();
+		for (String key : targetKeys)
+			if (!sourceKeys.contains(key))
+				added.computeIfAbsent(target.get(key), k -> new ArrayList<>(1)).add(key);
+
+		final Map<String, String> moved = new HashMap<>();
+
+		for (String key : sourceKeys) {
+			if (targetKeys.contains(key)) continue;
+
+			final List<String> to = added.get(source.get(key));
+			if (to != null && !to.isEmpty()) {
+				final String dest = to.remove(0);
+				moved.put(dest, key);
+				patches.add(PatchUtil.move(path + "/" + escape(dest), path + "/" + escape(key)));
+			} else
+				patches.add(PatchUtil.remove(path + "/" + escape(key)));
+		}
+
+		for (String key : targetKeys) {
+			if (sourceKeys.contains(key))
+				diff(path + "/" + escape(key), source.get(key), target.get(key));
+			else if (!moved.containsKey(key))
+				patches.add(PatchUtil.add(path + "/" + escape(key), target.get(key).deepCopy()));
+		}
+	}
+
+	private void diffArrays(String path, JsonArray source, JsonArray target) {
+		final int n = source.size();
+		final int m = target.size();
+
+		// Hashes are computed once, rather than every time elements are compared.
+		final int[] sourceHashes = new int[n];
+		final int[] targetHashes = new int[m];
+		for (int i = 0; i < n; i++) sourceHashes[i] = source.get(i).hashCode();
+		for (int j = 0; j < m; j++) targetHashes[j] = target.get(j).hashCode();
+
+		final int maxEdits = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 4, maxWork / (n + m)));
+		final int[] kept = Myers.match(n, m, (i, j) -> sourceHashes[i] == targetHashes[j] && source.get(i).equals(target.get(j)), maxEdits);
+
+		// For each target element, the source element it comes from, and how.
+		final int[] from = new int[m];
+		final byte[] how = new byte[m];
+		final boolean[] used = new boolean[n];
+		Arrays.fill(from, -1);
+
+		for (int i = 0; i < n; i++)
+			if (kept[i] != -1) {
+				from[kept[i]] = i;
+				how[kept[i]] = KEPT;
+				used[i] = true;
+			}
+
+		// Elements removed in one place and added in another are moved instead.
+		// Keeping track of positions with moves costs time proportional to the size of the array per element, so only small arrays get them.
+		final Map<Integer, List<Integer>> removed = new HashMap<>();
+		if (n + m <= MAX_MOVE_SEARCH)
+			for (int i = 0; i < n; i++)
+				if (!used[i])
+					removed.computeIfAbsent(sourceHashes[i], k -> new ArrayList<>(1)).add(i);
+
+		boolean anyMoved = false;
+
+		for (int j = 0; j < m; j++) {
+			final List<Integer> candidates = from[j] == -1 ? removed.get(targetHashes[j]) : null;
+			if (candidates == null) continue;
+
+			for (int c = 0; c < candidates.size(); c++) {
+				final int i = candidates.get(c);
+				if (source.get(i).equals(target.get(j))) {
+					candidates.remove(c);
+					from[j] = i;
+					how[j] = MOVED;
+					used[i] = true;
+					anyMoved = true;
+					break;
+				}
+			}
+		}
+
+		// Elements removed and added between the same kept elements are changed in place instead.
+		for (int i = 0, j = 0; i < n || j < m;) {
+			final int nextI = next(kept, i, n);
+			final int nextJ = nextI < n ? kept[nextI] : m;
+
+			while (i < nextI && j < nextJ) {
+				if (used[i]) i++;
+				else if (from[j] != -1) j++;
+				else {
+					from[j] = i;
+					how[j] = CHANGED;
+					used[i] = true;
+					i++;
+					j++;
+				}
+			}
+
+			i = nextI + 1;
+			j = nextJ + 1;
+		}
+
+		// Elements that are going away are removed first, from the end so that the positions of the others don't change.
+		for (int i = n - 1; i >= 0; i--)
+			if (!used[i])
+				patches.add(PatchUtil.remove(path + "/" + i));
+
+		// Then the target is built from left to right, placing each element right after the one before it.
+		// Elements that are yet to be moved may still be in between, but they'll be gone by the end.
+		int last = -1;
+
+		if (!anyMoved) {
+			// Without moves, everything after the last placed element is still to be placed, in order.
+			for (int j = 0; j < m; j++) {
+				last++;
+				if (how[j] == CHANGED)
+					diff(path + "/" + last, source.get(from[j]), target.get(j));
+				else if (how[j] == ADDED)
+					patches.add(PatchUtil.add(path + "/" + last, target.get(j).deepCopy()));
+			}
+
+			return;
+		}
+
+		// The current contents of the array, as source indices (or -1 for added elements).
+		final List<Integer> current = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+			if (used[i]) current.add(i);
+
+		for (int j = 0; j < m; j++) {
+			switch (how[j]) {
+				case KEPT -> last = current.indexOf(from[j]);
+				case CHANGED -> {
+					last = current.indexOf(from[j]);
+					diff(path + "/" + last, source.get(from[j]), target.get(j));
+				}
+				case MOVED -> {
+					final int pos = current.indexOf(from[j]);
+					current.remove(pos);
+					if (pos <= last) last--;
+					last++;
+					current.add(last, from[j]);
+					if (pos != last) patches.add(PatchUtil.move(path + "/" + last, path + "/" + pos));
+				}
+				default -> {
+					last++;
+					current.add(last, -1);
+					patches.add(PatchUtil.add(path + "/" + last, target.get(j).deepCopy()));
+				}
+			}
+		}
+	}
+
+	private static int next(int[] kept, int from, int n) {
+		int i = from;
+		while (i < n && kept[i] == -1) i++;
+		return i;
+	}
+
+	private static String escape(String name) {
+		return name.replace("~", "~0").replace("/", "~1");
+	}
+}
@@ -0,0 +1,157 @@
+package net.enderturret.patched.diff;
+
+import java.util.Arrays;
+
+/**
+ * <p>Finds a longest common subsequence of two sequences using Myers' linear-space difference algorithm.</p>
+ * <p>
+ * The algorithm finds the "middle snake" of the shortest edit script from both ends at once, and recurses on either side of it,
+ * so it only needs memory proportional to the length of the sequences. The number of edits searched for in each region is limited,
+ * and regions needing more edits than that are considered to have nothing in common, which keeps huge, very different sequences from taking too long.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class Myers {
+
+	private final Equality equal;
+	private final int maxEdits;
+
+	/**
+	 * For each element of the first sequence, the position of the element of the second sequence it is matched to, or {@code -1}.
+	 */
+	private final int[] matches;
+
+	private Myers(int n, Equality equal, int maxEdits) {
+		this.equal = equal;
+		this.maxEdits = maxEdits;
+		matches = new int[n];
+		Arrays.fill(matches, -1);
+	}
+
+	/**
+	 * Matches up the elements of two sequences.
+	 * @param n The length of the first sequence.
+	 * @param m The length of the second sequence.
+	 * @param equal Decides whether the element at the given position of the first sequence equals the element at the given position of the second.
+	 * @param maxEdits The maximum number of edits to search for in a single region.
+	 * @return For each element of the first sequence, the position of the element of the second sequence it is matched to, or {@code -1} if it isn't.
+	 * Matched positions are strictly increasing.
+	 */
+	static int[] match(int n, int m, Equality equal, int maxEdits) {
+		final Myers myers = new Myers(n, equal, maxEdits);
+		myers.match(0, n, 0, m);
+		return myers.matches;
+	}
+
+	private void match(int a0, int a1, int b0, int b1) {
+		// Common prefixes and suffixes can be matched right away.
+		while (a0 < a1 && b0 < b1 && equal.equal(a0, b0))
+			matches[a0++] = b0++;
+		while (a0 < a1 && b0 < b1 && equal.equal(a1 - 1, b1 - 1))
+			matches[--a1] = --b1;
+
+		if (a0 == a1 || b0 == b1) return;
+
+		final long split = bisect(a0, a1, b0, b1);
+		if (split == -1) return;
+
+		final int x = (int) (split >>> 32);
+		final int y = (int) split;
+
+		// Guard against making no progress, which would otherwise recurse forever.
+		if (x == a0 && y == b0 || x == a1 && y == b1) return;
+
+		match(a0, x, b0, y);
+		match(x, a1, y, b1);
+	}
+
+	/**
+	 * Finds where the forward and backward searches for the shortest edit script meet.
+	 * @return The point to split the region at, as {@code x << 32 | y}, or {@code -1} if there are too many edits.
+	 */
+	private long bisect(int a0, int a1, int b0, int b1) {
+		final int n = a1 - a0;
+		final int m = b1 - b0;
+		final int maxD = Math.min((n + m + 1) / 2, maxEdits);
+		final int offset = maxD + 1;
+		final int length = 2 * offset + 1;
+		final int[] forward = new int[length];
+		final int[] backward = new int[length];
+		Arrays.fill(forward, -1);
+		Arrays.fill(backward, -1);
+		forward[offset + 1] = 0;
+		backward[offset + 1] = 0;
+
+		final int delta = n - m;
+		// If the difference in lengths is odd, the forward search is the one that will meet the other.
+		final boolean front = (delta & 1) != 0;
+
+		// Diagonals that run off the edge of the grid are trimmed from the search.
+		int kStart1 = 0, kEnd1 = 0, kStart2 = 0, kEnd2 = 0;
+
+		for (int d = 0; d < maxD; d++) {
+			for (int k1 = -d + kStart1; k1 <= d - kEnd1; k1 += 2) {
+				final int k1Offset = offset + k1;
+				int x1 = k1 == -d || k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1] ? forward[k1Offset + 1] : forward[k1Offset - 1] + 1;
+				int y1 = x1 - k1;
+
+				while (x1 < n && y1 < m && equal.equal(a0 + x1, b0 + y1)) {
+					x1++;
+					y1++;
+				}
+
+				forward[k1Offset] = x1;
+
+				if (x1 > n) kEnd1 += 2;
+				else if (y1 > m) kStart1 += 2;
+				else if (front) {
+					final int k2Offset = offset + delta - k1;
+					if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1 && x1 >= n - backward[k2Offset])
+						return (long) (a0 + x1) << 32 | (b0 + y1);
+				}
+			}
+
+			for (int k2 = -d + kStart2; k2 <= d - kEnd2; k2 += 2) {
+				final int k2Offset = offset + k2;
+				int x2 = k2 == -d || k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1] ? backward[k2Offset + 1] : backward[k2Offset - 1] + 1;
+				int y2 = x2 - k2;
+
+				while (x2 < n && y2 < m && equal.equal(a1 - 1 - x2, b1 - 1 - y2)) {
+					x2++;
+					y2++;
+				}
+
+				backward[k2Offset] = x2;
+
+				if (x2 > n) kEnd2 += 2;
+				else if (y2 > m) kStart2 += 2;
+				else if (!front) {
+					final int k1Offset = offset + delta - k2;
+					if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+						final int x1 = forward[k1Offset];
+						final int y1 = offset + x1 - k1Offset;
+						if (x1 >= n - x2)
+							return (long) (a0 + x1) << 32 | (b0 + y1);
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Decides whether elements of the two sequences are equal.
+	 */
+	@FunctionalInterface
+	static interface Equality {
+
+		/**
+		 * @param i The position of an element in the first sequence.
+		 * @param j The position of an element in the second sequence.
+		 * @return {@code true} if the elements are equal.
+		 */
+		boolean equal(int i, int j);
+	}
+}
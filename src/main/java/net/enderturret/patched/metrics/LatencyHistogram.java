@@ -0,0 +1,84 @@
+package net.enderturret.patched.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A histogram of latencies, with one bucket per power of two nanoseconds.</p>
+ * <p>Buckets are coarse, but recording is a single atomic increment, and percentiles are accurate to within a factor of two.</p>
+ * <p>Histograms are thread-safe.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The number of buckets. Bucket {@code i} holds latencies of at least {@code 2^(i-1)} and less than {@code 2^i} nanoseconds (bucket {@code 0} holds latencies of {@code 0}).
+	 * @since 2.1.0
+	 */
+	public static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * Records a latency.
+	 * @param nanos The latency, in nanoseconds.
+	 * @since 2.1.0
+	 */
+	public void record(long nanos) {
+		buckets.incrementAndGet(bucket(nanos));
+	}
+
+	/**
+	 * @param bucket The bucket.
+	 * @return The number of latencies recorded in the bucket.
+	 * @since 2.1.0
+	 */
+	public long count(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * @return The number of latencies recorded.
+	 * @since 2.1.0
+	 */
+	public long count() {
+		long ret = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			ret += buckets.get(i);
+		return ret;
+	}
+
+	/**
+	 * Estimates the given percentile of the recorded latencies.
+	 * @param percentile The percentile, between {@code 0} and {@code 100}.
+	 * @return The upper bound of the bucket the percentile falls into, in nanoseconds, or {@code 0} if nothing was recorded.
+	 * @since 2.1.0
+	 */
+	public long percentile(double percentile) {
+		final long total = count();
+		if (total == 0) return 0;
+
+		final long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= target) return upperBound(i);
+		}
+
+		return upperBound(BUCKETS - 1);
+	}
+
+	/**
+	 * @param bucket The bucket.
+	 * @return The (exclusive) upper bound of the bucket, in nanoseconds.
+	 * @since 2.1.0
+	 */
+	public static long upperBound(int bucket) {
+		return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	private static int bucket(long nanos) {
+		return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+}
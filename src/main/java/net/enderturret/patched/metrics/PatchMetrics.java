@@ -0,0 +1,170 @@
+package net.enderturret.patched.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patched.IPatchMetrics;
+import net.enderturret.patched.patch.context.ConfigurablePatchContext;
+
+/**
+ * <p>An {@link IPatchMetrics} that aggregates events into counters and {@linkplain LatencyHistogram latency histograms}, per operation and per patch file.</p>
+ * <p>
+ * Per-operation statistics include every event, so the time of a {@code find} patch also shows up in the operations it applies.
+ * Per-file statistics only include events at depth {@code 0}, so they add up to the total time spent in each file.
+ * Events are attributed to the file of the patch being applied: included patches to their own path,
+ * and other patches to the {@linkplain net.enderturret.patched.audit.PatchAudit#getPatchPath() patch path} of the context's audit, if one is installed.
+ * Without an audit, install a listener from {@link #forSource(String)} for each file instead.
+ * </p>
+ * <p>{@code PatchMetrics} is thread-safe.</p>
+ * @author EnderTurret
+ * @see ConfigurablePatchContext#metrics(IPatchMetrics)
+ * @since 2.1.0
+ */
+public final class PatchMetrics implements IPatchMetrics {
+
+	private final Map<String, Stats> operations = new ConcurrentHashMap<>();
+	private final Map<String, Stats> sources = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new, empty {@code PatchMetrics}.
+	 * @since 2.1.0
+	 */
+	public PatchMetrics() {}
+
+	@Override
+	public void record(PatchEvent event) {
+		record(event, null);
+	}
+
+	/**
+	 * Returns a listener that records into this {@code PatchMetrics}, attributing events to the given file unless they came from an included patch.
+	 * @param source The path of the patch file about to be applied.
+	 * @return The listener.
+	 * @since 2.1.0
+	 */
+	public IPatchMetrics forSource(String source) {
+		return event -> record(event, source);
+	}
+
+	private void record(PatchEvent event, @Nullable String fallback) {
+		operations.computeIfAbsent(event.operation(), k -> new Stats()).record(event);
+
+		final String source = event.source() != null ? event.source() : fallback;
+		if (source != null && event.depth() == 0)
+			sources.computeIfAbsent(source, k -> new Stats()).record(event);
+	}
+
+	/**
+	 * @return The statistics of each operation, such as {@code add} or {@code test}.
+	 * @since 2.1.0
+	 */
+	public Map<String, Stats> operations() {
+		return Collections.unmodifiableMap(operations);
+	}
+
+	/**
+	 * @return The statistics of each patch file.
+	 * @since 2.1.0
+	 */
+	public Map<String, Stats> sources() {
+		return Collections.unmodifiableMap(sources);
+	}
+
+	/**
+	 * Discards all statistics collected so far.
+	 * @since 2.1.0
+	 */
+	public void reset() {
+		operations.clear();
+		sources.clear();
+	}
+
+	/**
+	 * Aggregated statistics about a group of events.
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static final class Stats {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder traversed = new LongAdder();
+		private final LongAdder copied = new LongAdder();
+		private final LongAdder passed = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LatencyHistogram latencies = new LatencyHistogram();
+
+		private Stats() {}
+
+		private void record(PatchEvent event) {
+			count.increment();
+			nanos.add(event.nanos());
+			traversed.add(event.traversed());
+			copied.add(event.copied());
+			latencies.record(event.nanos());
+
+			if (event.testResult() != null)
+				(event.testResult() ? passed : failed).increment();
+		}
+
+		/**
+		 * @return The number of events.
+		 * @since 2.1.0
+		 */
+		public long count() {
+			return count.sum();
+		}
+
+		/**
+		 * @return The total time spent, in nanoseconds.
+		 * @since 2.1.0
+		 */
+		public long nanos() {
+			return nanos.sum();
+		}
+
+		/**
+		 * @return The total number of path segments traversed.
+		 * @since 2.1.0
+		 */
+		public long traversed() {
+			return traversed.sum();
+		}
+
+		/**
+		 * @return The total number of elements deep-copied.
+		 * @since 2.1.0
+		 */
+		public long copied() {
+			return copied.sum();
+		}
+
+		/**
+		 * @return The number of tests that passed.
+		 * @since 2.1.0
+		 */
+		public long passed() {
+			return passed.sum();
+		}
+
+		/**
+		 * @return The number of tests that failed.
+		 * @since 2.1.0
+		 */
+		public long failed() {
+			return failed.sum();
+		}
+
+		/**
+		 * @return The distribution of the time spent per event.
+		 * @since 2.1.0
+		 */
+		public LatencyHistogram latencies() {
+			return latencies;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package net.enderturret.patched.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import net.enderturret.patched.IPatchMetrics;
+import net.enderturret.patched.audit.PatchAudit;
+import net.enderturret.patched.patch.context.ConfigurablePatchContext;
+
+/**
+ * <p>An {@link IPatchMetrics} that attributes the cost of patching to each patch file, to find out which ones are slow.</p>
+ * <p>
+ * Time, allocations, traversals and copies are summed up per patch file across every document patched, and per individual patch ("site") within each file.
+ * A {@link Report} then lists the most expensive files, the slowest {@code find} patches and the patches that copied the most.
+ * </p>
+ * <p>
+ * Patches are attributed to the file they came from using {@linkplain net.enderturret.patched.patch.IncludePatch included patch} paths and the
+ * {@linkplain PatchAudit#getPatchPath() audit's patch path}, so install a {@link PatchAudit} for each file, or use {@link #forSource(String)} instead.
+ * Patches from unknown files are attributed to {@value #UNKNOWN}.
+ * </p>
+ * <p>{@code PatchProfiler} is thread-safe.</p>
+ * @author EnderTurret
+ * @see ConfigurablePatchContext#metrics(IPatchMetrics)
+ * @since 2.1.0
+ */
+public final class PatchProfiler implements IPatchMetrics {
+
+	/**
+	 * The name patches from unknown files are attributed to.
+	 * @since 2.1.0
+	 */
+	public static final String UNKNOWN = "<unknown>";
+
+	private final Map<String, Totals> files = new ConcurrentHashMap<>();
+	private final Map<Site, Totals> sites = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new, empty {@code PatchProfiler}.
+	 * @since 2.1.0
+	 */
+	public PatchProfiler() {}
+
+	@Override
+	public void record(PatchEvent event) {
+		record(event, UNKNOWN);
+	}
+
+	@Override
+	public boolean measuresAllocations() {
+		return true;
+	}
+
+	/**
+	 * Returns a listener that records into this {@code PatchProfiler}, attributing events to the given file unless their file is otherwise known.
+	 * @param source The path of the patch file about to be applied.
+	 * @return The listener.
+	 * @since 2.1.0
+	 */
+	public IPatchMetrics forSource(String source) {
+		return new IPatchMetrics() {
+			@Override
+			public void record(PatchEvent event) {
+				PatchProfiler.this.record(event, source);
+			}
+
+			@Override
+			public boolean measuresAllocations() {
+				return true;
+			}
+		};
+	}
+
+	private void record(PatchEvent event, String fallback) {
+		final String source = event.source() != null ? event.source() : fallback;
+
+		// Only events at depth 0 are counted towards files, so that nested patches aren't counted twice.
+		if (event.depth() == 0)
+			files.computeIfAbsent(source, k -> new Totals()).record(event);
+
+		sites.computeIfAbsent(new Site(source, event.operation(), event.path()), k -> new Totals()).record(event);
+	}
+
+	/**
+	 * Discards everything recorded so far.
+	 * @since 2.1.0
+	 */
+	public void reset() {
+		files.clear();
+		sites.clear();
+	}
+
+	/**
+	 * Creates a report of the most expensive patch files and patches recorded so far.
+	 * @param limit The maximum number of entries in each section of the report.
+	 * @return The report.
+	 * @since 2.1.0
+	 */
+	public Report report(int limit) {
+		final List<Entry> fileEntries = new ArrayList<>(files.size());
+		files.forEach((source, totals) -> fileEntries.add(totals.entry(source)));
+
+		final List<Entry> findEntries = new ArrayList<>();
+		final List<Entry> siteEntries = new ArrayList<>(sites.size());
+		sites.forEach((site, totals) -> {
+			final Entry entry = totals.entry(site.toString());
+			if ("find".equals(site.operation())) findEntries.add(entry);
+			// Measurements are inclusive, so these would just repeat the copies of the patches they apply.
+			else if (!"include".equals(site.operation())) siteEntries.add(entry);
+		});
+
+		return new Report(
+				top(fileEntries, e -> true, Entry::nanos, limit),
+				top(findEntries, e -> true, Entry::nanos, limit),
+				top(siteEntries, e -> e.copied() > 0, Entry::copied, limit));
+	}
+
+	private static List<Entry> top(List<Entry> entries, Predicate<Entry> filter, ToLongFunction<Entry> cost, int limit) {
+		return entries.stream()
+				.filter(filter)
+				.sorted(Comparator.comparingLong(cost).reversed().thenComparing(Entry::name))
+				.limit(limit)
+				.toList();
+	}
+
+	private static record Site(String source, String operation, @Nullable String path) {
+		@Override
+		public String toString() {
+			return source + " " + operation + (path != null ? " " + path : "");
+		}
+	}
+
+	private static final class Totals {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder allocated = new LongAdder();
+		private final LongAdder traversed = new LongAdder();
+		private final LongAdder copied = new LongAdder();
+
+		private void record(PatchEvent event) {
+			count.increment();
+			nanos.add(event.nanos());
+			allocated.add(event.allocated());
+			traversed.add(event.traversed());
+			copied.add(event.copied());
+		}
+
+		private Entry entry(String name) {
+			return new Entry(name, count.sum(), nanos.sum(), allocated.sum(), traversed.sum(), copied.sum());
+		}
+	}
+
+	/**
+	 * The totals of a patch file, or of a single patch within a patch file.
+	 * @param name The path of the patch file, or the path of the patch file followed by the operation and path of the patch.
+	 * @param count The number of times patches were applied.
+	 * @param nanos The total time spent, in nanoseconds.
+	 * @param allocated The total number of bytes allocated.
+	 * @param traversed The total number of path segments traversed.
+	 * @param copied The total number of elements deep-copied.
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static record Entry(String name, long count, long nanos, long allocated, long traversed, long copied) {
+
+		/**
+		 * @return This entry, as a json object.
+		 * @since 2.1.0
+		 */
+		public JsonObject toJson() {
+			final JsonObject ret = new JsonObject();
+			ret.addProperty("name", name);
+			ret.addProperty("count", count);
+			ret.addProperty("nanos", nanos);
+			ret.addProperty("allocated", allocated);
+			ret.addProperty("traversed", traversed);
+			ret.addProperty("copied", copied);
+			return ret;
+		}
+	}
+
+	/**
+	 * A report of the most expensive patch files and patches. Each section is sorted from most to least expensive.
+	 * @param slowestFiles The patch files that took the longest to apply in total.
+	 * @param slowestFinds The {@code find} patches that took the longest to apply in total.
+	 * @param biggestCopies The patches that deep-copied the most elements in total, not counting {@code find} and {@code include} patches (since they only copy through other patches).
+	 * @author EnderTurret
+	 * @since 2.1.0
+	 */
+	public static record Report(List<Entry> slowestFiles, List<Entry> slowestFinds, List<Entry> biggestCopies) {
+
+		/**
+		 * @return This report, as a json object.
+		 * @since 2.1.0
+		 */
+		public JsonObject toJson() {
+			final JsonObject ret = new JsonObject();
+			ret.add("slowestFiles", toJson(slowestFiles));
+			ret.add("slowestFinds", toJson(slowestFinds));
+			ret.add("biggestCopies", toJson(biggestCopies));
+			return ret;
+		}
+
+		private static JsonArray toJson(List<Entry> entries) {
+			final JsonArray ret = new JsonArray(entries.size());
+			for (Entry entry : entries)
+				ret.add(entry.toJson());
+			return ret;
+		}
+
+		/**
+		 * @return This report, as human-readable text.
+		 */
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			append(sb, "Slowest patch files", slowestFiles);
+			append(sb, "Slowest finds", slowestFinds);
+			append(sb, "Biggest copies", biggestCopies);
+			return sb.toString();
+		}
+
+		private static void append(StringBuilder sb, String title, List<Entry> entries) {
+			sb.append(title).append(":\n");
+
+			if (entries.isEmpty())
+				sb.append("  (none)\n");
+
+			for (Entry e : entries)
+				sb.append(String.format("  %10.3f ms %10d KiB %8d traversed %8d copied %8dx  %s\n",
+						e.nanos() / 1_000_000D, e.allocated() / 1024, e.traversed(), e.copied(), e.count(), e.name()));
+		}
+	}
+}
@@ -1,9 +1,17 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
+import net.enderturret.patched.ITestEvaluator;
+import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.TraversalMode;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.PatchContext;
@@ -16,7 +24,7 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class AddPatch extends JsonPatch {
 
-	private final JsonElement value;
+	final JsonElement value;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#add(String, JsonElement)} instead.
@@ -29,6 +37,15 @@ public final class AddPatch extends JsonPatch {
 		this.value = value;
 	}
 
+	/**
+	 * Equivalent to {@link #AddPatch(String, JsonElement)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	AddPatch(JsonSelector path, JsonElement value) {
+		super(path);
+		this.value = value;
+	}
+
 	@Override
 	protected String operation() {
 		return "add";
@@ -39,10 +56,31 @@ public final class AddPatch extends JsonPatch {
 		obj.add("value", value);
 	}
 
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		out.name("value");
+		JsonPatchAdapter.ELEMENT_ADAPTER.write(out, value);
+	}
+
 	@Override
 	public void patch(ElementContext root, PatchContext context) {
 		final ElementContext e = path.select(root, true, TraversalMode.ADD);
 		PatchUtil.applyAdd(e, value, false);
 		if (context.audit() != null) context.audit().recordAdd(root, path, e);
 	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
+	}
+
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return isInside(path);
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		return collectFootprint(path, into);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package net.enderturret.patched.patch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import net.enderturret.patched.ITestEvaluator.CompiledTest;
+import net.enderturret.patched.exception.PatchingException;
+
+/**
+ * <p>The test types built into Patched, which don't need an {@link net.enderturret.patched.ITestEvaluator}.</p>
+ * <p>
+ * Like custom test types, these can only be used with Patched extensions enabled. They are compiled once, when the {@link TestPatch} is created,
+ * and always fail if the tested element doesn't exist (unless inverted). The types are:
+ * </p>
+ * <ul>
+ * <li>{@code patched:matches}: the element is a string matching the regular expression in {@code value}.</li>
+ * <li>{@code patched:range}: the element is a number between {@code value.min} and {@code value.max} (inclusive, and both optional). Numbers are compared as {@code double}s.</li>
+ * <li>{@code patched:type}: the element is of the JSON type in {@code value}, one of {@code null}, {@code boolean}, {@code number}, {@code string}, {@code array} or {@code object}.
+ * {@code value} may also be an array of types, in which case the element may be of any of them.</li>
+ * <li>{@code patched:size}: the element is an array or object with between {@code value.min} and {@code value.max} (inclusive, and both optional) children.</li>
+ * <li>{@code patched:in}: the element is equal to one of the elements of the array in {@code value}.</li>
+ * </ul>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class BuiltinTests {
+
+	/**
+	 * The prefix of every built-in test type.
+	 */
+	static final String PREFIX = "patched:";
+
+	private static final String[] TYPES = { "null", "boolean", "number", "string", "array", "object" };
+
+	private BuiltinTests() {}
+
+	/**
+	 * Compiles the built-in test of the given type.
+	 * @param type The test type.
+	 * @param value The test value. May be {@code null}.
+	 * @return The compiled test, or {@code null} if the type isn't built-in.
+	 * @throws PatchingException If the value is invalid for the type.
+	 */
+	@Nullable
+	static CompiledTest compile(String type, @Nullable JsonElement value) {
+		if (!type.startsWith(PREFIX)) return null;
+
+		return switch (type.substring(PREFIX.length())) {
+			case "matches" -> matches(type, value);
+			case "range" -> range(type, value);
+			case "type" -> type(type, value);
+			case "size" -> size(type, value);
+			case "in" -> in(type, value);
+			default -> null;
+		};
+	}
+
+	private static CompiledTest matches(String type, @Nullable JsonElement value) {
+		final Pattern pattern;
+		try {
+			pattern = Pattern.compile(string(type, value));
+		} catch (PatternSyntaxException e) {
+			throw new PatchingException(type + ": invalid regular expression: " + e.getMessage(), e);
+		}
+
+		return (root, target, context) -> target instanceof JsonPrimitive prim && prim.isString() && pattern.matcher(prim.getAsString()).matches();
+	}
+
+	private static CompiledTest range(String type, @Nullable JsonElement value) {
+		final JsonObject obj = object(type, value);
+		final double min = bound(type, obj, "min", Double.NEGATIVE_INFINITY);
+		final double max = bound(type, obj, "max", Double.POSITIVE_INFINITY);
+
+		return (root, target, context) -> {
+			if (!(target instanceof JsonPrimitive prim) || !prim.isNumber()) return false;
+			final double d = prim.getAsDouble();
+			return d >= min && d <= max;
+		};
+	}
+
+	private static CompiledTest type(String type, @Nullable JsonElement value) {
+		int mask = 0;
+
+		if (value instanceof JsonArray arr)
+			for (JsonElement elem : arr)
+				mask |= typeBit(type, string(type, elem));
+		else
+			mask = typeBit(type, string(type, value));
+
+		final int types = mask;
+
+		return (root, target, context) -> target != null && (types & (1 << typeOf(target))) != 0;
+	}
+
+	private static CompiledTest size(String type, @Nullable JsonElement value) {
+		final JsonObject obj = object(type, value);
+		final double min = bound(type, obj, "min", 0);
+		final double max = bound(type, obj, "max", Double.POSITIVE_INFINITY);
+
+		return (root, target, context) -> {
+			final int size;
+
+			if (target instanceof JsonArray arr) size = arr.size();
+			else if (target instanceof JsonObject o) size = o.size();
+			else return false;
+
+			return size >= min && size <= max;
+		};
+	}
+
+	private static CompiledTest in(String type, @Nullable JsonElement value) {
+		if (!(value instanceof JsonArray arr))
+			throw new PatchingException(type + ": 'value' must be an array (was: " + value + ")!");
+
+		// Values that can't be hashed reliably (see FindIndex.key()) are compared one at a time instead.
+		final Map<Object, List<JsonElement>> keys = new HashMap<>();
+		final List<JsonElement> others = new ArrayList<>();
+
+		for (JsonElement elem : arr) {
+			final Object key = elem instanceof JsonPrimitive prim ? FindIndex.key(prim) : null;
+
+			if (key != null) keys.computeIfAbsent(key, k -> new ArrayList<>(1)).add(elem);
+			else others.add(elem);
+		}
+
+		final JsonElement[] rest = others.toArray(new JsonElement[0]);
+
+		return (root, target, context) -> {
+			if (target == null) return false;
+
+			if (target instanceof JsonPrimitive prim) {
+				final Object key = FindIndex.key(prim);
+				final List<JsonElement> candidates = key != null ? keys.get(key) : null;
+
+				// Keys may give false positives for numbers, so the candidates are checked too.
+				if (candidates != null)
+					for (JsonElement elem : candidates)
+						if (elem.equals(target))
+							return true;
+			}
+
+			for (JsonElement elem : rest)
+				if (elem.equals(target))
+					return true;
+
+			return false;
+		};
+	}
+
+	private static int typeOf(JsonElement elem) {
+		if (elem.isJsonNull()) return 0;
+		if (elem instanceof JsonPrimitive prim) return prim.isBoolean() ? 1 : prim.isNumber() ? 2 : 3;
+		return elem.isJsonArray() ? 4 : 5;
+	}
+
+	private static int typeBit(String type, String name) {
+		for (int i = 0; i < TYPES.length; i++)
+			if (TYPES[i].equals(name))
+				return 1 << i;
+
+		throw new PatchingException(type + ": unknown JSON type '" + name + "'!");
+	}
+
+	private static String string(String type, @Nullable JsonElement value) {
+		if (value instanceof JsonPrimitive prim && prim.isString())
+			return prim.getAsString();
+
+		throw new PatchingException(type + ": 'value' must be a string (was: " + value + ")!");
+	}
+
+	private static JsonObject object(String type, @Nullable JsonElement value) {
+		if (value instanceof JsonObject obj)
+			return obj;
+
+		throw new PatchingException(type + ": 'value' must be an object (was: " + value + ")!");
+	}
+
+	private static double bound(String type, JsonObject obj, String name, double fallback) {
+		final JsonElement elem = obj.get(name);
+		if (elem == null) return fallback;
+
+		if (elem instanceof JsonPrimitive prim && prim.isNumber())
+			return prim.getAsDouble();
+
+		throw new PatchingException(type + ": '" + name + "' must be a number (was: " + elem + ")!");
+	}
+}
@@ -1,11 +1,18 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
+import net.enderturret.patched.ITestEvaluator;
+import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.PatchContext;
 
@@ -17,7 +24,12 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class CompoundPatch extends JsonPatch {
 
-	private final JsonPatch[] patches;
+	final JsonPatch[] patches;
+
+	/**
+	 * The group of consecutive tests starting at each position in {@link #patches}, or {@code null} at positions that don't start one.
+	 */
+	private final TestGroup[] groups;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#compound(JsonPatch...)} instead.
@@ -26,17 +38,124 @@ public final class CompoundPatch extends JsonPatch {
 	 */
 	@Internal
 	protected CompoundPatch(JsonPatch[] patches) {
-		super(null);
+		super((String) null);
 		this.patches = patches;
+
+		groups = new TestGroup[patches.length];
+		for (int i = 0; i < patches.length; i++) {
+			if (!(patches[i] instanceof TestPatch)) continue;
+
+			final List<TestPatch> tests = new ArrayList<>();
+			for (int j = i; j < patches.length && patches[j] instanceof TestPatch tp; j++)
+				tests.add(tp);
+
+			groups[i] = new TestGroup(tests);
+			i += tests.size() - 1;
+		}
 	}
 
 	@Override
 	public void patch(ElementContext root, PatchContext context) {
+		for (int i = 0; i < patches.length; i++) {
+			if (groups[i] != null) {
+				if (!groups[i].test(root))
+					return;
+
+				// Tests don't do anything when applied, so skip the rest of the group.
+				i += groups[i].size() - 1;
+				continue;
+			}
+
+			Metering.patch(patches[i], root, context);
+		}
+	}
+
+	/**
+	 * <p>Returns statistics about how each of the tests directly inside this patch has performed so far.</p>
+	 * <p>Statistics are only collected while {@linkplain PatchContext#adaptiveTestOrder() adaptive test ordering} is enabled.
+	 * Only consecutive tests are ever reordered, as moving a test past another patch could change its result.</p>
+	 * @return The statistics of each test, in the order the tests were declared in.
+	 * @since 2.1.0
+	 */
+	public List<TestStatistics> testStatistics() {
+		final List<TestStatistics> ret = new ArrayList<>();
+
+		for (TestGroup group : groups)
+			if (group != null)
+				ret.addAll(group.statistics());
+
+		return ret;
+	}
+
+	/**
+	 * @return {@code true} if this patch doesn't contain any patches.
+	 */
+	boolean isEmpty() {
+		return patches.length == 0;
+	}
+
+	@Override
+	JsonPatch fold(PatchContext context) {
+		final List<JsonPatch> ret = new ArrayList<>(patches.length);
+		boolean changed = false;
+
 		for (JsonPatch patch : patches) {
-			if (patch instanceof TestPatch tp && !tp.test(root))
-				return;
-			patch.patch(root, context);
+			if (patch instanceof TestPatch tp) {
+				final Boolean result = tp.constantResult(context);
+
+				if (result == null)
+					ret.add(tp);
+				else if (result)
+					changed = true;
+				else {
+					// Nothing after a failed test is ever applied.
+					changed = true;
+					break;
+				}
+
+				continue;
+			}
+
+			final JsonPatch folded = patch.fold(context);
+
+			if (folded instanceof CompoundPatch compound && compound.isEmpty())
+				changed = true;
+			else {
+				changed |= folded != patch;
+				ret.add(folded);
+			}
 		}
+
+		return changed ? new CompoundPatch(ret.toArray(new JsonPatch[0])) : this;
+	}
+
+	@Override
+	void compileTests(ITestEvaluator evaluator) {
+		for (JsonPatch patch : patches)
+			patch.compileTests(evaluator);
+	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
+	}
+
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		for (JsonPatch patch : patches)
+			if (!patch.isChildLocal(evaluator))
+				return false;
+
+		return true;
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		for (JsonPatch patch : patches)
+			if (!patch.collectFootprint(into, evaluator))
+				return false;
+
+		return true;
 	}
 
 	@Override
@@ -51,4 +170,14 @@ public final class CompoundPatch extends JsonPatch {
 
 		return arr;
 	}
+
+	@Override
+	protected void write(JsonWriter out, JsonPatchAdapter adapter, @Nullable String omitOperation) throws IOException {
+		out.beginArray();
+
+		for (JsonPatch patch : patches)
+			adapter.write(out, patch);
+
+		out.endArray();
+	}
 }
\ No newline at end of file
@@ -1,9 +1,16 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
+import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.TraversalMode;
 import net.enderturret.patched.patch.context.ElementContext;
@@ -17,7 +24,7 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class CopyPatch extends JsonPatch {
 
-	protected final JsonSelector from;
+	final JsonSelector from;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#copy(String, String)} instead.
@@ -26,8 +33,16 @@ public final class CopyPatch extends JsonPatch {
 	 * @since 1.0.0
 	 */
 	protected CopyPatch(String path, String from) {
+		this(JsonSelector.of(path), JsonSelector.of(from));
+	}
+
+	/**
+	 * Equivalent to {@link #CopyPatch(String, String)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	CopyPatch(JsonSelector path, JsonSelector from) {
 		super(path);
-		this.from = JsonSelector.of(from);
+		this.from = from;
 	}
 
 	@Override
@@ -40,6 +55,11 @@ public final class CopyPatch extends JsonPatch {
 		obj.addProperty("from", from.toString());
 	}
 
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		out.name("from").value(from.toString());
+	}
+
 	@Override
 	public void patch(ElementContext root, PatchContext context) {
 		final JsonElement copied = from.select(root, true).elem();
@@ -48,4 +68,19 @@ public final class CopyPatch extends JsonPatch {
 		PatchUtil.applyAdd(e, copied, false);
 		if (context.audit() != null) context.audit().recordCopy(root, path, from, e);
 	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
+	}
+
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return isLocal(from) && isInside(path);
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		return collectFootprint(from, into) && collectFootprint(path, into);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package net.enderturret.patched.patch;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import net.enderturret.patched.JsonSelector;
+import net.enderturret.patched.JsonSelector.CompoundSelector;
+import net.enderturret.patched.JsonSelector.EmptySelector;
+import net.enderturret.patched.JsonSelector.NameSelector;
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.patch.context.PatchSession;
+
+/**
+ * <p>An index from the primitive values found at some path inside the children of an array to the positions of those children.</p>
+ * <p>
+ * {@link FindPatch} uses these to skip over children that cannot possibly pass a plain equality test.
+ * Indices live in the {@link PatchSession} of the current application, so that several find patches over the same array can share one.
+ * An index is only built the second time an array is searched with the same path, since building one costs about as much as searching the array once.
+ * Indices watch their array and are discarded as soon as anything that could change the indexed values is modified.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class FindIndex implements PatchSession.MutationWatcher {
+
+	/**
+	 * Arrays smaller than this are never indexed, as searching them is cheap anyway.
+	 */
+	static final int MIN_SIZE = 32;
+
+	private static final int[] NONE = new int[0];
+
+	private final PatchSession session;
+	private final Key key;
+
+	private boolean valid = true;
+	private boolean built;
+	@Nullable
+	private Map<Object, int[]> positions;
+
+	private FindIndex(PatchSession session, Key key) {
+		this.session = session;
+		this.key = key;
+	}
+
+	/**
+	 * Returns the index for the given array and path, if it should be used.
+	 * @param session The session of the current application.
+	 * @param array The array being searched.
+	 * @param path The path inside each child of the array, as returned by {@link #indexablePath(TestPatch)}.
+	 * @return The index, or {@code null} if the array should be searched normally.
+	 */
+	@Nullable
+	static FindIndex get(PatchSession session, JsonArray array, JsonSelector[] path) {
+		if (array.size() < MIN_SIZE) return null;
+
+		final Key key = new Key(array, path);
+		final FindIndex index = (FindIndex) session.get(key);
+
+		if (index == null) {
+			// First search: just remember that it happened.
+			final FindIndex ret = new FindIndex(session, key);
+			session.put(key, ret);
+			session.watch(array, ret);
+			return null;
+		}
+
+		if (!index.built) index.build();
+
+		return index.positions != null ? index : null;
+	}
+
+	/**
+	 * Determines the path a test could be indexed by.
+	 * @param test The test.
+	 * @return The path, or {@code null} if the test cannot be indexed.
+	 */
+	@Nullable
+	static JsonSelector[] indexablePath(TestPatch test) {
+		if (test.type != null || !(test.test instanceof JsonPrimitive prim) || key(prim) == null)
+			return null;
+
+		if (test.path instanceof EmptySelector)
+			return new JsonSelector[0];
+
+		if (!(test.path instanceof CompoundSelector compound) || compound.absolute())
+			return null;
+
+		for (JsonSelector selector : compound.path())
+			if (!(selector instanceof NameSelector) && !(selector instanceof NumericSelector))
+				return null;
+
+		return compound.path();
+	}
+
+	/**
+	 * @return {@code true} if nothing affecting the index has been modified since it was built.
+	 */
+	boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns the positions of the children whose indexed value may be equal to the given value.
+	 * @param value The value.
+	 * @return The positions, in ascending order.
+	 */
+	int[] positions(JsonPrimitive value) {
+		final int[] ret = positions.get(key(value));
+		return ret != null ? ret : NONE;
+	}
+
+	/**
+	 * Returns the first candidate position at or after the given position.
+	 * @param positions The candidate positions, as returned by {@link #positions(JsonPrimitive)}.
+	 * @param from The position to start at.
+	 * @return The position, or {@link Integer#MAX_VALUE} if there is none.
+	 */
+	static int next(int[] positions, int from) {
+		int i = Arrays.binarySearch(positions, from);
+		if (i < 0) i = -i - 1;
+		return i < positions.length ? positions[i] : Integer.MAX_VALUE;
+	}
+
+	private void build() {
+		built = true;
+
+		final JsonArray array = key.array;
+		final Map<Object, int[]> map = new HashMap<>();
+		final Map<Object, Integer> sizes = new HashMap<>();
+
+		for (int i = 0; i < array.size(); i++)
+			if (select(array.get(i), key.path) instanceof JsonPrimitive prim) {
+				final Object k = key(prim);
+				if (k == null) return; // Can't index this.
+
+				int[] list = map.get(k);
+				final int size = sizes.getOrDefault(k, 0);
+
+				if (list == null)
+					map.put(k, list = new int[4]);
+				else if (list.length == size)
+					map.put(k, list = Arrays.copyOf(list, size * 2));
+
+				list[size] = i;
+				sizes.put(k, size + 1);
+			}
+
+		for (Map.Entry<Object, int[]> entry : map.entrySet())
+			entry.setValue(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+
+		positions = map;
+	}
+
+	@Override
+	public boolean mutated(@Nullable Object[] path) {
+		if (path != null && !affects(path))
+			return true;
+
+		valid = false;
+		session.put(key, null);
+		return false;
+	}
+
+	private boolean affects(Object[] path) {
+		// A child was added, removed or replaced, so positions may have shifted.
+		if (path.length == 1) return true;
+
+		// Modifications beneath the indexed value mean it isn't a primitive, so it isn't indexed anyway.
+		if (path.length - 1 > key.path.length) return false;
+
+		for (int i = 1; i < path.length; i++)
+			if (!matches(key.path[i - 1], path[i]))
+				return false;
+
+		return true;
+	}
+
+	private static boolean matches(JsonSelector selector, Object segment) {
+		if (selector instanceof NameSelector name)
+			return name.name().equals(segment);
+
+		final NumericSelector num = (NumericSelector) selector;
+		return segment instanceof Integer i ? i == num.index() : num.strIndex().equals(segment);
+	}
+
+	/**
+	 * Follows the given path like {@link JsonSelector#select(net.enderturret.patched.patch.context.ElementContext, boolean) select()} would for a test.
+	 */
+	@Nullable
+	private static JsonElement select(@Nullable JsonElement elem, JsonSelector[] path) {
+		for (JsonSelector selector : path) {
+			if (selector instanceof NameSelector name)
+				elem = elem instanceof JsonObject obj ? obj.get(name.name()) : null;
+			else {
+				final NumericSelector num = (NumericSelector) selector;
+
+				if (elem instanceof JsonArray arr)
+					elem = num.index() >= 0 && num.index() < arr.size() ? arr.get(num.index()) : null;
+				else
+					elem = elem instanceof JsonObject obj ? obj.get(num.strIndex()) : null;
+			}
+
+			if (elem == null) return null;
+		}
+
+		return elem;
+	}
+
+	/**
+	 * <p>Returns a key for the given value, such that values that are {@linkplain JsonPrimitive#equals(Object) equal} always have equal keys.</p>
+	 * <p>{@code JsonPrimitive}'s own {@code hashCode()} can't be used for this, as it differs between some equal numbers.
+	 * Numbers are therefore compared by their {@code double} value, which may give false positives but never false negatives.</p>
+	 * @param value The value.
+	 * @return The key, or {@code null} if the value can't be indexed.
+	 */
+	@Nullable
+	static Object key(JsonPrimitive value) {
+		if (value.isBoolean()) return value.getAsBoolean();
+		if (value.isString()) return value.getAsString();
+
+		// Some versions of Gson compare big integers using only their lower 64 bits.
+		if (value.getAsNumber() instanceof BigInteger) return null;
+
+		final double d = value.getAsDouble();
+		return d == 0 ? 0D : d; // 0.0 == -0.0
+	}
+
+	private static final class Key {
+
+		private final JsonArray array;
+		private final JsonSelector[] path;
+		private final int hash;
+
+		Key(JsonArray array, JsonSelector[] path) {
+			this.array = array;
+			this.path = path;
+			hash = 31 * System.identityHashCode(array) + Arrays.hashCode(path);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key other && array == other.array && Arrays.equals(path, other.path);
+		}
+	}
+}
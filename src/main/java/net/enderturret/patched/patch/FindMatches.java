@@ -0,0 +1,281 @@
+package net.enderturret.patched.patch;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import net.enderturret.patched.audit.PatchAudit;
+import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.ElementContexts;
+import net.enderturret.patched.patch.context.ImmutablePatchContext;
+import net.enderturret.patched.patch.context.PatchContext;
+import net.enderturret.patched.patch.context.PatchSession;
+
+/**
+ * <p>The results of testing every child of an array or object in parallel, for a {@link FindPatch}.</p>
+ * <p>
+ * Children are tested on the common fork/join pool (or the pool the patch is being applied from), and are patched afterwards, one at a time and in order.
+ * Each child is tested through a context of its own, with its own {@linkplain ElementContext#session() session}, since sessions aren't thread-safe.
+ * This only gives the same results as testing each child right before patching it if patching one child can't change whether another passes.
+ * The tests must therefore only look inside the child they're testing, and the results watch the container and are discarded
+ * as soon as anything besides the child currently being patched is modified, at which point the find patch goes back to testing children one at a time.
+ * </p>
+ * <p>
+ * If the patch applied to matching children {@linkplain JsonPatch#isChildLocal(net.enderturret.patched.ITestEvaluator) only touches the inside of each child},
+ * the children can also be {@linkplain #patchAll(JsonPatch, String, Isolated, PatchContext) patched in parallel}.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class FindMatches implements PatchSession.MutationWatcher {
+
+	private final ElementContext parent;
+	private final IntFunction<ElementContext> children;
+	private final Isolated isolated;
+	private final boolean[] matches;
+	private final RuntimeException[] failures;
+
+	private boolean valid = true;
+	@Nullable
+	private Object current;
+	private int replaced;
+
+	private FindMatches(ElementContext parent, IntFunction<ElementContext> children, Isolated isolated, int size) {
+		this.parent = parent;
+		this.children = children;
+		this.isolated = isolated;
+		matches = new boolean[size];
+		failures = new RuntimeException[size];
+	}
+
+	/**
+	 * Tests the children of a container in parallel, if the tests allow it.
+	 * @param tests The tests to run.
+	 * @param parent The context of the container.
+	 * @param size The number of children in the container.
+	 * @param children A function returning a (new) context for the child at the given position.
+	 * @param isolated Creates the contexts children are tested and patched through in parallel.
+	 * @param context The patch context.
+	 * @return The results, or {@code null} if the children must be tested one at a time (such as when metrics are installed).
+	 */
+	@Nullable
+	static FindMatches test(TestGroup tests, ElementContext parent, int size, IntFunction<ElementContext> children, Isolated isolated, PatchContext context) {
+		if (context.parallelFindThreshold() <= 0 || size < context.parallelFindThreshold() || parent.session() == null)
+			return null;
+
+		// The children's sessions would count into counters of their own, which aren't merged back.
+		if (context.metrics() != null)
+			return null;
+
+		// Tests that look outside the child might see changes made by patching earlier children.
+		if (!tests.isChildLocal(context.testEvaluator()))
+			return null;
+
+		final FindMatches ret = new FindMatches(parent, children, isolated, size);
+
+		IntStream.range(0, size).parallel().forEach(i -> {
+			try {
+				ret.matches[i] = tests.test(isolated.create(i, context));
+			} catch (RuntimeException e) {
+				// Rethrown once the find patch gets to this child, so that exceptions surface in the same order as usual.
+				ret.failures[i] = e;
+			}
+		});
+
+		return ret;
+	}
+
+	/**
+	 * Starts watching the container, so that the results are discarded if patching one child could change whether another passes.
+	 * This must be called before patching children one at a time.
+	 */
+	void watch() {
+		parent.session().watch(parent.elem(), this);
+	}
+
+	/**
+	 * <p>Patches every child that passed the tests in parallel.</p>
+	 * <p>
+	 * Each child is patched through a context of its own, with its own {@linkplain ElementContext#session() session},
+	 * so that nothing is shared between the threads. If an audit is installed, each child records into a {@linkplain PatchAudit#fork() fork} of it,
+	 * and the forks are merged back in order once every child has been patched.
+	 * </p>
+	 * <p>
+	 * If patching a child fails, the exception of the first child (in order) that failed is rethrown.
+	 * Unlike when patching one at a time, children after it may have been patched already.
+	 * </p>
+	 * @param then The patch to apply. It must be {@linkplain JsonPatch#isChildLocal(net.enderturret.patched.ITestEvaluator) child-local}.
+	 * @param auditPrefix The path prefix for audit records.
+	 * @param context The patch context.
+	 * @return {@code true} if the children were patched, or {@code false} if they must be patched one at a time instead (such as when a mutation listener is installed, or in a transaction).
+	 */
+	boolean patchAll(JsonPatch then, String auditPrefix, PatchContext context) {
+		// Mutation listeners expect modifications one at a time, and with paths, which the isolated contexts can't provide.
+		// The children's sessions also wouldn't record anything into the undo log of a transaction.
+		if (context.mutationListener() != null || parent.session() != null && parent.session().undoLog() != null) return false;
+
+		// Children after one whose tests failed with an exception are never reached.
+		int end = 0;
+		while (end < matches.length && failures[end] == null) end++;
+
+		int count = 0;
+		for (int i = 0; i < end; i++)
+			if (matches[i]) count++;
+
+		final int[] positions = new int[count];
+		count = 0;
+		for (int i = 0; i < end; i++)
+			if (matches[i]) positions[count++] = i;
+
+		final ElementContext[] contexts = new ElementContext[count];
+		final PatchAudit[] audits = context.audit() != null ? new PatchAudit[count] : null;
+		final Set<JsonElement> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (int i = 0; i < count; i++) {
+			final PatchContext ctx;
+
+			if (audits != null) {
+				audits[i] = context.audit().fork();
+				ctx = ImmutablePatchContext.newContext(context).audit(audits[i]);
+			} else
+				ctx = context;
+
+			contexts[i] = isolated.create(positions[i], ctx);
+
+			// The same array or object may appear several times, in which case the same one would be patched from several threads.
+			final JsonElement elem = contexts[i].elem();
+			if ((elem instanceof JsonObject || elem instanceof JsonArray) && !seen.add(elem))
+				return false;
+		}
+
+		// The children get sessions of their own, so let anything watching the container know about the changes up front.
+		for (int position : positions)
+			parent.session().mutated(children.apply(position));
+
+		// Each child counts in its own session, so the counts are added back afterwards.
+		if (context.metrics() != null && parent.session() != null)
+			for (ElementContext child : contexts)
+				child.session().counters().inherit(parent.session().counters());
+
+		final RuntimeException[] errors = new RuntimeException[count];
+
+		IntStream.range(0, count).parallel().forEach(i -> {
+			final PatchAudit audit = audits != null ? audits[i] : null;
+
+			try {
+				if (audit != null) audit.beginPrefix(auditPrefix, key(contexts[i]));
+				Metering.patch(then, contexts[i], contexts[i].context());
+				if (audit != null) audit.endPrefix();
+			} catch (RuntimeException e) {
+				errors[i] = e;
+			}
+		});
+
+		for (int i = 0; i < count; i++) {
+			if (audits != null) context.audit().merge(audits[i]);
+			if (context.metrics() != null) parent.session().counters().merge(contexts[i].session().counters());
+			if (errors[i] != null) throw errors[i];
+		}
+
+		if (end < failures.length) throw failures[end];
+
+		return true;
+	}
+
+	private static String key(ElementContext context) {
+		return context instanceof ElementContexts.Object obj ? obj.name() : Integer.toString(((ElementContexts.Array) context).index());
+	}
+
+	/**
+	 * @return {@code true} if the results can still be used.
+	 */
+	boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Returns whether the child at the given position passed the tests.
+	 * @param position The position of the child at the time it was tested.
+	 * @return {@code true} if the child passed.
+	 * @throws RuntimeException If testing the child threw an exception.
+	 */
+	boolean passed(int position) {
+		if (failures[position] != null) throw failures[position];
+		return matches[position];
+	}
+
+	/**
+	 * @return The number of children that passed the tests.
+	 */
+	int count() {
+		int ret = 0;
+		for (boolean match : matches)
+			if (match) ret++;
+		return ret;
+	}
+
+	/**
+	 * Called before patching a child.
+	 * @param child The name or (current) index of the child.
+	 */
+	void begin(Object child) {
+		current = child;
+		replaced = 0;
+	}
+
+	/**
+	 * Called after patching a child.
+	 * @param sizeChange How much the size of the container changed while patching the child.
+	 */
+	void end(int sizeChange) {
+		current = null;
+
+		// The child may have been replaced or removed, but nothing else; otherwise later positions are no longer known.
+		if (replaced > 1 || sizeChange > 0 || sizeChange < -replaced)
+			valid = false;
+	}
+
+	/**
+	 * Stops watching the container.
+	 */
+	void close() {
+		valid = false;
+	}
+
+	@Override
+	public boolean mutated(@Nullable Object[] path) {
+		if (!valid) return false;
+
+		if (path == null || current == null || !current.equals(path[0])) {
+			valid = false;
+			return false;
+		}
+
+		if (path.length == 1) replaced++;
+
+		return true;
+	}
+
+	/**
+	 * Creates a context for testing or patching a child in parallel with others.
+	 */
+	@FunctionalInterface
+	static interface Isolated {
+
+		/**
+		 * Creates a context for the child at the given position. It must not share its session with any other context.
+		 * @param position The position of the child.
+		 * @param context The patch context to use for the child.
+		 * @return The new context.
+		 */
+		ElementContext create(int position, PatchContext context);
+	}
+}
@@ -1,7 +1,9 @@
 package net.enderturret.patched.patch;
 
-import java.util.LinkedHashSet;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
@@ -9,12 +11,22 @@ import org.jetbrains.annotations.Nullable;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
+import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.JsonSelector;
+import net.enderturret.patched.JsonSelector.NameSelector;
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.TraversalMode;
 import net.enderturret.patched.exception.PatchingException;
+import net.enderturret.patched.exception.TraversalException;
 import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.ElementContexts;
 import net.enderturret.patched.patch.context.PatchContext;
+import net.enderturret.patched.patch.context.PatchSession;
+import net.enderturret.patched.patch.context.PlaceholderSlots;
 
 /**
  * A patch that finds an element matching some criteria and applies a patch to it.
@@ -24,10 +36,20 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class FindPatch extends JsonPatch {
 
-	private final List<TestPatch> tests;
-	private final JsonPatch then;
-	private final @Nullable String placeholder;
-	private final boolean multi;
+	final List<TestPatch> tests;
+	final JsonPatch then;
+	final @Nullable String placeholder;
+	private final int placeholderSlot;
+	final boolean multi;
+
+	private final TestGroup testGroup;
+
+	/**
+	 * The position in {@link #tests} of the test that can be answered using a {@link FindIndex}, or {@code -1} if there is none.
+	 */
+	private final int indexedTest;
+	@Nullable
+	private final JsonSelector[] indexedPath;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#find(String, List, JsonPatch, boolean)} instead.
@@ -40,11 +62,37 @@ public final class FindPatch extends JsonPatch {
 	 */
 	@Internal
 	protected FindPatch(String path, List<TestPatch> tests, JsonPatch then, @Nullable String placeholder, boolean multi) {
+		this(JsonSelector.of(path), tests, then, placeholder, multi);
+	}
+
+	/**
+	 * Equivalent to {@link #FindPatch(String, List, JsonPatch, String, boolean)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	FindPatch(JsonSelector path, List<TestPatch> tests, JsonPatch then, @Nullable String placeholder, boolean multi) {
 		super(path);
 		this.tests = tests;
+		testGroup = new TestGroup(tests);
 		this.then = then;
 		this.placeholder = placeholder;
+		placeholderSlot = placeholder != null ? PlaceholderSlots.slot(placeholder) : PlaceholderSlots.NONE;
 		this.multi = multi;
+
+		int indexedTest = -1;
+		JsonSelector[] indexedPath = null;
+
+		for (int i = 0; i < tests.size(); i++) {
+			// Tests preceding the indexed one are skipped for children the index rules out, which is only fine if they're plain tests.
+			if (tests.get(i).type != null) break;
+
+			if ((indexedPath = FindIndex.indexablePath(tests.get(i))) != null) {
+				indexedTest = i;
+				break;
+			}
+		}
+
+		this.indexedTest = indexedTest;
+		this.indexedPath = indexedPath;
 	}
 
 	@Override
@@ -74,78 +122,332 @@ public final class FindPatch extends JsonPatch {
 		obj.add("then", context.serialize(then));
 	}
 
-	private boolean testAll(ElementContext root) {
-		for (TestPatch tp : tests)
-			if (!tp.test(root))
-				return false;
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		if (placeholder != null)
+			out.name("placeholder").value(placeholder);
+
+		if (multi)
+			out.name("multi").value(multi);
+
+		if (tests.size() == 1) {
+			out.name("test");
+			tests.get(0).writeTo(out, adapter, "test");
+		} else if (!tests.isEmpty()) {
+			out.name("test").beginArray();
+
+			for (TestPatch test : tests)
+				test.writeTo(out, adapter, "test");
+
+			out.endArray();
+		}
+
+		out.name("then");
+		adapter.write(out, then);
+	}
+
+	@Nullable
+	private JsonSelector getPlaceholder(ElementContext parent) {
+		return placeholderSlot != PlaceholderSlots.NONE ? parent.getPlaceholder(placeholderSlot) : parent.getPlaceholder(placeholder);
+	}
+
+	private void setPlaceholder(ElementContext parent, @Nullable JsonSelector value) {
+		if (placeholderSlot != PlaceholderSlots.NONE) parent.setPlaceholder(placeholderSlot, value);
+		else parent.setPlaceholder(placeholder, value);
+	}
+
+	@Nullable
+	private FindIndex findIndex(ElementContext parent, JsonArray array, PatchContext context) {
+		if (indexedTest == -1 || parent.session() == null) return null;
+
+		// Something may be modifying the document without telling the index.
+		if (!parent.session().isTracked()) return null;
+
+		// Failing tests throw exceptions, so we must not skip any.
+		if (context.throwOnFailedTest()) return null;
+
+		if (context.testExtensions() && tests.get(indexedTest).inverse) return null;
+
+		return FindIndex.get(parent.session(), array, indexedPath);
+	}
+
+	@Override
+	JsonPatch fold(PatchContext context) {
+		final List<TestPatch> tests = new ArrayList<>(this.tests.size());
+		boolean changed = false;
+
+		for (TestPatch test : this.tests) {
+			final Boolean result = test.constantResult(context);
+
+			if (result == null)
+				tests.add(test);
+			else if (result)
+				changed = true;
+			else
+				// Nothing can ever be found.
+				return new CompoundPatch(new JsonPatch[0]);
+		}
 
+		final JsonPatch then = this.then.fold(context);
+		changed |= then != this.then;
+
+		// Finding things to do nothing to is pointless, as long as finding them has no side-effects.
+		if (then instanceof CompoundPatch compound && compound.isEmpty() && testGroup.isSideEffectFree(context.testEvaluator()))
+			return then;
+
+		return changed ? new FindPatch(path, tests, then, placeholder, multi) : this;
+	}
+
+	@Override
+	void compileTests(ITestEvaluator evaluator) {
+		for (TestPatch test : tests)
+			test.compileTests(evaluator);
+
+		then.compileTests(evaluator);
+	}
+
+	@Override
+	boolean reportsMutations() {
 		return true;
 	}
 
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return isLocal(path) && testGroup.isChildLocal(evaluator) && then.isChildLocal(evaluator);
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		// Child-local tests and patches can only touch the elements being searched through.
+		return isChildLocal(evaluator) && collectFootprint(path, into);
+	}
+
+	/**
+	 * <p>Returns statistics about how each of this patch's tests has performed so far.</p>
+	 * <p>Statistics are only collected while {@linkplain PatchContext#adaptiveTestOrder() adaptive test ordering} is enabled.</p>
+	 * @return The statistics of each test, in the order the tests were declared in.
+	 * @since 2.1.0
+	 */
+	public List<TestStatistics> testStatistics() {
+		return testGroup.statistics();
+	}
+
 	@Override
 	public void patch(ElementContext root, PatchContext context) throws PatchingException {
 		if (!context.patchedExtensions())
 			throw new PatchingException("find: Patched extensions are not enabled.");
 
+		final PatchEvents.Find event = new PatchEvents.Find();
+
+		if (!event.isEnabled()) {
+			scan(root, context, null);
+			return;
+		}
+
+		event.begin();
+
+		try {
+			scan(root, context, event);
+		} finally {
+			if (event.shouldCommit()) {
+				event.path = path.toString();
+				event.document = PatchEvents.document(root);
+				event.commit();
+			}
+		}
+	}
+
+	private void scan(ElementContext root, PatchContext context, @Nullable PatchEvents.Find event) {
 		final ElementContext parent = path.select(root, true);
 
 		String strPath = null;
 
 		if (parent.elem() instanceof JsonObject o) {
-			// Copy the set first, so we don't encounter CMEs.
-			// We're using LinkedHashSet instead of Set.of to avoid element re-shuffling.
-			// This is necessary as otherwise you will encounter inconsistent element modification.
+			// Take a snapshot of the entries first, so we don't encounter CMEs.
+			// The snapshot keeps the original order, as otherwise you will encounter inconsistent element modification.
 			// See PatchingTests "find/remove_unspecific" for more information.
-			for (String key : new LinkedHashSet<>(o.keySet())) {
-				final JsonElement elem = o.get(key);
-				final ElementContext childContext = parent.child(key, elem);
-				if (placeholder != null) childContext.setPlaceholder(placeholder, new JsonSelector.NameSelector(key));
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final Map.Entry<String, JsonElement>[] entries = o.entrySet().toArray(new Map.Entry[0]);
+			final FindMatches matches = FindMatches.test(testGroup, parent, entries.length, i -> parent.child(entries[i].getKey(), entries[i].getValue()),
+					(i, ctx) -> new ElementContexts.Object(ctx, parent.doc(), null, o, entries[i].getKey(), entries[i].getValue()), context);
+
+			if (matches != null && multi && then.isChildLocal(context.testEvaluator()) && matches.patchAll(then, path.toString(), context)) {
+				if (event != null) event.parallel(entries.length, matches.count());
+				return;
+			}
+
+			if (matches != null) matches.watch();
+
+			// Entries keep their old value after being removed from the object, so the values in the snapshot can only be trusted as long as no other entries are modified.
+			final EntryWatcher watcher = parent.session() != null ? new EntryWatcher() : null;
+			if (watcher != null) parent.session().watch(o, watcher);
 
-				if (!testAll(childContext))
-					continue;
+			final PlaceholderBinding binding = placeholder != null ? new PlaceholderBinding() : null;
+			final JsonSelector previous = placeholder != null ? getPlaceholder(parent) : null;
+			if (placeholder != null) setPlaceholder(parent, binding);
 
-				// Tests succeeded, apply patch.
+			try {
+				for (int i = 0; i < entries.length; i++) {
+					final String key = entries[i].getKey();
+					final JsonElement elem = watcher != null && !watcher.stale ? entries[i].getValue() : o.get(key);
+					final ElementContext childContext = parent.child(key, elem);
+					if (binding != null) binding.bind(key);
+					if (event != null) event.children++;
 
-				if (context.audit() != null) context.audit().beginPrefix((strPath == null ? strPath = path.toString() : strPath), key);
-				then.patch(childContext, context);
-				if (context.audit() != null) context.audit().endPrefix();
+					if (matches != null && matches.isValid() ? !matches.passed(i) : !testGroup.test(childContext))
+						continue;
 
-				if (placeholder != null) childContext.setPlaceholder(placeholder, null);
+					if (event != null) event.matches++;
 
-				if (!multi)
-					return;
+					// Tests succeeded, apply patch.
+
+					final int size = o.size();
+					if (matches != null) matches.begin(key);
+					if (watcher != null) watcher.current = key;
+
+					if (context.audit() != null) context.audit().beginPrefix((strPath == null ? strPath = path.toString() : strPath), key);
+					Metering.patch(then, childContext, context);
+					if (context.audit() != null) context.audit().endPrefix();
+
+					if (watcher != null) watcher.current = null;
+					if (matches != null) matches.end(o.size() - size);
+
+					if (!multi)
+						return;
+				}
+			} finally {
+				if (matches != null) matches.close();
+				if (watcher != null) watcher.stale = true;
+				if (placeholder != null) setPlaceholder(parent, previous);
 			}
 		}
 		else if (parent.elem() instanceof JsonArray a) {
-			// Use traditional iteration so we don't encounter surprise CMEs.
-			int baseSize = a.size();
-			for (int i = 0; i < baseSize; i++) {
-				final JsonElement elem = a.get(i);
-				final ElementContext childContext = parent.child(i, elem);
-				if (placeholder != null) childContext.setPlaceholder(placeholder, new JsonSelector.NumericSelector(i, Integer.toString(i)));
+			final FindIndex index = findIndex(parent, a, context);
+			int[] candidates = index != null ? index.positions((JsonPrimitive) tests.get(indexedTest).test) : null;
+
+			// The index already lets us skip most children, so there's little point in also testing in parallel.
+			final FindMatches matches = index == null ? FindMatches.test(testGroup, parent, a.size(), i -> parent.child(i, a.get(i)),
+					(i, ctx) -> new ElementContexts.Array(ctx, parent.doc(), null, a, i, a.get(i)), context) : null;
+
+			if (matches != null && multi && then.isChildLocal(context.testEvaluator()) && matches.patchAll(then, path.toString(), context)) {
+				if (event != null) event.parallel(a.size(), matches.count());
+				return;
+			}
+
+			if (matches != null) matches.watch();
+			// The number of children removed so far, to map current positions to the ones the children were tested at.
+			int removed = 0;
+
+			final PlaceholderBinding binding = placeholder != null ? new PlaceholderBinding() : null;
+			final JsonSelector previous = placeholder != null ? getPlaceholder(parent) : null;
+			if (placeholder != null) setPlaceholder(parent, binding);
+
+			try {
+				// Use traditional iteration so we don't encounter surprise CMEs.
+				int baseSize = a.size();
+				for (int i = 0; i < baseSize; i++) {
+					if (candidates != null) {
+						// Skip ahead to the next child that could pass the tests. If the index was invalidated, we continue searching the normal way from here.
+						if (!index.isValid())
+							candidates = null;
+						else if ((i = FindIndex.next(candidates, i)) >= baseSize)
+							break;
+					}
+
+					final JsonElement elem = a.get(i);
+					final ElementContext childContext = parent.child(i, elem);
+					if (binding != null) binding.bind(i);
+					if (event != null) event.children++;
+
+					if (matches != null && matches.isValid() ? !matches.passed(i + removed) : !testGroup.test(childContext))
+						continue;
 
-				if (!testAll(childContext))
-					continue;
+					if (event != null) event.matches++;
 
-				// Tests succeeded, apply patch.
+					// Tests succeeded, apply patch.
 
-				if (context.audit() != null) context.audit().beginPrefix((strPath == null ? strPath = path.toString() : strPath), Integer.toString(i));
-				then.patch(childContext, context);
-				if (context.audit() != null) context.audit().endPrefix();
+					if (matches != null) matches.begin(i);
 
-				if (placeholder != null) childContext.setPlaceholder(placeholder, null);
+					if (context.audit() != null) context.audit().beginPrefix((strPath == null ? strPath = path.toString() : strPath), Integer.toString(i));
+					Metering.patch(then, childContext, context);
+					if (context.audit() != null) context.audit().endPrefix();
 
-				if (!multi)
-					return;
+					if (!multi)
+						return;
 
-				final int newSize = a.size();
-				if (newSize < baseSize) {
-					baseSize = newSize;
-					i--;
+					final int newSize = a.size();
+					if (matches != null) matches.end(newSize - baseSize);
+
+					if (newSize < baseSize) {
+						removed += baseSize - newSize;
+						baseSize = newSize;
+						i--;
+					}
 				}
+			} finally {
+				if (matches != null) matches.close();
+				if (placeholder != null) setPlaceholder(parent, previous);
 			}
 		}
 
 		else throw new PatchingException("Expected an array or object to 'find' in, but was: " + parent.elem() + "!");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Watches an object while its entries are iterated, to tell when the values in the entry snapshot may be out of date.
+	 */
+	private static final class EntryWatcher implements PatchSession.MutationWatcher {
+
+		@Nullable
+		private String current;
+		private boolean stale;
+
+		@Override
+		public boolean mutated(@Nullable Object[] path) {
+			// Changes to the entry being patched, or anything inside an entry, don't affect the values of the remaining entries.
+			if (!stale && path != null && (path.length > 1 || path[0].equals(current)))
+				return true;
+
+			stale = true;
+			return false;
+		}
+	}
+
+	/**
+	 * <p>The selector the placeholder of a find patch is bound to while searching.</p>
+	 * <p>A single binding is reused for every child, and only turns into a real selector when the placeholder is actually used.</p>
+	 */
+	private static final class PlaceholderBinding implements JsonSelector {
+
+		@Nullable
+		private String name;
+		private int index;
+
+		void bind(String name) {
+			this.name = name;
+		}
+
+		void bind(int index) {
+			this.index = index;
+		}
+
+		private JsonSelector resolve() {
+			return name != null ? new NameSelector(name) : new NumericSelector(index, Integer.toString(index));
+		}
+
+		@Override
+		public ElementContext select(ElementContext context, boolean throwOnError, TraversalMode mode) throws TraversalException {
+			return resolve().select(context, throwOnError, mode);
+		}
+
+		@Override
+		public String toAuditString(ElementContext context) {
+			return resolve().toAuditString(context);
+		}
+
+		@Override
+		public String toString() {
+			return resolve().toString();
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
 import net.enderturret.patched.exception.PatchingException;
 import net.enderturret.patched.exception.TraversalException;
@@ -22,7 +25,7 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class IncludePatch extends JsonPatch {
 
-	private final String path;
+	final String path;
 
 	/**
 	 * Constructs a new {@code IncludePatch}.
@@ -30,7 +33,7 @@ public final class IncludePatch extends JsonPatch {
 	 * @since 1.4.0
 	 */
 	protected IncludePatch(String path) {
-		super(null);
+		super((String) null);
 		this.path = path;
 	}
 
@@ -42,10 +45,25 @@ public final class IncludePatch extends JsonPatch {
 		if (context.fileAccess() == null)
 			throw new PatchingException("Attempted to include a patch, but no file access has been installed!");
 
+		final PatchEvents.Include event = new PatchEvents.Include();
+		event.begin();
+
 		final JsonPatch patch = context.fileAccess().readIncludedPatch(path);
+
+		if (event.shouldCommit()) {
+			event.path = path;
+			event.found = patch != null;
+			event.commit();
+		}
+
 		if (patch == null) throw new PatchingException("Attempted to include a patch that doesn't exist: " + path);
 
-		patch.patch(root, context);
+		Metering.include(patch, path, root, context);
+	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
 	}
 
 	@Override
@@ -57,4 +75,9 @@ public final class IncludePatch extends JsonPatch {
 	protected void writeAdditional(JsonObject obj, JsonSerializationContext context) {
 		obj.addProperty("path", path);
 	}
+
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		out.name("path").value(path);
+	}
 }
\ No newline at end of file
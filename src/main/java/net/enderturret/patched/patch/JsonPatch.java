@@ -1,8 +1,10 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -14,16 +16,29 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonWriter;
 
+import net.enderturret.patched.ChangeSet;
+import net.enderturret.patched.DryRun;
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.IMutationListener.Mutation;
+import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.JsonDocument;
 import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.JsonSelector.CompoundSelector;
+import net.enderturret.patched.JsonSelector.EmptySelector;
+import net.enderturret.patched.JsonSelector.NameSelector;
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.LazyDocument;
 import net.enderturret.patched.Patches;
+import net.enderturret.patched.audit.PatchAudit;
 import net.enderturret.patched.exception.PatchingException;
 import net.enderturret.patched.exception.TraversalException;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.ElementContexts;
+import net.enderturret.patched.patch.context.ImmutablePatchContext;
 import net.enderturret.patched.patch.context.PatchContext;
+import net.enderturret.patched.patch.context.UndoLog;
 
 /**
  * <p>A patch that can be used to modify Json data.</p>
@@ -34,6 +49,19 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public abstract class JsonPatch {
 
+	/**
+	 * Whether patches of each class override {@link #write(JsonSerializationContext, String)} in a more specific class than {@link #write(JsonWriter, JsonPatchAdapter, String)}.
+	 * Such patches predate the streaming form (or don't know about it), so writing them with it would lose whatever they write themselves.
+	 */
+	private static final ClassValue<Boolean> WRITES_TREE = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			final Class<?> tree = declarer(type, JsonSerializationContext.class, String.class);
+			final Class<?> stream = declarer(type, JsonWriter.class, JsonPatchAdapter.class, String.class);
+			return tree != stream && stream.isAssignableFrom(tree);
+		}
+	};
+
 	@Nullable
 	protected final JsonSelector path;
 
@@ -43,18 +71,30 @@ public abstract class JsonPatch {
 	 * @since 1.0.0
 	 */
 	protected JsonPatch(@Nullable String path) {
-		if (path != null) {
-			final CompoundSelector selector = JsonSelector.of(path);
-			if (selector.isEmpty())
-				this.path = new JsonSelector.EmptySelector();
-			else
-				this.path = selector;
-		} else
-			this.path = null;
+		this(path == null ? null : JsonSelector.of(path));
+	}
+
+	/**
+	 * Equivalent to {@link #JsonPatch(String)}, but with an already-parsed path.
+	 * This is used when loading patches from a {@link PatchArchive}, to avoid parsing the same paths again.
+	 * @param path The path that will be followed to find an element in {@link #patch(ElementContext, PatchContext)}, or {@code null} to handle this yourself.
+	 * @since 2.1.0
+	 */
+	JsonPatch(@Nullable JsonSelector path) {
+		if (path instanceof CompoundSelector selector && selector.isEmpty())
+			this.path = new JsonSelector.EmptySelector();
+		else
+			this.path = path;
 	}
 
 	/**
 	 * <p>Applies this patch to the given root element. The element need not be a root element, but usually is. In cases where the element is <i>not</i> a root element, use the corresponding {@link ElementContext}.</p>
+	 * <p>
+	 * The patches built into Patched make every modification through {@link PatchUtil#applyAdd(ElementContext, JsonElement, boolean)} and {@link PatchUtil#applyRemove(ElementContext)},
+	 * which keeps cached information about the document (such as the indexes {@link FindPatch} builds to search large arrays) up to date.
+	 * Other patches can't be relied on to do so, so no cached information is used while they are being applied, and all of it is discarded afterwards.
+	 * The same goes for {@link PastePatch}, whose data source is given part of the document, and for custom tests that aren't {@linkplain ITestEvaluator#isSideEffectFree(String) side-effect-free}.
+	 * </p>
 	 * @param root The root element to apply the patch to.
 	 * @param context The {@link PatchContext}. This customizes what features are available, among other things.
 	 * @throws PatchingException If the patch could not be applied for some reason.
@@ -73,7 +113,230 @@ public abstract class JsonPatch {
 	 * @since 1.3.0
 	 */
 	public final void patch(JsonDocument root, PatchContext context) throws PatchingException, TraversalException {
-		patch(new ElementContexts.Document(context, null, root), context);
+		Metering.patch(this, new ElementContexts.Document(context, null, root), context);
+	}
+
+	/**
+	 * <p>Applies this patch to the given document as a transaction: if applying it throws anything, every modification it made is rolled back before rethrowing it.</p>
+	 * <p>
+	 * This is otherwise the same as {@link #patch(JsonDocument, PatchContext)}, but avoids having to copy the document up front just in case something fails.
+	 * Instead, an undo log of the modifications is kept, so the cost is proportional to the number of modifications,
+	 * plus the size of each object that members are removed from (see {@link UndoLog}).
+	 * If an audit is installed, the patch records into a {@linkplain PatchAudit#fork() fork} of it, which is only merged back if the patch succeeds.
+	 * </p>
+	 * <p>
+	 * A test failing without an exception is not a failure: it just stops the patches after it from being applied, and what came before is kept.
+	 * Enable {@link PatchContext#throwOnFailedTest()} to roll back when any test fails.
+	 * Modifications undone by a rollback are not reported to the {@linkplain PatchContext#mutationListener() mutation listener}.
+	 * </p>
+	 * @param root The document to apply the patch to.
+	 * @param context The {@link PatchContext}. This customizes what features are available, among other things.
+	 * @throws PatchingException If the patch could not be applied for some reason. The document is left as it was.
+	 * @throws TraversalException If a path in the patch could not be traversed. The document is left as it was.
+	 * @since 2.1.0
+	 */
+	public final void patchTransactional(JsonDocument root, PatchContext context) throws PatchingException, TraversalException {
+		final PatchAudit audit = context.audit() != null ? context.audit().fork() : null;
+		final PatchContext ctx = audit != null ? ImmutablePatchContext.newContext(context).audit(audit) : context;
+		final ElementContext elem = new ElementContexts.Document(ctx, null, root);
+		final UndoLog undo = new UndoLog();
+		elem.session().undoLog(undo);
+
+		boolean committed = false;
+
+		try {
+			Metering.patch(this, elem, ctx);
+			committed = true;
+		} finally {
+			// Errors (such as running out of stack on a deep patch) are rolled back too.
+			if (!committed) undo.rollback();
+		}
+
+		if (audit != null) context.audit().merge(audit);
+	}
+
+	/**
+	 * <p>Tries applying this patch to the given document, reporting whether it would succeed and what it would change, without keeping any of the changes.</p>
+	 * <p>
+	 * The patch is applied as a {@linkplain #patchTransactional(JsonDocument, PatchContext) transaction} that is always rolled back,
+	 * so the document is never copied, and is left as it was once this returns. Nothing is reported to the {@linkplain PatchContext#mutationListener() mutation listener}
+	 * or {@linkplain PatchContext#metrics() metrics}, or recorded in the audit.
+	 * Flight recorder events are still emitted, as the work of trying the patch is still done.
+	 * </p>
+	 * <p>
+	 * The document is modified while the patch is being tried, so it must not be read concurrently,
+	 * and custom tests and data sources see the intermediate state, just like when applying the patch.
+	 * </p>
+	 * <p>
+	 * As with {@link #patch(JsonDocument, PatchContext)}, a test failing without an exception only stops the patches after it from being applied.
+	 * Enable {@link PatchContext#throwOnFailedTest()} to have failing tests reported as failures.
+	 * </p>
+	 * @param root The document to try the patch on.
+	 * @param context The {@link PatchContext}. This customizes what features are available, among other things.
+	 * @return The outcome.
+	 * @since 2.1.0
+	 */
+	public final DryRun dryRun(JsonDocument root, PatchContext context) {
+		final ChangeSet.Recorder recorder = new ChangeSet.Recorder();
+		final List<Mutation> mutations = new ArrayList<>();
+
+		final PatchContext ctx = ImmutablePatchContext.newContext(context)
+				.audit(context.audit() != null ? context.audit().fork() : null)
+				.metrics(null)
+				.mutationListener(mutation -> {
+					mutations.add(mutation);
+					recorder.mutated(mutation);
+				});
+
+		final ElementContext elem = new ElementContexts.Document(ctx, null, root);
+		final UndoLog undo = new UndoLog();
+		elem.session().undoLog(undo);
+		RuntimeException failure = null;
+
+		try {
+			Metering.patch(this, elem, ctx);
+		} catch (RuntimeException e) {
+			failure = e;
+		} finally {
+			undo.rollback();
+		}
+
+		return new DryRun(failure, List.copyOf(mutations), recorder.toChangeSet());
+	}
+
+	/**
+	 * <p>Applies this patch to the given document, keeping track of what was changed.</p>
+	 * <p>
+	 * This is otherwise the same as {@link #patch(JsonDocument, PatchContext)}.
+	 * If the context already has a {@linkplain PatchContext#mutationListener() mutation listener}, it is still told about every modification.
+	 * </p>
+	 * @param root The document to apply the patch to.
+	 * @param context The {@link PatchContext}. This customizes what features are available, among other things.
+	 * @return The parts of the document that were changed.
+	 * @throws PatchingException If the patch could not be applied for some reason. The document may have been partially modified.
+	 * @throws TraversalException If a path in the patch could not be traversed.
+	 * @since 2.1.0
+	 */
+	public final ChangeSet patchTracked(JsonDocument root, PatchContext context) throws PatchingException, TraversalException {
+		final ChangeSet.Recorder recorder = new ChangeSet.Recorder();
+		final IMutationListener listener = context.mutationListener();
+
+		patch(root, ImmutablePatchContext.newContext(context).mutationListener(listener == null ? recorder : mutation -> {
+			listener.mutated(mutation);
+			recorder.mutated(mutation);
+		}));
+
+		return recorder.toChangeSet();
+	}
+
+	/**
+	 * <p>Determines whether this patch only ever looks at things inside the element it is applied to, and only ever modifies things strictly inside it.</p>
+	 * <p>Such patches can be applied to several children of a container at the same time, as applying them to one child can't affect another.
+	 * See {@link FindPatch}.</p>
+	 * @param evaluator The installed test evaluator, which decides whether custom tests are safe. May be {@code null}.
+	 * @return {@code true} if this patch is known to only touch the inside of the element it is applied to.
+	 * @since 2.1.0
+	 */
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return false;
+	}
+
+	/**
+	 * <p>Determines whether this patch reports every modification it makes itself, by making them through {@link PatchUtil#applyAdd(ElementContext, JsonElement, boolean)} and {@link PatchUtil#applyRemove(ElementContext)}.</p>
+	 * <p>Patches that don't are applied in an {@linkplain net.enderturret.patched.patch.context.PatchSession#beginUntracked() untracked} part of the session. Patches applied by this patch are checked separately.</p>
+	 * @return {@code true} if this patch is known to report its modifications.
+	 * @since 2.1.0
+	 */
+	boolean reportsMutations() {
+		return false;
+	}
+
+	/**
+	 * <p>Determines which parts of a document this patch may look at or modify, when applied to the root of the document.</p>
+	 * <p>
+	 * This is used by {@link LazyDocument} to decide which parts of a document need to be loaded before the patch is applied,
+	 * and can likewise be used to tell whether a patch can affect (or be affected by) a particular part of a document.
+	 * The result is conservative: patches not built into Patched, and patches with paths that depend on the document (such as ones using placeholders),
+	 * may look at anything.
+	 * </p>
+	 * @param evaluator The test evaluator that will be installed when the patch is applied, which decides what custom tests may look at. May be {@code null}.
+	 * @return The paths to the elements the patch may look at or modify (including everything inside them), which need not exist,
+	 * or {@code null} if the patch may look at anything in the document. Paths are only made of {@link NameSelector}s and {@link NumericSelector}s.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public final List<JsonSelector[]> footprint(@Nullable ITestEvaluator evaluator) {
+		final List<JsonSelector[]> ret = new ArrayList<>();
+		return collectFootprint(ret, evaluator) ? ret : null;
+	}
+
+	/**
+	 * Adds the paths this patch may look at or modify to {@code into}. See {@link #footprint(ITestEvaluator)}.
+	 * @param into The list to add the paths to.
+	 * @param evaluator The installed test evaluator. May be {@code null}.
+	 * @return {@code false} if the patch may look at anything in the document.
+	 */
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		return false;
+	}
+
+	/**
+	 * Adds the given path to {@code into}, if it is static.
+	 * @return {@code false} if the path isn't static, meaning it may select anything.
+	 */
+	static boolean collectFootprint(@Nullable JsonSelector path, List<JsonSelector[]> into) {
+		if (path == null || path instanceof EmptySelector) {
+			into.add(new JsonSelector[0]);
+			return true;
+		}
+
+		if (!isLocal(path)) return false;
+
+		into.add(((CompoundSelector) path).path());
+		return true;
+	}
+
+	/**
+	 * Returns a version of this patch with its {@linkplain ITestEvaluator#isDocumentIndependent(String) document-independent} tests evaluated ahead of time.
+	 * See {@link PatchUtil#fold(JsonPatch, PatchContext)}.
+	 * @param context The context the patch will be applied with.
+	 * @return The folded patch, or {@code this} if nothing could be folded.
+	 * @since 2.1.0
+	 */
+	JsonPatch fold(PatchContext context) {
+		return this;
+	}
+
+	/**
+	 * Has the given evaluator {@linkplain ITestEvaluator#compile(String, JsonElement) compile} the custom tests in this patch.
+	 * See {@link PatchUtil#compileTests(JsonPatch, ITestEvaluator)}.
+	 * @param evaluator The evaluator.
+	 * @since 2.1.0
+	 */
+	void compileTests(ITestEvaluator evaluator) {}
+
+	/**
+	 * @return {@code true} if the given path can only select the element it is applied to or things inside it.
+	 */
+	static boolean isLocal(@Nullable JsonSelector path) {
+		if (path == null || path instanceof EmptySelector) return true;
+
+		if (!(path instanceof CompoundSelector compound) || compound.absolute())
+			return false;
+
+		// Placeholders may point anywhere.
+		for (JsonSelector selector : compound.path())
+			if (!(selector instanceof NameSelector) && !(selector instanceof NumericSelector))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * @return {@code true} if the given path can only select things inside the element it is applied to, but not the element itself.
+	 */
+	static boolean isInside(@Nullable JsonSelector path) {
+		return path instanceof CompoundSelector compound && !compound.isEmpty() && isLocal(compound);
 	}
 
 	/**
@@ -114,6 +377,79 @@ public abstract class JsonPatch {
 	 */
 	protected void writeAdditional(JsonObject obj, JsonSerializationContext context) {}
 
+	/**
+	 * <p>Writes this {@link JsonPatch} directly to the given {@link JsonWriter}, without building a {@link JsonElement} first.</p>
+	 * <p>The output must be identical to that of {@link #write(JsonSerializationContext, String)}.
+	 * Subclasses that override that method but not this one are written with that method instead.</p>
+	 * @param out The writer to write to.
+	 * @param adapter The adapter to use for writing nested patches. See {@link JsonPatchAdapter}.
+	 * @param omitOperation If non-{@code null}, specifies an operation that can be omitted from the output. This is useful for nicer output in places where the operation is limited or defaulted.
+	 * @throws IOException If an exception occurs writing to {@code out}.
+	 * @since 2.1.0
+	 */
+	protected void write(JsonWriter out, JsonPatchAdapter adapter, @Nullable String omitOperation) throws IOException {
+		out.beginObject();
+
+		if (!operation().equals(omitOperation))
+			out.name("op").value(operation());
+
+		if (path != null)
+			out.name("path").value(path.toString());
+
+		writeAdditional(out, adapter);
+
+		out.endObject();
+	}
+
+	/**
+	 * Writes this patch with {@link #write(JsonWriter, JsonPatchAdapter, String)},
+	 * or with {@link #write(JsonSerializationContext, String)} if that is overridden by a more specific class.
+	 * @param out The writer to write to.
+	 * @param adapter The adapter to use for writing nested patches.
+	 * @param omitOperation If non-{@code null}, specifies an operation that can be omitted from the output.
+	 * @throws IOException If an exception occurs writing to {@code out}.
+	 */
+	final void writeTo(JsonWriter out, JsonPatchAdapter adapter, @Nullable String omitOperation) throws IOException {
+		if (WRITES_TREE.get(getClass()))
+			JsonPatchAdapter.ELEMENT_ADAPTER.write(out, write(adapter.treeContext(), omitOperation));
+		else
+			write(out, adapter, omitOperation);
+	}
+
+	/**
+	 * @return The most specific class declaring the {@code write} method with the given parameters.
+	 */
+	private static Class<?> declarer(Class<?> type, Class<?>... parameters) {
+		// JsonPatch declares both forms, so this always finds one.
+		for (Class<?> c = type; ; c = c.getSuperclass())
+			try {
+				c.getDeclaredMethod("write", parameters);
+				return c;
+			} catch (NoSuchMethodException e) {
+				// Inherited from a superclass.
+			}
+	}
+
+	/**
+	 * <p>Writes any additional information the patch contains to the given writer.</p>
+	 * <p>By default, this writes whatever {@link #writeAdditional(JsonObject, JsonSerializationContext)} produces.
+	 * Patches can override this to avoid building the intermediate {@link JsonObject}.</p>
+	 * @param out The writer to write to. It is currently inside the patch's object.
+	 * @param adapter The adapter to use for writing nested patches. See {@link JsonPatchAdapter}.
+	 * @throws IOException If an exception occurs writing to {@code out}.
+	 * @since 2.1.0
+	 */
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		final JsonObject obj = new JsonObject();
+
+		writeAdditional(obj, adapter.treeContext());
+
+		for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+			out.name(entry.getKey());
+			JsonPatchAdapter.ELEMENT_ADAPTER.write(out, entry.getValue());
+		}
+	}
+
 	/**
 	 * The (de)serializer for Json patches.
 	 * @author EnderTurret
@@ -128,24 +464,40 @@ public abstract class JsonPatch {
 		private final boolean testExtensions;
 		private final boolean patchedExtensions;
 
+		private final PatchInterner interner;
+
 		/**
 		 * Constructs a new {@code Serializer}.
 		 * @param defaultOp The default operation. This is the operation used if one isn't provided in the patch.
 		 * @param enforceOp Whether to enforce the default operation. This can be used to force all read patches to be a specific kind.
 		 * @param testExtensions Whether to enable deserializing patches using the test extensions -- see {@link PatchContext}.
 		 * @param patchedExtensions Whether to enable deserializing patches using the "find" operation -- see {@link PatchContext}.
-		 * @since 1.0.0
+		 * @param interner If non-{@code null}, the interner used to deduplicate the paths and values of read patches.
+		 * @since 2.1.0
 		 */
-		public Serializer(@Nullable String defaultOp, boolean enforceOp, boolean testExtensions, boolean patchedExtensions) {
+		public Serializer(@Nullable String defaultOp, boolean enforceOp, boolean testExtensions, boolean patchedExtensions, @Nullable PatchInterner interner) {
 			this.defaultOp = defaultOp;
 			this.enforceOp = enforceOp;
 			this.testExtensions = testExtensions;
 			this.patchedExtensions = patchedExtensions;
+			this.interner = interner != null ? interner : PatchInterner.NONE;
 			if (enforceOp && defaultOp == null)
 				// What does a null operation even mean?
 				throw new IllegalArgumentException("Cannot enforce null operation!");
 		}
 
+		/**
+		 * Equivalent to {@link #Serializer(String, boolean, boolean, boolean, PatchInterner)} without interning.
+		 * @param defaultOp The default operation. This is the operation used if one isn't provided in the patch.
+		 * @param enforceOp Whether to enforce the default operation. This can be used to force all read patches to be a specific kind.
+		 * @param testExtensions Whether to enable deserializing patches using the test extensions -- see {@link PatchContext}.
+		 * @param patchedExtensions Whether to enable deserializing patches using the "find" operation -- see {@link PatchContext}.
+		 * @since 1.0.0
+		 */
+		public Serializer(@Nullable String defaultOp, boolean enforceOp, boolean testExtensions, boolean patchedExtensions) {
+			this(defaultOp, enforceOp, testExtensions, patchedExtensions, null);
+		}
+
 		/**
 		 * Equivalent to {@link #Serializer(String, boolean, boolean, boolean)} with no default operation.
 		 * @param testExtensions Whether to enable deserializing patches using the test extensions -- see {@link PatchContext}.
@@ -239,13 +591,13 @@ public abstract class JsonPatch {
 					final JsonElement value = testExtensions || type != null ? obj.get("value") : get(obj, "value");
 					final boolean inverse = testExtensions && obj.has("inverse") && obj.get("inverse").getAsBoolean();
 
-					yield new TestPatch(type, path, value, inverse);
+					yield new TestPatch(interner.intern(type), interner.parse(path), interner.intern(value), inverse);
 				}
-				case "add" -> new AddPatch(getString(obj, "path"), get(obj, "value"));
-				case "remove" -> new RemovePatch(getString(obj, "path"));
-				case "copy" -> new CopyPatch(getString(obj, "path"), getString(obj, "from"));
-				case "move" -> new MovePatch(getString(obj, "path"), getString(obj, "from"));
-				case "replace" -> new ReplacePatch(getString(obj, "path"), get(obj, "value"));
+				case "add" -> new AddPatch(interner.parse(getString(obj, "path")), interner.intern(get(obj, "value")));
+				case "remove" -> new RemovePatch(interner.parse(getString(obj, "path")));
+				case "copy" -> new CopyPatch(interner.parse(getString(obj, "path")), interner.parse(getString(obj, "from")));
+				case "move" -> new MovePatch(interner.parse(getString(obj, "path")), interner.parse(getString(obj, "from")));
+				case "replace" -> new ReplacePatch(interner.parse(getString(obj, "path")), interner.intern(get(obj, "value")));
 
 				case "find" -> {
 					if (!patchedExtensions)
@@ -266,27 +618,27 @@ public abstract class JsonPatch {
 						tests = List.of(deserialize("test", true, obj.get("test"), TestPatch.class, context));
 
 					yield new FindPatch(
-							getString(obj, "path"),
+							interner.parse(getString(obj, "path")),
 							tests,
 							context.deserialize(obj.get("then"), JsonPatch.class),
-							obj.has("placeholder") ? getString(obj, "placeholder") : null,
+							obj.has("placeholder") ? interner.intern(getString(obj, "placeholder")) : null,
 							obj.has("multi") && obj.get("multi").getAsBoolean());
 				}
 				case "include" -> {
 					if (!patchedExtensions)
 						throw new PatchingException("Unsupported operation 'include': Patched extensions are not enabled.");
 
-					yield new IncludePatch(getString(obj, "path"));
+					yield new IncludePatch(interner.intern(getString(obj, "path")));
 				}
 				case "paste" -> {
 					if (!patchedExtensions)
 						throw new PatchingException("Unsupported operation 'paste': Patched extensions are not enabled.");
 
 					yield new PastePatch(
-							getString(obj, "path"),
-							getString(obj, "type"),
-							obj.has("from") ? getString(obj, "from") : null,
-							obj.get("value"));
+							interner.parse(getString(obj, "path")),
+							interner.intern(getString(obj, "type")),
+							obj.has("from") ? interner.parse(getString(obj, "from")) : null,
+							interner.intern(obj.get("value")));
 				}
 
 				default -> throw new PatchingException("Unknown operation '" + op + "'");
@@ -0,0 +1,372 @@
+package net.enderturret.patched.patch;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import net.enderturret.patched.Patches;
+import net.enderturret.patched.exception.PatchingException;
+import net.enderturret.patched.patch.context.PatchContext;
+
+/**
+ * <p>A streaming (de)serializer for Json patches.</p>
+ * <p>
+ * Unlike {@link JsonPatch.Serializer}, this adapter reads patches directly from a {@link JsonReader} instead of
+ * first building a {@link JsonElement} tree of the whole patch file.
+ * Only the {@code value} fields of patches (and fields whose meaning isn't known yet) are read into trees.
+ * Likewise, patches are written straight to a {@link JsonWriter}.
+ * The accepted input and the produced output are otherwise identical to {@link JsonPatch.Serializer}.
+ * </p>
+ * @author EnderTurret
+ * @see Patches#patchGson(boolean, boolean)
+ * @since 2.1.0
+ */
+public class JsonPatchAdapter extends TypeAdapter<JsonPatch> {
+
+	/**
+	 * Used for serializing things other than patches for patches that only implement the tree-based {@link JsonPatch#write(JsonSerializationContext, String)}.
+	 */
+	private static final Gson GSON = new Gson();
+
+	/**
+	 * Used for reading and writing {@code value} fields.
+	 */
+	static final TypeAdapter<JsonElement> ELEMENT_ADAPTER = GSON.getAdapter(JsonElement.class);
+
+	private final String defaultOp;
+	private final boolean enforceOp;
+
+	private final boolean testExtensions;
+	private final boolean patchedExtensions;
+
+	private final PatchInterner interner;
+
+	private final TypeAdapter<TestPatch> testAdapter = new TypeAdapter<>() {
+		@Override
+		public void write(JsonWriter out, TestPatch value) throws IOException {
+			JsonPatchAdapter.this.write(out, value);
+		}
+
+		@Override
+		public TestPatch read(JsonReader in) throws IOException {
+			return (TestPatch) readObject(in, "test", true);
+		}
+	};
+
+	private final JsonSerializationContext treeContext = new JsonSerializationContext() {
+		@Override
+		public JsonElement serialize(Object src) {
+			return src == null ? JsonNull.INSTANCE : serialize(src, src.getClass());
+		}
+
+		@Override
+		public JsonElement serialize(Object src, Type typeOfSrc) {
+			if (src instanceof JsonPatch patch)
+				return patch.write(this, defaultOp);
+
+			return GSON.toJsonTree(src, typeOfSrc);
+		}
+	};
+
+	/**
+	 * Constructs a new {@code JsonPatchAdapter}.
+	 * @param defaultOp The default operation. This is the operation used if one isn't provided in the patch.
+	 * @param enforceOp Whether to enforce the default operation. This can be used to force all read patches to be a specific kind.
+	 * @param testExtensions Whether to enable deserializing patches using the test extensions -- see {@link PatchContext}.
+	 * @param patchedExtensions Whether to enable deserializing patches using the "find" operation -- see {@link PatchContext}.
+	 * @param interner If non-{@code null}, the interner used to deduplicate the paths and values of read patches.
+	 * @since 2.1.0
+	 */
+	public JsonPatchAdapter(@Nullable String defaultOp, boolean enforceOp, boolean testExtensions, boolean patchedExtensions, @Nullable PatchInterner interner) {
+		this.defaultOp = defaultOp;
+		this.enforceOp = enforceOp;
+		this.testExtensions = testExtensions;
+		this.patchedExtensions = patchedExtensions;
+		this.interner = interner != null ? interner : PatchInterner.NONE;
+		if (enforceOp && defaultOp == null)
+			// What does a null operation even mean?
+			throw new IllegalArgumentException("Cannot enforce null operation!");
+	}
+
+	/**
+	 * Equivalent to {@link #JsonPatchAdapter(String, boolean, boolean, boolean, PatchInterner)} without interning.
+	 * @param defaultOp The default operation. This is the operation used if one isn't provided in the patch.
+	 * @param enforceOp Whether to enforce the default operation. This can be used to force all read patches to be a specific kind.
+	 * @param testExtensions Whether to enable deserializing patches using the test extensions -- see {@link PatchContext}.
+	 * @param patchedExtensions Whether to enable deserializing patches using the "find" operation -- see {@link PatchContext}.
+	 * @since 2.1.0
+	 */
+	public JsonPatchAdapter(@Nullable String defaultOp, boolean enforceOp, boolean testExtensions, boolean patchedExtensions) {
+		this(defaultOp, enforceOp, testExtensions, patchedExtensions, null);
+	}
+
+	/**
+	 * Equivalent to {@link #JsonPatchAdapter(String, boolean, boolean, boolean)} with no default operation.
+	 * @param testExtensions Whether to enable deserializing patches using the test extensions -- see {@link PatchContext}.
+	 * @param patchedExtensions Whether to enable deserializing patches using the "find" operation -- see {@link PatchContext}.
+	 * @since 2.1.0
+	 */
+	public JsonPatchAdapter(boolean testExtensions, boolean patchedExtensions) {
+		this(null, false, testExtensions, patchedExtensions);
+	}
+
+	/**
+	 * Equivalent to {@link #JsonPatchAdapter(boolean, boolean)} with all extensions enabled.
+	 * @since 2.1.0
+	 */
+	public JsonPatchAdapter() {
+		this(null, false, true, true);
+	}
+
+	@Override
+	public void write(JsonWriter out, @Nullable JsonPatch value) throws IOException {
+		if (value == null)
+			out.nullValue();
+		else
+			value.writeTo(out, this, defaultOp);
+	}
+
+	/**
+	 * Returns a {@link JsonSerializationContext} that serializes patches with this adapter's settings.
+	 * This is used to bridge patches that only implement the tree-based {@link JsonPatch#write(JsonSerializationContext, String)}.
+	 * @return The serialization context.
+	 */
+	JsonSerializationContext treeContext() {
+		return treeContext;
+	}
+
+	@Override
+	@Nullable
+	public JsonPatch read(JsonReader in) throws IOException {
+		return switch (in.peek()) {
+			case NULL -> {
+				in.nextNull();
+				yield null;
+			}
+			case BEGIN_ARRAY -> {
+				final List<JsonPatch> patches = new ArrayList<>();
+
+				in.beginArray();
+				while (in.hasNext())
+					patches.add(read(in));
+				in.endArray();
+
+				yield new CompoundPatch(patches.toArray(JsonPatch[]::new));
+			}
+			default -> readObject(in, defaultOp, enforceOp);
+		};
+	}
+
+	/**
+	 * Reads a single patch object.
+	 * @param in The reader to read the patch from.
+	 * @param defaultOp The default operation. This is the operation used if one isn't provided in the patch.
+	 * @param enforceOp Whether to enforce the default operation.
+	 * @return The read patch.
+	 * @throws IOException If an exception occurs reading from {@code in}.
+	 * @throws PatchingException If the patch is invalid.
+	 */
+	protected JsonPatch readObject(JsonReader in, @Nullable String defaultOp, boolean enforceOp) throws IOException {
+		if (in.peek() != JsonToken.BEGIN_OBJECT)
+			throw new IllegalStateException("Not a JSON Object: " + ELEMENT_ADAPTER.read(in));
+
+		// Fields are kept in their "raw" form: a String or Boolean for the common cases, or a JsonElement otherwise.
+		// This lets us defer the conversions (and their errors) until we know what the operation actually needs.
+		String op = null;
+		Object path = null, from = null, type = null, placeholder = null, inverse = null, multi = null;
+		JsonElement value = null;
+
+		// 'test' and 'then' are only parsed directly if we already know this is a find patch.
+		// Otherwise they're buffered, since they're ignored by every other operation.
+		boolean find = false;
+		List<TestPatch> tests = null;
+		JsonElement rawTests = null;
+		JsonPatch then = null;
+		JsonElement rawThen = null;
+
+		in.beginObject();
+		while (in.hasNext()) {
+			switch (in.nextName()) {
+				case "op" -> {
+					op = asString(readRaw(in));
+					find = patchedExtensions && "find".equals(op) && (!enforceOp || defaultOp.equals(op));
+				}
+				case "path" -> path = readRaw(in);
+				case "from" -> from = readRaw(in);
+				case "type" -> type = readRaw(in);
+				case "placeholder" -> placeholder = readRaw(in);
+				case "inverse" -> inverse = readRaw(in);
+				case "multi" -> multi = readRaw(in);
+				case "value" -> value = ELEMENT_ADAPTER.read(in);
+				case "test" -> {
+					if (find) {
+						tests = readTests(in);
+						rawTests = null;
+					} else {
+						rawTests = ELEMENT_ADAPTER.read(in);
+						tests = null;
+					}
+				}
+				case "then" -> {
+					if (find) {
+						then = read(in);
+						rawThen = null;
+					} else {
+						rawThen = ELEMENT_ADAPTER.read(in);
+						then = null;
+					}
+				}
+				default -> in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (op == null && defaultOp != null)
+			op = defaultOp;
+
+		if (op == null)
+			throw new PatchingException("Missing operation!");
+
+		if (enforceOp && !defaultOp.equals(op))
+			throw new PatchingException("Unexpected operation \"" + op + "\": only " + defaultOp + " is allowed here.");
+
+		return switch (op) {
+			case "test" -> {
+				final String testType = patchedExtensions && type != null ? asString(type) : null;
+				final String testPath = testType != null && path == null ? null : getString(path, "path");
+				final JsonElement testValue = testExtensions || testType != null ? value : require(value, "value");
+				final boolean testInverse = testExtensions && inverse != null && asBoolean(inverse);
+
+				yield new TestPatch(interner.intern(testType), interner.parse(testPath), interner.intern(testValue), testInverse);
+			}
+			case "add" -> new AddPatch(interner.parse(getString(path, "path")), interner.intern(require(value, "value")));
+			case "remove" -> new RemovePatch(interner.parse(getString(path, "path")));
+			case "copy" -> new CopyPatch(interner.parse(getString(path, "path")), interner.parse(getString(from, "from")));
+			case "move" -> new MovePatch(interner.parse(getString(path, "path")), interner.parse(getString(from, "from")));
+			case "replace" -> new ReplacePatch(interner.parse(getString(path, "path")), interner.intern(require(value, "value")));
+
+			case "find" -> {
+				if (!patchedExtensions)
+					throw new PatchingException("Unsupported operation 'find': Patched extensions are not enabled.");
+
+				if (rawTests != null)
+					tests = readTests(rawTests);
+				else if (tests == null)
+					tests = List.of();
+
+				if (rawThen != null)
+					then = fromJsonTree(rawThen);
+
+				yield new FindPatch(
+						interner.parse(getString(path, "path")),
+						tests,
+						then,
+						placeholder != null ? interner.intern(getString(placeholder, "placeholder")) : null,
+						multi != null && asBoolean(multi));
+			}
+			case "include" -> {
+				if (!patchedExtensions)
+					throw new PatchingException("Unsupported operation 'include': Patched extensions are not enabled.");
+
+				yield new IncludePatch(interner.intern(getString(path, "path")));
+			}
+			case "paste" -> {
+				if (!patchedExtensions)
+					throw new PatchingException("Unsupported operation 'paste': Patched extensions are not enabled.");
+
+				yield new PastePatch(
+						interner.parse(getString(path, "path")),
+						interner.intern(getString(type, "type")),
+						from != null ? interner.parse(getString(from, "from")) : null,
+						interner.intern(value));
+			}
+
+			default -> throw new PatchingException("Unknown operation '" + op + "'");
+		};
+	}
+
+	private List<TestPatch> readTests(JsonReader in) throws IOException {
+		if (in.peek() != JsonToken.BEGIN_ARRAY)
+			return List.of(testAdapter.read(in));
+
+		final List<TestPatch> list = new ArrayList<>();
+
+		in.beginArray();
+		while (in.hasNext())
+			list.add(testAdapter.read(in));
+		in.endArray();
+
+		return List.copyOf(list);
+	}
+
+	private List<TestPatch> readTests(JsonElement tests) {
+		if (!tests.isJsonArray())
+			return List.of(testAdapter.fromJsonTree(tests));
+
+		final List<TestPatch> list = new ArrayList<>();
+
+		for (JsonElement elem : tests.getAsJsonArray())
+			list.add(testAdapter.fromJsonTree(elem));
+
+		return List.copyOf(list);
+	}
+
+	/**
+	 * Reads a field value in its "raw" form: a {@code String} for strings, a {@code Boolean} for booleans, or a {@link JsonElement} for anything else.
+	 * @param in The reader.
+	 * @return The raw field value.
+	 * @throws IOException If an exception occurs reading from {@code in}.
+	 */
+	private static Object readRaw(JsonReader in) throws IOException {
+		return switch (in.peek()) {
+			case STRING -> in.nextString();
+			case BOOLEAN -> in.nextBoolean();
+			default -> ELEMENT_ADAPTER.read(in);
+		};
+	}
+
+	private static JsonElement toElement(Object raw) {
+		if (raw instanceof String s) return new JsonPrimitive(s);
+		if (raw instanceof Boolean b) return new JsonPrimitive(b);
+		return (JsonElement) raw;
+	}
+
+	private static String asString(Object raw) {
+		if (raw instanceof String s) return s;
+		if (raw instanceof Boolean b) return b.toString();
+		return ((JsonElement) raw).getAsString();
+	}
+
+	private static boolean asBoolean(Object raw) {
+		if (raw instanceof Boolean b) return b;
+		if (raw instanceof String s) return Boolean.parseBoolean(s);
+		return ((JsonElement) raw).getAsBoolean();
+	}
+
+	private static <T> T require(@Nullable T raw, String name) throws PatchingException {
+		if (raw == null)
+			throw new PatchingException("'" + name + "' is missing!");
+
+		return raw;
+	}
+
+	private static String getString(@Nullable Object raw, String name) throws PatchingException {
+		if (require(raw, name) instanceof String s)
+			return s;
+
+		throw new PatchingException("'" + name + "' must be a string (was: " + toElement(raw) + ")!");
+	}
+}
@@ -0,0 +1,200 @@
+package net.enderturret.patched.patch;
+
+import java.lang.management.ManagementFactory;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.sun.management.ThreadMXBean;
+
+import net.enderturret.patched.IPatchMetrics;
+import net.enderturret.patched.IPatchMetrics.PatchEvent;
+import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.PatchContext;
+import net.enderturret.patched.patch.context.PatchCounters;
+import net.enderturret.patched.patch.context.PatchSession;
+
+/**
+ * Measures patches as they are applied, and reports them to the installed {@link IPatchMetrics}.
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class Metering {
+
+	@Nullable
+	private static final ThreadMXBean THREADS = threads();
+
+	private Metering() {}
+
+	@Nullable
+	private static ThreadMXBean threads() {
+		try {
+			// Allocation measurement is an extension of the standard bean, which not every JVM provides.
+			return ManagementFactory.getThreadMXBean() instanceof ThreadMXBean threads
+					&& threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+		} catch (LinkageError | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Applies the given patch, measuring it if a metrics listener is installed or {@linkplain PatchEvents.Apply its flight recorder event} is enabled.
+	 * @param patch The patch to apply.
+	 * @param root The element to apply the patch to.
+	 * @param context The patch context.
+	 */
+	static void patch(JsonPatch patch, ElementContext root, PatchContext context) {
+		// Compound patches are just lists of other patches, which are measured individually.
+		if (patch instanceof CompoundPatch) {
+			apply(patch, root, context);
+			return;
+		}
+
+		final IPatchMetrics metrics = context.metrics();
+		final PatchEvents.Apply event = new PatchEvents.Apply();
+
+		if (metrics == null) {
+			if (!event.isEnabled())
+				apply(patch, root, context);
+			else {
+				event.begin();
+				try {
+					apply(patch, root, context);
+				} finally {
+					event.commit(patch, root, context);
+				}
+			}
+
+			return;
+		}
+
+		final PatchCounters counters = counters(root);
+		final long traversed = counters.traversed();
+		final long copied = counters.copied();
+		final int depth = counters.depth();
+		final String source = source(counters, context);
+		final boolean allocations = metrics.measuresAllocations();
+
+		counters.depth(depth + 1);
+		event.begin();
+		final long allocated = allocations ? allocatedBytes() : 0;
+		final long start = System.nanoTime();
+
+		try {
+			apply(patch, root, context);
+		} finally {
+			final long nanos = System.nanoTime() - start;
+			final long allocatedNow = allocations ? allocatedBytes() : 0;
+			counters.depth(depth);
+			metrics.record(new PatchEvent(patch.operation(), patch.path != null ? patch.path.toString() : null, source, depth, nanos,
+					allocatedNow - allocated, counters.traversed() - traversed, counters.copied() - copied, null));
+			event.commit(patch, root, context);
+		}
+	}
+
+	/**
+	 * Evaluates the given test, measuring it if a metrics listener is installed.
+	 * @param test The test to evaluate.
+	 * @param root The element to evaluate the test against.
+	 * @return {@code true} if the test passed.
+	 */
+	static boolean test(TestPatch test, ElementContext root) {
+		final IPatchMetrics metrics = root.context().metrics();
+		if (metrics == null) return evaluate(test, root);
+
+		final PatchCounters counters = counters(root);
+		final long traversed = counters.traversed();
+		final long start = System.nanoTime();
+		@Nullable Boolean result = null;
+
+		try {
+			return result = evaluate(test, root);
+		} finally {
+			metrics.record(new PatchEvent(test.operation(), test.path != null ? test.path.toString() : null, source(counters, root.context()), counters.depth(),
+					System.nanoTime() - start, 0, counters.traversed() - traversed, 0, result));
+		}
+	}
+
+	/**
+	 * Applies an included patch, measuring its patches as coming from the given source.
+	 * @param patch The included patch.
+	 * @param source The path of the included patch.
+	 * @param root The element to apply the patch to.
+	 * @param context The patch context.
+	 */
+	static void include(JsonPatch patch, String source, ElementContext root, PatchContext context) {
+		if (context.metrics() == null && !new PatchEvents.Apply().isEnabled()) {
+			apply(patch, root, context);
+			return;
+		}
+
+		final PatchCounters counters = counters(root);
+		final int depth = counters.depth();
+		final String previous = counters.source();
+
+		// Depths are relative to the source.
+		counters.depth(0);
+		counters.source(source);
+
+		try {
+			patch(patch, root, context);
+		} finally {
+			counters.depth(depth);
+			counters.source(previous);
+		}
+	}
+
+	/**
+	 * Applies the given patch. Patches that may modify the document without reporting it are applied in an {@linkplain PatchSession#beginUntracked() untracked} part of the session.
+	 * @param patch The patch to apply.
+	 * @param root The element to apply the patch to.
+	 * @param context The patch context.
+	 */
+	private static void apply(JsonPatch patch, ElementContext root, PatchContext context) {
+		final PatchSession session = root.session();
+
+		if (session == null || patch.reportsMutations()) {
+			patch.patch(root, context);
+			return;
+		}
+
+		session.beginUntracked();
+		try {
+			patch.patch(root, context);
+		} finally {
+			session.endUntracked();
+		}
+	}
+
+	/**
+	 * Evaluates the given test. Custom tests that aren't side-effect-free may modify the document, so they're evaluated in an {@linkplain PatchSession#beginUntracked() untracked} part of the session.
+	 * @param test The test to evaluate.
+	 * @param root The element to evaluate the test against.
+	 * @return {@code true} if the test passed.
+	 */
+	private static boolean evaluate(TestPatch test, ElementContext root) {
+		final PatchSession session = root.session();
+		if (session == null || test.isSideEffectFree(root.context().testEvaluator())) return test.evaluate(root);
+
+		session.beginUntracked();
+		try {
+			return test.evaluate(root);
+		} finally {
+			session.endUntracked();
+		}
+	}
+
+	@Nullable
+	private static String source(PatchCounters counters, PatchContext context) {
+		if (counters.source() != null) return counters.source();
+		return context.audit() != null ? context.audit().getPatchPath() : null;
+	}
+
+	private static long allocatedBytes() {
+		return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+	}
+
+	private static PatchCounters counters(ElementContext root) {
+		// Contexts without a session can't share counts with anything, but can still be timed.
+		return root.session() != null ? root.session().counters() : new PatchCounters();
+	}
+}
@@ -1,8 +1,15 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
+import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.TraversalMode;
 import net.enderturret.patched.patch.context.ElementContext;
@@ -16,7 +23,7 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class MovePatch extends JsonPatch {
 
-	protected final JsonSelector from;
+	final JsonSelector from;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#move(String, String)} instead.
@@ -25,8 +32,16 @@ public final class MovePatch extends JsonPatch {
 	 * @since 1.0.0
 	 */
 	protected MovePatch(String path, String from) {
+		this(JsonSelector.of(path), JsonSelector.of(from));
+	}
+
+	/**
+	 * Equivalent to {@link #MovePatch(String, String)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	MovePatch(JsonSelector path, JsonSelector from) {
 		super(path);
-		this.from = JsonSelector.of(from);
+		this.from = from;
 	}
 
 	@Override
@@ -39,6 +54,11 @@ public final class MovePatch extends JsonPatch {
 		obj.addProperty("from", from.toString());
 	}
 
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		out.name("from").value(from.toString());
+	}
+
 	@Override
 	public void patch(ElementContext root, PatchContext context) {
 		final ElementContext removed = from.select(root, true);
@@ -51,4 +71,19 @@ public final class MovePatch extends JsonPatch {
 
 		if (context.audit() != null) context.audit().recordMove(root, path, from, added);
 	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
+	}
+
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return isInside(from) && isInside(path);
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		return collectFootprint(from, into) && collectFootprint(path, into);
+	}
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+
 import org.jetbrains.annotations.Nullable;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
 import net.enderturret.patched.IDataSource;
 import net.enderturret.patched.JsonSelector;
@@ -22,11 +25,11 @@ import net.enderturret.patched.patch.context.PatchContext;
  */
 public final class PastePatch extends JsonPatch {
 
-	private final String type;
+	final String type;
 	@Nullable
-	private final JsonSelector from;
+	final JsonSelector from;
 	@Nullable
-	private final JsonElement value;
+	final JsonElement value;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#paste(String, String, String, JsonElement)} instead.
@@ -37,9 +40,17 @@ public final class PastePatch extends JsonPatch {
 	 * @since 1.5.0
 	 */
 	protected PastePatch(String path, String type, @Nullable String from, @Nullable JsonElement value) {
+		this(JsonSelector.of(path), type, from == null ? null : JsonSelector.of(from), value);
+	}
+
+	/**
+	 * Equivalent to {@link #PastePatch(String, String, String, JsonElement)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	PastePatch(JsonSelector path, String type, @Nullable JsonSelector from, @Nullable JsonElement value) {
 		super(path);
 		this.type = type;
-		this.from = from == null ? null : JsonSelector.of(from);
+		this.from = from;
 		this.value = value;
 	}
 
@@ -68,6 +79,28 @@ public final class PastePatch extends JsonPatch {
 		return obj;
 	}
 
+	@Override
+	protected void write(JsonWriter out, JsonPatchAdapter adapter, @Nullable String omitOperation) throws IOException {
+		out.beginObject();
+
+		if (!operation().equals(omitOperation))
+			out.name("op").value(operation());
+
+		out.name("type").value(type);
+
+		if (from != null)
+			out.name("from").value(from.toString());
+
+		out.name("path").value(path.toString());
+
+		if (value != null) {
+			out.name("value");
+			JsonPatchAdapter.ELEMENT_ADAPTER.write(out, value);
+		}
+
+		out.endObject();
+	}
+
 	@Override
 	public void patch(ElementContext root, PatchContext context) throws PatchingException, TraversalException {
 		if (!context.patchedExtensions())
@@ -78,7 +111,17 @@ public final class PastePatch extends JsonPatch {
 
 		final JsonElement from = this.from != null ? this.from.select(root, true).elem() : null;
 
+		final PatchEvents.Paste event = new PatchEvents.Paste();
+		event.begin();
+
 		final JsonElement pasted = context.dataSource().getData(type, from, value);
+
+		if (event.shouldCommit()) {
+			event.type = type;
+			event.from = this.from != null ? this.from.toString() : null;
+			event.found = pasted != null;
+			event.commit();
+		}
 		if (pasted == null)
 			throw new PatchingException("Unknown paste data source type: '" + type + "'");
 
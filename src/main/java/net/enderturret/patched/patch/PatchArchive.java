@@ -0,0 +1,582 @@
+package net.enderturret.patched.patch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import net.enderturret.patched.IFileAccess;
+import net.enderturret.patched.JsonSelector;
+import net.enderturret.patched.JsonSelector.CompoundSelector;
+import net.enderturret.patched.JsonSelector.EmptySelector;
+import net.enderturret.patched.JsonSelector.NameSelector;
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.JsonSelector.PlaceholderSelector;
+import net.enderturret.patched.exception.PatchingException;
+
+/**
+ * <p>A compact binary archive of named, precompiled patches.</p>
+ * <p>
+ * Json remains the format patches are written in, but reading thousands of patch files at startup means parsing
+ * the same Json and the same paths over and over. Archives store patches with their paths already split into selectors,
+ * every distinct string stored only once, and values stored as encoded trees.
+ * Archives are opened through a memory-mapped file, where only the header, string table and entry index are read up front.
+ * Each patch is decoded the first time it is requested, and then cached.
+ * </p>
+ * <p>The layout of an archive is as follows. All integers are big-endian; "varint" refers to an unsigned LEB128 integer.</p>
+ * <pre>
+ * header: "PTCH" | u16 version | u16 reserved | u32 CRC32 of body | u32 body length
+ * body:   varint string count | (varint UTF-8 length | bytes)...
+ *         varint entry count | (varint name string | u32 data offset | u32 data length)...
+ *         patch data
+ * </pre>
+ * <p>Archives implement {@link IFileAccess}, so they can be used directly to resolve {@linkplain IncludePatch include patches}.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+public final class PatchArchive implements IFileAccess {
+
+	/**
+	 * The current version of the archive format.
+	 * @since 2.1.0
+	 */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'P', 'T', 'C', 'H' };
+	private static final int HEADER_SIZE = 16;
+
+	private static final int P_NULL = 0, P_COMPOUND = 1, P_TEST = 2, P_ADD = 3, P_REMOVE = 4, P_REPLACE = 5, P_COPY = 6, P_MOVE = 7, P_FIND = 8, P_INCLUDE = 9, P_PASTE = 10;
+	private static final int S_NULL = 0, S_EMPTY = 1, S_COMPOUND = 2, S_NAME = 3, S_NUMERIC = 4, S_PLACEHOLDER = 5;
+	private static final int V_MISSING = 0, V_NULL = 1, V_TRUE = 2, V_FALSE = 3, V_STRING = 4, V_LONG = 5, V_DOUBLE = 6, V_NUMBER = 7, V_ARRAY = 8, V_OBJECT = 9;
+
+	private final ByteBuffer data;
+	private final String[] strings;
+	private final Map<String, Entry> entries;
+	private final Map<String, JsonPatch> decoded = new ConcurrentHashMap<>();
+
+	private PatchArchive(ByteBuffer data, String[] strings, Map<String, Entry> entries) {
+		this.data = data;
+		this.strings = strings;
+		this.entries = entries;
+	}
+
+	/**
+	 * Memory-maps and opens the archive at the given path.
+	 * @param file The path to the archive.
+	 * @return The opened archive.
+	 * @throws IOException If the file could not be read, or is not a valid archive.
+	 * @since 2.1.0
+	 */
+	public static PatchArchive open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Opens the archive contained in the given buffer, starting at its current position.
+	 * The buffer is not modified, but must not be modified by anyone else while the archive is in use.
+	 * @param buffer The buffer containing the archive.
+	 * @return The opened archive.
+	 * @throws IOException If the buffer does not contain a valid archive.
+	 * @since 2.1.0
+	 */
+	public static PatchArchive read(ByteBuffer buffer) throws IOException {
+		final ByteBuffer buf = buffer.slice();
+
+		if (buf.remaining() < HEADER_SIZE)
+			throw new IOException("Not a patch archive: too short!");
+
+		for (int i = 0; i < MAGIC.length; i++)
+			if (buf.get(i) != MAGIC[i])
+				throw new IOException("Not a patch archive: bad magic!");
+
+		final int version = buf.getShort(4) & 0xFFFF;
+		if (version != VERSION)
+			throw new IOException("Unsupported patch archive version " + version + " (expected " + VERSION + ")!");
+
+		final int checksum = buf.getInt(8);
+		final int length = buf.getInt(12);
+		if (length < 0 || length > buf.remaining() - HEADER_SIZE)
+			throw new IOException("Truncated patch archive: expected " + length + " bytes, found " + (buf.remaining() - HEADER_SIZE) + "!");
+
+		final ByteBuffer body = buf.position(HEADER_SIZE).limit(HEADER_SIZE + length).slice();
+
+		final CRC32 crc = new CRC32();
+		crc.update(body.duplicate());
+		if ((int) crc.getValue() != checksum)
+			throw new IOException("Corrupted patch archive: checksum mismatch!");
+
+		final Decoder in = new Decoder(body, null);
+
+		final String[] strings = new String[in.varint()];
+		for (int i = 0; i < strings.length; i++) {
+			final byte[] bytes = new byte[in.varint()];
+			body.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		final int count = in.varint();
+		final Map<String, Entry> entries = new LinkedHashMap<>(count * 4 / 3 + 1);
+		for (int i = 0; i < count; i++)
+			entries.put(strings[in.varint()], new Entry(body.getInt(), body.getInt()));
+
+		return new PatchArchive(body.slice(), strings, Collections.unmodifiableMap(entries));
+	}
+
+	/**
+	 * Encodes the given patches into an archive and writes it to the given stream.
+	 * @param patches The patches to write, by name. Names are what {@link #get(String)} accepts.
+	 * @param out The stream to write the archive to. It is not closed.
+	 * @throws IOException If an exception occurs writing to {@code out}.
+	 * @throws IllegalArgumentException If any of the patches (or selectors within them) are not of a built-in type, or are {@code null}.
+	 * @since 2.1.0
+	 */
+	public static void write(Map<String, ? extends JsonPatch> patches, OutputStream out) throws IOException {
+		final Encoder data = new Encoder();
+		final Encoder index = new Encoder(data.strings);
+
+		index.varint(patches.size());
+		for (Map.Entry<String, ? extends JsonPatch> entry : patches.entrySet()) {
+			if (entry.getValue() == null)
+				throw new IllegalArgumentException("Patch '" + entry.getKey() + "' is null!");
+
+			final int start = data.size();
+			data.patch(entry.getValue());
+
+			index.string(entry.getKey());
+			index.u32(start);
+			index.u32(data.size() - start);
+		}
+
+		final Encoder stringTable = new Encoder();
+		stringTable.varint(data.strings.size());
+		for (String s : data.strings.keySet()) {
+			final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			stringTable.varint(bytes.length);
+			stringTable.write(bytes, 0, bytes.length);
+		}
+
+		final CRC32 crc = new CRC32();
+		crc.update(stringTable.buf(), 0, stringTable.size());
+		crc.update(index.buf(), 0, index.size());
+		crc.update(data.buf(), 0, data.size());
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+				.put(MAGIC)
+				.putShort((short) VERSION)
+				.putShort((short) 0)
+				.putInt((int) crc.getValue())
+				.putInt(stringTable.size() + index.size() + data.size());
+
+		out.write(header.array());
+		stringTable.writeTo(out);
+		index.writeTo(out);
+		data.writeTo(out);
+	}
+
+	/**
+	 * @return The names of all patches in this archive, in the order they were written.
+	 * @since 2.1.0
+	 */
+	public Set<String> names() {
+		return entries.keySet();
+	}
+
+	/**
+	 * Returns the patch with the given name, decoding it if this is the first time it was requested.
+	 * @param name The name of the patch.
+	 * @return The patch, or {@code null} if this archive has no patch with the given name.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public JsonPatch get(String name) {
+		final Entry entry = entries.get(name);
+		if (entry == null) return null;
+
+		return decoded.computeIfAbsent(name, k -> new Decoder(data.slice(entry.offset, entry.length), strings).patch());
+	}
+
+	@Override
+	@Nullable
+	public JsonPatch readIncludedPatch(String path) {
+		return get(path);
+	}
+
+	private static record Entry(int offset, int length) {}
+
+	private static final class Encoder extends ByteArrayOutputStream {
+
+		private final Map<String, Integer> strings;
+
+		Encoder() {
+			this(new LinkedHashMap<>());
+		}
+
+		Encoder(Map<String, Integer> strings) {
+			this.strings = strings;
+		}
+
+		byte[] buf() {
+			return buf;
+		}
+
+		void varint(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		void varlong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int) (value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write((int) value);
+		}
+
+		void u32(int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+
+		void string(String s) {
+			Integer id = strings.get(s);
+			if (id == null) strings.put(s, id = strings.size());
+			varint(id);
+		}
+
+		void patch(@Nullable JsonPatch patch) {
+			if (patch == null)
+				write(P_NULL);
+			else if (patch instanceof CompoundPatch p) {
+				write(P_COMPOUND);
+				varint(p.patches.length);
+				for (JsonPatch child : p.patches)
+					patch(child);
+			} else if (patch instanceof TestPatch p) {
+				write(P_TEST);
+				write((p.type != null ? 1 : 0) | (p.inverse ? 2 : 0));
+				if (p.type != null) string(p.type);
+				selector(p.path);
+				value(p.test);
+			} else if (patch instanceof AddPatch p) {
+				write(P_ADD);
+				selector(p.path);
+				value(p.value);
+			} else if (patch instanceof RemovePatch p) {
+				write(P_REMOVE);
+				selector(p.path);
+			} else if (patch instanceof ReplacePatch p) {
+				write(P_REPLACE);
+				selector(p.path);
+				value(p.value);
+			} else if (patch instanceof CopyPatch p) {
+				write(P_COPY);
+				selector(p.path);
+				selector(p.from);
+			} else if (patch instanceof MovePatch p) {
+				write(P_MOVE);
+				selector(p.path);
+				selector(p.from);
+			} else if (patch instanceof FindPatch p) {
+				write(P_FIND);
+				selector(p.path);
+				write((p.placeholder != null ? 1 : 0) | (p.multi ? 2 : 0));
+				if (p.placeholder != null) string(p.placeholder);
+				varint(p.tests.size());
+				for (TestPatch test : p.tests)
+					patch(test);
+				patch(p.then);
+			} else if (patch instanceof IncludePatch p) {
+				write(P_INCLUDE);
+				string(p.path);
+			} else if (patch instanceof PastePatch p) {
+				write(P_PASTE);
+				selector(p.path);
+				string(p.type);
+				selector(p.from);
+				value(p.value);
+			} else
+				throw new IllegalArgumentException("Cannot encode patch of type " + patch.getClass().getName() + "!");
+		}
+
+		void selector(@Nullable JsonSelector selector) {
+			if (selector == null)
+				write(S_NULL);
+			else if (selector instanceof EmptySelector)
+				write(S_EMPTY);
+			else if (selector instanceof CompoundSelector s) {
+				write(S_COMPOUND);
+				write(s.absolute() ? 1 : 0);
+				varint(s.size());
+				for (JsonSelector child : s.path())
+					selector(child);
+			} else if (selector instanceof NameSelector s) {
+				write(S_NAME);
+				string(s.name());
+			} else if (selector instanceof NumericSelector s) {
+				write(S_NUMERIC);
+				varint((s.index() << 1) ^ (s.index() >> 31));
+				string(s.strIndex());
+			} else if (selector instanceof PlaceholderSelector s) {
+				write(S_PLACEHOLDER);
+				string(s.placeholder());
+				string(s.raw());
+			} else
+				throw new IllegalArgumentException("Cannot encode selector of type " + selector.getClass().getName() + "!");
+		}
+
+		void value(@Nullable JsonElement value) {
+			if (value == null)
+				write(V_MISSING);
+			else if (value.isJsonNull())
+				write(V_NULL);
+			else if (value instanceof JsonPrimitive p) {
+				if (p.isBoolean())
+					write(p.getAsBoolean() ? V_TRUE : V_FALSE);
+				else if (p.isString()) {
+					write(V_STRING);
+					string(p.getAsString());
+				} else {
+					final Number n = p.getAsNumber();
+					if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+						write(V_LONG);
+						final long l = n.longValue();
+						varlong((l << 1) ^ (l >> 63));
+					} else if (n instanceof Double d) {
+						write(V_DOUBLE);
+						final long bits = Double.doubleToRawLongBits(d);
+						u32((int) (bits >>> 32));
+						u32((int) bits);
+					} else {
+						// Numbers parsed from Json keep their original text, so we do too.
+						write(V_NUMBER);
+						string(n.toString());
+					}
+				}
+			} else if (value instanceof JsonArray arr) {
+				write(V_ARRAY);
+				varint(arr.size());
+				for (JsonElement elem : arr)
+					value(elem);
+			} else {
+				final JsonObject obj = value.getAsJsonObject();
+				write(V_OBJECT);
+				varint(obj.size());
+				for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+					string(entry.getKey());
+					value(entry.getValue());
+				}
+			}
+		}
+	}
+
+	private static final class Decoder {
+
+		private final ByteBuffer buf;
+		private final String[] strings;
+
+		Decoder(ByteBuffer buf, String[] strings) {
+			this.buf = buf;
+			this.strings = strings;
+		}
+
+		int varint() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				final byte b = buf.get();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) return value;
+			}
+		}
+
+		long varlong() {
+			long value = 0;
+			for (int shift = 0;; shift += 7) {
+				final byte b = buf.get();
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) return value;
+			}
+		}
+
+		String string() {
+			return strings[varint()];
+		}
+
+		@Nullable
+		JsonPatch patch() {
+			final int tag = buf.get();
+			return switch (tag) {
+				case P_NULL -> null;
+				case P_COMPOUND -> {
+					final JsonPatch[] patches = new JsonPatch[varint()];
+					for (int i = 0; i < patches.length; i++)
+						patches[i] = patch();
+					yield new CompoundPatch(patches);
+				}
+				case P_TEST -> {
+					final int flags = buf.get();
+					yield new TestPatch((flags & 1) != 0 ? string() : null, selector(), value(), (flags & 2) != 0);
+				}
+				case P_ADD -> new AddPatch(selector(), value());
+				case P_REMOVE -> new RemovePatch(selector());
+				case P_REPLACE -> new ReplacePatch(selector(), value());
+				case P_COPY -> new CopyPatch(selector(), selector());
+				case P_MOVE -> new MovePatch(selector(), selector());
+				case P_FIND -> {
+					final JsonSelector path = selector();
+					final int flags = buf.get();
+					final String placeholder = (flags & 1) != 0 ? string() : null;
+
+					final List<TestPatch> tests = new ArrayList<>();
+					for (int i = varint(); i > 0; i--)
+						tests.add((TestPatch) patch());
+
+					yield new FindPatch(path, List.copyOf(tests), patch(), placeholder, (flags & 2) != 0);
+				}
+				case P_INCLUDE -> new IncludePatch(string());
+				case P_PASTE -> new PastePatch(selector(), string(), selector(), value());
+				default -> throw new PatchingException("Corrupted patch archive: unknown patch tag " + tag + "!");
+			};
+		}
+
+		@Nullable
+		JsonSelector selector() {
+			final int tag = buf.get();
+			return switch (tag) {
+				case S_NULL -> null;
+				case S_EMPTY -> new EmptySelector();
+				case S_COMPOUND -> {
+					final boolean absolute = buf.get() != 0;
+					final JsonSelector[] path = new JsonSelector[varint()];
+					for (int i = 0; i < path.length; i++)
+						path[i] = selector();
+					yield new CompoundSelector(path, absolute);
+				}
+				case S_NAME -> new NameSelector(string());
+				case S_NUMERIC -> {
+					final int zigzag = varint();
+					yield new NumericSelector((zigzag >>> 1) ^ -(zigzag & 1), string());
+				}
+				case S_PLACEHOLDER -> new PlaceholderSelector(string(), string());
+				default -> throw new PatchingException("Corrupted patch archive: unknown selector tag " + tag + "!");
+			};
+		}
+
+		@Nullable
+		JsonElement value() {
+			final int tag = buf.get();
+			return switch (tag) {
+				case V_MISSING -> null;
+				case V_NULL -> JsonNull.INSTANCE;
+				case V_TRUE -> new JsonPrimitive(true);
+				case V_FALSE -> new JsonPrimitive(false);
+				case V_STRING -> new JsonPrimitive(string());
+				case V_LONG -> {
+					final long zigzag = varlong();
+					yield new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+				}
+				case V_DOUBLE -> new JsonPrimitive(Double.longBitsToDouble(buf.getLong()));
+				case V_NUMBER -> new JsonPrimitive(new TextNumber(string()));
+				case V_ARRAY -> {
+					final int size = varint();
+					final JsonArray arr = new JsonArray(size);
+					for (int i = 0; i < size; i++)
+						arr.add(value());
+					yield arr;
+				}
+				case V_OBJECT -> {
+					final JsonObject obj = new JsonObject();
+					for (int i = varint(); i > 0; i--)
+						obj.add(string(), value());
+					yield obj;
+				}
+				default -> throw new PatchingException("Corrupted patch archive: unknown value tag " + tag + "!");
+			};
+		}
+	}
+
+	/**
+	 * A number that keeps its original textual form, like the numbers Gson produces when parsing Json.
+	 */
+	private static final class TextNumber extends Number {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String value;
+
+		TextNumber(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public int intValue() {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				return (int) longValue();
+			}
+		}
+
+		@Override
+		public long longValue() {
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				return new BigDecimal(value).longValue();
+			}
+		}
+
+		@Override
+		public float floatValue() {
+			return Float.parseFloat(value);
+		}
+
+		@Override
+		public double doubleValue() {
+			return Double.parseDouble(value);
+		}
+
+		@Override
+		public String toString() {
+			return value;
+		}
+
+		@Override
+		public int hashCode() {
+			return value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TextNumber other && value.equals(other.value);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package net.enderturret.patched.patch;
+
+import org.jetbrains.annotations.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.PatchContext;
+
+/**
+ * <p>{@code PatchEvents} holds the Java Flight Recorder events emitted while applying patches.</p>
+ * <p>
+ * Events are disabled unless a recording enables them (by name, or through a settings file), in which case they show up under the "Patched" category.
+ * While disabled, they cost a check of {@link Event#isEnabled()} each, and their fields are never filled in, so they can be left in production code.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class PatchEvents {
+
+	private PatchEvents() {}
+
+	/**
+	 * @param root The element a patch is being applied to.
+	 * @return An identifier for the document, so that events for the same document can be told apart from others.
+	 */
+	static int document(ElementContext root) {
+		return System.identityHashCode(root.doc());
+	}
+
+	/**
+	 * @param root The element a patch is being applied to.
+	 * @param context The patch context.
+	 * @return The path of the patch file being applied, if known.
+	 */
+	@Nullable
+	static String source(ElementContext root, PatchContext context) {
+		final String source = root.session() != null ? root.session().counters().source() : null;
+		if (source != null) return source;
+		return context.audit() != null ? context.audit().getPatchPath() : null;
+	}
+
+	@Name("net.enderturret.patched.Patch")
+	@Label("Patch")
+	@Description("Application of a single patch (compound patches are not recorded).")
+	@Category("Patched")
+	@StackTrace(false)
+	static final class Apply extends Event {
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Path")
+		String path;
+
+		@Label("Source")
+		@Description("The patch file the patch came from, if known.")
+		String source;
+
+		@Label("Document")
+		@Description("Identity hash code of the patched document.")
+		int document;
+
+		/**
+		 * Fills in the event and commits it, if it should be.
+		 */
+		void commit(JsonPatch patch, ElementContext root, PatchContext context) {
+			if (!shouldCommit()) return;
+
+			operation = patch.operation();
+			path = patch.path != null ? patch.path.toString() : null;
+			source = PatchEvents.source(root, context);
+			document = PatchEvents.document(root);
+			commit();
+		}
+	}
+
+	@Name("net.enderturret.patched.Include")
+	@Label("Include")
+	@Description("Loading an included patch through the installed file access.")
+	@Category("Patched")
+	static final class Include extends Event {
+
+		@Label("Path")
+		String path;
+
+		@Label("Found")
+		boolean found;
+	}
+
+	@Name("net.enderturret.patched.Paste")
+	@Label("Paste")
+	@Description("Fetching pasted data from the installed data source.")
+	@Category("Patched")
+	static final class Paste extends Event {
+
+		@Label("Type")
+		String type;
+
+		@Label("From")
+		String from;
+
+		@Label("Found")
+		boolean found;
+	}
+
+	@Name("net.enderturret.patched.Find")
+	@Label("Find")
+	@Description("A find patch scanning the children of an array or object.")
+	@Category("Patched")
+	@StackTrace(false)
+	static final class Find extends Event {
+
+		@Label("Path")
+		String path;
+
+		@Label("Children")
+		@Description("The number of children visited (children skipped using an index are not counted).")
+		int children;
+
+		@Label("Matches")
+		int matches;
+
+		@Label("Parallel")
+		@Description("Whether the matching children were patched in parallel.")
+		boolean parallel;
+
+		@Label("Document")
+		@Description("Identity hash code of the patched document.")
+		int document;
+
+		/**
+		 * Records that the matching children were patched in parallel.
+		 */
+		void parallel(int children, int matches) {
+			this.children = children;
+			this.matches = matches;
+			parallel = true;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package net.enderturret.patched.patch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import net.enderturret.patched.JsonSelector;
+import net.enderturret.patched.JsonSelector.CompoundSelector;
+import net.enderturret.patched.JsonSelector.NameSelector;
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.JsonSelector.PlaceholderSelector;
+import net.enderturret.patched.Patches;
+
+/**
+ * <p>Deduplicates the strings, values and selectors of patches as they are loaded.</p>
+ * <p>
+ * Large patch sets tend to contain the same paths and values many times over.
+ * Passing an interner to {@link JsonPatch.Serializer} or {@link JsonPatchAdapter} makes every patch they read share
+ * a single instance of each distinct string, primitive value, value subtree and selector.
+ * The same interner can be shared across any number of loads (and threads); the more patches it sees, the more it saves.
+ * </p>
+ * <p>
+ * Values are only considered equal if they would be written out identically, so {@code 1} and {@code 1.0} are kept apart.
+ * Since interned subtrees are shared, they must not be modified. Patches never modify their values,
+ * as they are {@linkplain PatchUtil#applyAdd(net.enderturret.patched.patch.context.ElementContext, JsonElement, boolean) copied} before being inserted into documents.
+ * </p>
+ * @author EnderTurret
+ * @see Patches#patchGson(boolean, boolean, PatchInterner)
+ * @since 2.1.0
+ */
+public final class PatchInterner {
+
+	/**
+	 * An "interner" that does nothing, used when interning is not enabled.
+	 */
+	static final PatchInterner NONE = new PatchInterner(false);
+
+	private final boolean enabled;
+
+	private final Map<String, String> strings = new ConcurrentHashMap<>();
+	private final Map<Object, JsonElement> elements = new ConcurrentHashMap<>();
+	private final Map<Object, JsonSelector> selectors = new ConcurrentHashMap<>();
+	private final Map<String, CompoundSelector> paths = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a new, empty {@code PatchInterner}.
+	 * @since 2.1.0
+	 */
+	public PatchInterner() {
+		this(true);
+	}
+
+	private PatchInterner(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns the canonical instance of the given string.
+	 * @param s The string.
+	 * @return The canonical instance, or {@code null} if {@code s} is {@code null}.
+	 * @since 2.1.0
+	 */
+	public String intern(@Nullable String s) {
+		if (!enabled || s == null) return s;
+
+		final String existing = strings.putIfAbsent(s, s);
+		return existing != null ? existing : s;
+	}
+
+	/**
+	 * <p>Returns the canonical instance of the given element.</p>
+	 * <p>The returned element must not be modified. The given element is not modified, but may become the canonical instance itself,
+	 * so it should not be modified afterwards either.</p>
+	 * @param elem The element.
+	 * @return The canonical instance, or {@code null} if {@code elem} is {@code null}.
+	 * @since 2.1.0
+	 */
+	public JsonElement intern(@Nullable JsonElement elem) {
+		if (!enabled || elem == null) return elem;
+
+		if (elem.isJsonNull())
+			return JsonNull.INSTANCE;
+
+		if (elem instanceof JsonPrimitive prim) {
+			final Object key;
+
+			if (prim.isBoolean())
+				key = prim.getAsBoolean();
+			else if (prim.isString())
+				key = new ValueKey(String.class, intern(prim.getAsString()));
+			else {
+				// Different number types compare differently, so keep them apart.
+				final Number n = prim.getAsNumber();
+				key = new ValueKey(n.getClass(), n.toString());
+			}
+
+			return canonical(key, prim);
+		}
+
+		if (elem instanceof JsonArray arr) {
+			final Object[] parts = new Object[arr.size()];
+			boolean same = true;
+
+			for (int i = 0; i < parts.length; i++) {
+				final JsonElement child = arr.get(i);
+				same &= (parts[i] = intern(child)) == child;
+			}
+
+			final TreeKey key = new TreeKey(false, parts);
+			final JsonElement existing = elements.get(key);
+			if (existing != null) return existing;
+
+			final JsonArray ret;
+			if (same)
+				ret = arr;
+			else {
+				ret = new JsonArray(parts.length);
+				for (Object part : parts)
+					ret.add((JsonElement) part);
+			}
+
+			return canonical(key, ret);
+		}
+
+		final JsonObject obj = elem.getAsJsonObject();
+		final Object[] parts = new Object[obj.size() * 2];
+		boolean same = true;
+
+		int i = 0;
+		for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+			same &= (parts[i++] = intern(entry.getKey())) == entry.getKey();
+			same &= (parts[i++] = intern(entry.getValue())) == entry.getValue();
+		}
+
+		final TreeKey key = new TreeKey(true, parts);
+		final JsonElement existing = elements.get(key);
+		if (existing != null) return existing;
+
+		final JsonObject ret;
+		if (same)
+			ret = obj;
+		else {
+			ret = new JsonObject();
+			for (int j = 0; j < parts.length; j += 2)
+				ret.add((String) parts[j], (JsonElement) parts[j + 1]);
+		}
+
+		return canonical(key, ret);
+	}
+
+	/**
+	 * Returns the canonical instance of the given selector.
+	 * Selectors of unknown types are returned as-is.
+	 * @param selector The selector.
+	 * @return The canonical instance, or {@code null} if {@code selector} is {@code null}.
+	 * @since 2.1.0
+	 */
+	public JsonSelector intern(@Nullable JsonSelector selector) {
+		if (!enabled || selector == null) return selector;
+
+		final Object key;
+		final JsonSelector ret;
+
+		if (selector instanceof CompoundSelector compound) {
+			final JsonSelector[] path = new JsonSelector[compound.size()];
+			for (int i = 0; i < path.length; i++)
+				path[i] = intern(compound.path(i));
+
+			key = new TreeKey(compound.absolute(), path);
+			ret = new CompoundSelector(path, compound.absolute());
+		} else {
+			key = selector;
+
+			if (selector instanceof NameSelector s)
+				ret = new NameSelector(intern(s.name()));
+			else if (selector instanceof NumericSelector s)
+				ret = new NumericSelector(s.index(), intern(s.strIndex()));
+			else if (selector instanceof PlaceholderSelector s)
+				ret = new PlaceholderSelector(intern(s.placeholder()), intern(s.raw()));
+			else
+				ret = selector;
+		}
+
+		final JsonSelector existing = selectors.putIfAbsent(key, ret);
+		return existing != null ? existing : ret;
+	}
+
+	/**
+	 * Parses the given path using {@link JsonSelector#of(String)}, and returns the canonical instance of the result.
+	 * Paths that were parsed before are not parsed again.
+	 * @param path The path.
+	 * @return The canonical selector, or {@code null} if {@code path} is {@code null}.
+	 * @since 2.1.0
+	 */
+	public CompoundSelector parse(@Nullable String path) {
+		if (path == null) return null;
+		if (!enabled) return JsonSelector.of(path);
+
+		final CompoundSelector existing = paths.get(path);
+		if (existing != null) return existing;
+
+		final CompoundSelector ret = (CompoundSelector) intern(JsonSelector.of(path));
+		paths.putIfAbsent(intern(path), ret);
+		return ret;
+	}
+
+	private JsonElement canonical(Object key, JsonElement elem) {
+		final JsonElement existing = elements.putIfAbsent(key, elem);
+		return existing != null ? existing : elem;
+	}
+
+	/**
+	 * A key for a primitive value.
+	 * @param type The type of the value.
+	 * @param text The textual form of the value.
+	 */
+	private static record ValueKey(Class<?> type, String text) {}
+
+	/**
+	 * A key for an array, object or compound selector. The parts are all interned, so they're compared by identity.
+	 */
+	private static final class TreeKey {
+
+		private final boolean flag;
+		private final Object[] parts;
+		private final int hash;
+
+		TreeKey(boolean flag, Object[] parts) {
+			this.flag = flag;
+			this.parts = parts;
+
+			int hash = Boolean.hashCode(flag);
+			for (Object part : parts)
+				hash = 31 * hash + System.identityHashCode(part);
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TreeKey other) || flag != other.flag || hash != other.hash || parts.length != other.parts.length)
+				return false;
+
+			for (int i = 0; i < parts.length; i++)
+				if (parts[i] != other.parts[i])
+					return false;
+
+			return true;
+		}
+	}
+}
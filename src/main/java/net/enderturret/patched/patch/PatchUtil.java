@@ -1,5 +1,6 @@
 package net.enderturret.patched.patch;
 
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Objects;
 
@@ -8,10 +9,16 @@ import org.jetbrains.annotations.Nullable;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.IMutationListener.Mutation;
+import net.enderturret.patched.IMutationListener.Type;
 import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.exception.PatchingException;
+import net.enderturret.patched.exception.TraversalException;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.ElementContexts;
+import net.enderturret.patched.patch.context.PatchContext;
+import net.enderturret.patched.patch.context.UndoLog;
 
 /**
  * Various utilities used in the patching backend.
@@ -102,7 +109,7 @@ public final class PatchUtil {
 
 	/**
 	 * Creates a {@link TestPatch} from the specified values.
-	 * @param type A custom type for {@link ITestEvaluator}.
+	 * @param type A custom type for {@link ITestEvaluator}, or a built-in type prefixed with {@code patched:}.
 	 * @param path The path to the element to test. May be {@code null}.
 	 * @param test The test element. May be {@code null}.
 	 * @param inverse Whether the check is inverted, i.e checking to see if something doesn't exist.
@@ -186,23 +193,84 @@ public final class PatchUtil {
 	}
 
 	/**
-	 * Removes the element represented by the specified {@code ElementContext} from its parent.
+	 * <p>
+	 * Evaluates the tests in the given patch that are {@linkplain ITestEvaluator#isDocumentIndependent(String) document-independent} ahead of time,
+	 * and removes the parts of the patch that can never be applied as a result.
+	 * This is meant to be done once after loading a patch, before applying it to any documents.
+	 * </p>
+	 * <p>
+	 * Passing tests are removed. A failing test in a {@link CompoundPatch} removes it and everything after it,
+	 * and a {@link FindPatch} with a failing test or nothing left to apply is removed entirely (which means it will no longer complain about its path not existing).
+	 * Failing tests are kept if {@link PatchContext#throwOnFailedTest()} is enabled, since they're supposed to throw an exception when they're reached.
+	 * </p>
+	 * @param patch The patch to fold.
+	 * @param context The context the patch will be applied with. Its test evaluator decides which tests are document-independent.
+	 * @return The folded patch, or {@code patch} if nothing could be folded.
+	 * @since 2.1.0
+	 */
+	public static JsonPatch fold(JsonPatch patch, PatchContext context) {
+		return patch.fold(context);
+	}
+
+	/**
+	 * <p>Applies the given patch to the given element, reporting it to the installed {@linkplain PatchContext#metrics() metrics listener}, if there is one.</p>
+	 * <p>This is equivalent to {@link JsonPatch#patch(ElementContext, PatchContext)} when no metrics listener is installed.</p>
+	 * @param patch The patch to apply.
+	 * @param root The element to apply the patch to.
+	 * @param context The patch context.
+	 * @throws PatchingException If the patch could not be applied for some reason.
+	 * @throws TraversalException If a path in the patch could not be traversed.
+	 * @since 2.1.0
+	 */
+	public static void apply(JsonPatch patch, ElementContext root, PatchContext context) throws PatchingException, TraversalException {
+		Metering.patch(patch, root, context);
+	}
+
+	/**
+	 * <p>Has the given evaluator {@linkplain ITestEvaluator#compile(String, JsonElement) compile} every custom test in the given patch.</p>
+	 * <p>Tests are otherwise compiled the first time they are tested. Compiling them right after loading moves that cost out of applying the patch.</p>
+	 * @param patch The patch.
+	 * @param evaluator The evaluator the patch will be applied with.
+	 * @since 2.1.0
+	 */
+	public static void compileTests(JsonPatch patch, ITestEvaluator evaluator) {
+		patch.compileTests(evaluator);
+	}
+
+	/**
+	 * <p>Removes the element represented by the specified {@code ElementContext} from its parent.</p>
+	 * <p>The removal is reported to the installed {@linkplain PatchContext#mutationListener() mutation listener}, if there is one.</p>
 	 * @param context The context.
 	 * @since 2.0.0
 	 */
 	public static void applyRemove(ElementContext context) {
-		if (context instanceof ElementContexts.Object obj)
-			obj.parent().remove(obj.name());
+		if (context.session() != null) context.session().mutated(context);
+
+		final UndoLog undo = context.session() != null ? context.session().undoLog() : null;
+		final JsonElement removed;
 
-		else if (context instanceof ElementContexts.Array arr)
-			arr.parent().remove(arr.index());
+		if (context instanceof ElementContexts.Object obj) {
+			if (undo != null) undo.remove(obj.parent(), obj.name());
+			removed = obj.parent().remove(obj.name());
+		}
+
+		else if (context instanceof ElementContexts.Array arr) {
+			if (undo != null) undo.remove(arr.parent(), arr.index());
+			removed = arr.parent().remove(arr.index());
+		}
 
 		else if (context instanceof ElementContexts.Document)
 			throw new PatchingException("Attempted to remove root element!");
+
+		else return;
+
+		final IMutationListener listener = context.context().mutationListener();
+		if (listener != null) listener.mutated(new Mutation(Type.REMOVE, context.doc(), pointer(context), removed, null));
 	}
 
 	/**
-	 * Adds or replaces the element represented by the specified context with the specified element.
+	 * <p>Adds or replaces the element represented by the specified context with the specified element.</p>
+	 * <p>The modification is reported to the installed {@linkplain PatchContext#mutationListener() mutation listener}, if there is one.</p>
 	 * @param context The context to modify.
 	 * @param elem The element to add or replace with.
 	 * @param replace Whether or not to replace the original element versus add to it.
@@ -211,19 +279,62 @@ public final class PatchUtil {
 	public static void applyAdd(ElementContext context, JsonElement elem, boolean replace) {
 		// Make sure we actually copy the element. Not important for primitives (numbers, strings) but required for objects and arrays.
 		// Avoids leaking a patch's element reference into the document.
-		if (elem != null) elem = elem.deepCopy();
+		if (elem != null) {
+			elem = elem.deepCopy();
+			if (context.context().metrics() != null && context.session() != null) context.session().counters().countCopied();
+		}
+
+		if (context.session() != null) context.session().mutated(context);
+
+		final IMutationListener listener = context.context().mutationListener();
+		final UndoLog undo = context.session() != null ? context.session().undoLog() : null;
+		JsonElement old = null;
 
-		if (context instanceof ElementContexts.Object obj)
+		if (context instanceof ElementContexts.Object obj) {
+			if (undo != null) undo.put(obj.parent(), obj.name());
+			if (listener != null) old = obj.parent().get(obj.name());
 			obj.parent().add(obj.name(), elem);
+		}
 
 		else if (context instanceof ElementContexts.Array arr) {
-			if (replace)
-				arr.parent().set(arr.index(), elem);
-			else
+			if (replace) {
+				if (undo != null) undo.set(arr.parent(), arr.index());
+				old = arr.parent().set(arr.index(), elem);
+			} else {
+				if (undo != null) undo.insert(arr.parent(), arr.index());
 				add(arr.parent(), arr.index(), elem);
+			}
 		}
 
-		else if (context instanceof ElementContexts.Document doc)
+		else if (context instanceof ElementContexts.Document doc) {
+			if (undo != null) undo.setRoot(doc.doc());
+			old = doc.doc().getRoot();
 			doc.doc().setRoot(elem);
+		}
+
+		if (listener != null)
+			listener.mutated(new Mutation(old != null ? Type.REPLACE : Type.ADD, context.doc(), pointer(context), old, elem));
+	}
+
+	/**
+	 * @param context The context of an element.
+	 * @return The JSON pointer to the element, or {@code null} if the context doesn't lead back to the root of its document.
+	 */
+	@Nullable
+	private static String pointer(ElementContext context) {
+		final ArrayDeque<String> segments = new ArrayDeque<>();
+
+		for (ElementContext ctx = context;; ctx = ctx.parentContext()) {
+			if (ctx instanceof ElementContexts.Object obj)
+				segments.addFirst(obj.name().replace("~", "~0").replace("/", "~1"));
+			else if (ctx instanceof ElementContexts.Array arr)
+				segments.addFirst(Integer.toString(arr.index()));
+			else if (ctx instanceof ElementContexts.Document)
+				break;
+			else
+				return null;
+		}
+
+		return segments.isEmpty() ? "" : "/" + String.join("/", segments);
 	}
-}
\ No newline at end of file
+}
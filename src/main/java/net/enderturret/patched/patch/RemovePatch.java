@@ -1,5 +1,14 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.stream.JsonWriter;
+
+import net.enderturret.patched.ITestEvaluator;
+import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.PatchContext;
 
@@ -20,15 +29,41 @@ public final class RemovePatch extends JsonPatch {
 		super(path);
 	}
 
+	/**
+	 * Equivalent to {@link #RemovePatch(String)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	RemovePatch(JsonSelector path) {
+		super(path);
+	}
+
 	@Override
 	protected String operation() {
 		return "remove";
 	}
 
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) {}
+
 	@Override
 	public void patch(ElementContext root, PatchContext context) {
 		final ElementContext after = path.select(root, true);
 		PatchUtil.applyRemove(after);
 		if (context.audit() != null) context.audit().recordRemove(root, path, after.elem());
 	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
+	}
+
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return isInside(path);
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		return collectFootprint(path, into);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,398 @@
+package net.enderturret.patched.patch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import net.enderturret.patched.JsonSelector;
+import net.enderturret.patched.JsonSelector.CompoundSelector;
+import net.enderturret.patched.JsonSelector.NameSelector;
+import net.enderturret.patched.JsonSelector.NumericSelector;
+import net.enderturret.patched.exception.PatchingException;
+import net.enderturret.patched.exception.TraversalException;
+import net.enderturret.patched.patch.context.PatchContext;
+
+/**
+ * <p>Applies a patch while copying a document from a {@link JsonReader} to a {@link JsonWriter}, without ever holding the whole document in memory.</p>
+ * <p>
+ * Only patches made of {@code add}, {@code replace}, {@code remove} and {@code test} operations at static paths can be streamed:
+ * paths may not be absolute, contain placeholders or use the end-of-array token '-', and no two operations may have overlapping paths
+ * (one being equal to or inside the other). An operation that inserts into or removes from an array must also be the only one of its kind in that array,
+ * and the other operations inside the array must be at lower indices, since it shifts the indices of everything after it
+ * (numeric names are assumed to refer to array elements, as the document hasn't been read yet).
+ * Tests can only be streamed when {@link PatchContext#throwOnFailedTest()} is enabled, and only ones comparing against a value (not custom or built-in test types).
+ * Under these restrictions the order of the operations doesn't matter, so the patch gives the same result as applying it to the parsed document.
+ * </p>
+ * <p>
+ * Everything the patch doesn't touch is copied token by token, so memory use only depends on the values being added and the elements being tested.
+ * Numbers are copied exactly as they are written. Patching doesn't report to the {@linkplain PatchContext#audit() audit},
+ * {@linkplain PatchContext#metrics() metrics} or {@linkplain PatchContext#mutationListener() mutation listener} of the context.
+ * </p>
+ * <p>
+ * If patching fails part way through, the output will be incomplete.
+ * Streaming patches are immutable and can be {@linkplain #apply(JsonReader, JsonWriter) applied} to any number of documents.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+public final class StreamingPatch {
+
+	private final Node root;
+	private final List<Op> ops;
+	private final boolean throwOnOobAdd;
+	private final boolean testExtensions;
+
+	private StreamingPatch(Node root, List<Op> ops, PatchContext context) {
+		this.root = root;
+		this.ops = ops;
+		throwOnOobAdd = context.throwOnOobAdd();
+		testExtensions = context.testExtensions();
+	}
+
+	/**
+	 * Prepares the given patch for streaming.
+	 * @param patch The patch.
+	 * @param context The context to apply the patch in.
+	 * @return The streaming form of the patch.
+	 * @throws PatchingException If the patch can't be streamed.
+	 * @since 2.1.0
+	 */
+	public static StreamingPatch of(JsonPatch patch, PatchContext context) throws PatchingException {
+		final List<Op> ops = new ArrayList<>();
+		collect(patch, context, ops);
+
+		final Node root = new Node();
+
+		for (Op op : ops) {
+			Node node = root;
+
+			for (int i = 0; i < op.path.length; i++) {
+				if (node.op != null) throw overlap(node.op, op);
+
+				final boolean structural = op.path[i] instanceof NumericSelector && i == op.path.length - 1 && (op.kind == Kind.ADD || op.kind == Kind.REMOVE);
+
+				if (structural) {
+					if (node.structural != null) throw overlap(node.structural, op);
+					for (JsonSelector sibling : node.children.keySet())
+						if (!before(sibling, op.path[i])) throw shifts(op);
+					node.structural = op;
+				} else if (node.structural != null && !before(op.path[i], node.structural.path[i]))
+					throw shifts(node.structural);
+
+				node = node.children.computeIfAbsent(op.path[i], k -> new Node());
+			}
+
+			if (node.op != null) throw overlap(node.op, op);
+			if (!node.children.isEmpty()) throw overlap(first(node), op);
+
+			node.op = op;
+		}
+
+		return new StreamingPatch(root, List.copyOf(ops), context);
+	}
+
+	/**
+	 * Reads a document from {@code in}, applies the patch to it and writes the result to {@code out}.
+	 * @param in The reader to read the document from. Only one value is read.
+	 * @param out The writer to write the patched document to.
+	 * @throws IOException If reading or writing fails.
+	 * @throws PatchingException If the patch fails to apply, such as when a test fails or an element to replace doesn't exist.
+	 * @since 2.1.0
+	 */
+	public void apply(JsonReader in, JsonWriter out) throws IOException, PatchingException {
+		final boolean[] done = new boolean[ops.size()];
+
+		visit(in, out, root, done);
+
+		// Anything left over refers to elements the document doesn't have.
+		for (int i = 0; i < done.length; i++)
+			if (!done[i]) {
+				final Op op = ops.get(i);
+				if (op.kind == Kind.TEST) {
+					check(op, null);
+					continue;
+				}
+				throw new TraversalException("No such child " + op.path[op.path.length - 1] + "!").withPath(op.pointer);
+			}
+	}
+
+	private void visit(JsonReader in, JsonWriter out, Node node, boolean[] done) throws IOException {
+		if (node.op != null) {
+			apply(in, out, node.op, done);
+			return;
+		}
+
+		if (node.children.isEmpty()) {
+			copy(in, out);
+			return;
+		}
+
+		final JsonToken token = in.peek();
+
+		if (token == JsonToken.BEGIN_OBJECT) {
+			in.beginObject();
+			out.beginObject();
+
+			// Members are looked up by name, regardless of how their selector was written.
+			final Map<String, Node> members = new LinkedHashMap<>();
+			for (Map.Entry<JsonSelector, Node> entry : node.children.entrySet())
+				members.put(name(entry.getKey()), entry.getValue());
+
+			while (in.hasNext()) {
+				final String name = in.nextName();
+				final Node child = members.remove(name);
+
+				if (child == null) {
+					out.name(name);
+					copy(in, out);
+				} else if (child.op != null && child.op.kind == Kind.REMOVE) {
+					in.skipValue();
+					done[child.op.id] = true;
+				} else {
+					out.name(name);
+					visit(in, out, child, done);
+				}
+			}
+
+			// Members that weren't there can only be added, at the end.
+			for (Map.Entry<String, Node> entry : members.entrySet())
+				if (entry.getValue().op != null && entry.getValue().op.kind == Kind.ADD) {
+					out.name(entry.getKey());
+					write(out, entry.getValue().op, done);
+				}
+
+			in.endObject();
+			out.endObject();
+		} else if (token == JsonToken.BEGIN_ARRAY) {
+			for (JsonSelector selector : node.children.keySet())
+				if (!(selector instanceof NumericSelector))
+					throw new TraversalException("Expected object to find '" + selector + "' in, found array!").withPath(first(node).pointer);
+
+			in.beginArray();
+			out.beginArray();
+
+			int index = 0;
+			for (; in.hasNext(); index++) {
+				final Node child = node.children.get(new NumericSelector(index, Integer.toString(index)));
+
+				if (child == null)
+					copy(in, out);
+				else if (child.op != null && child.op.kind == Kind.ADD) {
+					write(out, child.op, done);
+					copy(in, out);
+				} else if (child.op != null && child.op.kind == Kind.REMOVE) {
+					in.skipValue();
+					done[child.op.id] = true;
+				} else
+					visit(in, out, child, done);
+			}
+
+			if (node.structural != null && node.structural.kind == Kind.ADD && !done[node.structural.id]) {
+				final int target = ((NumericSelector) node.structural.path[node.structural.path.length - 1]).index();
+				if (target == index || target > index && !throwOnOobAdd)
+					write(out, node.structural, done);
+			}
+
+			in.endArray();
+			out.endArray();
+		} else
+			throw new TraversalException("Expected array or object to find '" + node.children.keySet().iterator().next() + "' in, found " + token + "!")
+					.withPath(first(node).pointer);
+	}
+
+	private void apply(JsonReader in, JsonWriter out, Op op, boolean[] done) throws IOException {
+		switch (op.kind) {
+			case ADD, REPLACE -> {
+				in.skipValue();
+				write(out, op, done);
+			}
+			case REMOVE -> throw new PatchingException("Attempted to remove root element!");
+			case TEST -> {
+				final JsonElement elem = JsonPatchAdapter.ELEMENT_ADAPTER.read(in);
+				check(op, elem);
+				JsonPatchAdapter.ELEMENT_ADAPTER.write(out, elem);
+				done[op.id] = true;
+			}
+		}
+	}
+
+	private void check(Op op, @Nullable JsonElement elem) {
+		final boolean equal = elem != null && (op.value == null || op.value.equals(elem));
+		final boolean inverse = testExtensions && op.inverse;
+
+		if (equal == inverse)
+			throw new PatchingException("Test " + (elem == null ? "null" : elem) + " " + (inverse ? "!=" : "==") + " " + op.value + " failed.");
+	}
+
+	private static void write(JsonWriter out, Op op, boolean[] done) throws IOException {
+		JsonPatchAdapter.ELEMENT_ADAPTER.write(out, op.value);
+		done[op.id] = true;
+	}
+
+	/**
+	 * Copies a single value from {@code in} to {@code out}.
+	 */
+	private static void copy(JsonReader in, JsonWriter out) throws IOException {
+		int depth = 0;
+
+		// Nesting is tracked with a counter rather than by recursing, so that deeply nested documents can be copied.
+		do {
+			switch (in.peek()) {
+				case BEGIN_OBJECT -> {
+					in.beginObject();
+					out.beginObject();
+					depth++;
+				}
+				case END_OBJECT -> {
+					in.endObject();
+					out.endObject();
+					depth--;
+				}
+				case BEGIN_ARRAY -> {
+					in.beginArray();
+					out.beginArray();
+					depth++;
+				}
+				case END_ARRAY -> {
+					in.endArray();
+					out.endArray();
+					depth--;
+				}
+				case NAME -> out.name(in.nextName());
+				case STRING -> out.value(in.nextString());
+				case NUMBER -> out.jsonValue(in.nextString());
+				case BOOLEAN -> out.value(in.nextBoolean());
+				case NULL -> {
+					in.nextNull();
+					out.nullValue();
+				}
+				case END_DOCUMENT -> throw new PatchingException("Unexpected end of document!");
+			}
+		} while (depth > 0);
+	}
+
+	private static void collect(JsonPatch patch, PatchContext context, List<Op> into) {
+		if (patch instanceof CompoundPatch cp) {
+			for (JsonPatch p : cp.patches)
+				collect(p, context, into);
+			return;
+		}
+
+		final Kind kind;
+		JsonElement value = null;
+		boolean inverse = false;
+
+		if (patch instanceof AddPatch add) {
+			kind = Kind.ADD;
+			value = add.value;
+		} else if (patch instanceof ReplacePatch replace) {
+			kind = Kind.REPLACE;
+			value = replace.value;
+		} else if (patch instanceof RemovePatch)
+			kind = Kind.REMOVE;
+		else if (patch instanceof TestPatch test) {
+			if (test.type != null)
+				throw new PatchingException("Cannot stream test of type '" + test.type + "'!");
+			if (!context.throwOnFailedTest())
+				throw new PatchingException("Cannot stream tests unless failed tests throw!");
+			kind = Kind.TEST;
+			value = test.test;
+			inverse = test.inverse;
+		} else
+			throw new PatchingException("Cannot stream '" + patch.operation() + "' operations!");
+
+		if (!(patch.path instanceof CompoundSelector path))
+			throw new PatchingException("Cannot stream " + kind.name + " without a path!");
+		if (path.absolute())
+			throw new PatchingException("Cannot stream " + kind.name + " at absolute path " + path + "!");
+
+		for (JsonSelector selector : path.path())
+			if (!(selector instanceof NumericSelector) && (!(selector instanceof NameSelector name) || "-".equals(name.name())))
+				throw new PatchingException("Cannot stream " + kind.name + " at non-static path " + path + "!");
+
+		into.add(new Op(into.size(), kind, path.path(), path.toString(), value, inverse));
+	}
+
+	private static String name(JsonSelector selector) {
+		return selector instanceof NumericSelector num ? num.strIndex() : ((NameSelector) selector).name();
+	}
+
+	private static Op first(Node node) {
+		while (node.op == null)
+			node = node.children.values().iterator().next();
+		return node.op;
+	}
+
+	/**
+	 * @return {@code true} if {@code a} refers to an array element before {@code b}, which inserting or removing at {@code b} doesn't shift.
+	 */
+	private static boolean before(JsonSelector a, JsonSelector b) {
+		return a instanceof NumericSelector x && b instanceof NumericSelector y && x.index() < y.index();
+	}
+
+	private static PatchingException shifts(Op op) {
+		return new PatchingException("Cannot stream " + op + " as it shifts elements that other operations refer to!");
+	}
+
+	private static PatchingException overlap(Op a, Op b) {
+		return new PatchingException("Cannot stream " + b + " as it overlaps with " + a + "!");
+	}
+
+	private static enum Kind {
+		ADD("add"),
+		REPLACE("replace"),
+		REMOVE("remove"),
+		TEST("test");
+
+		private final String name;
+
+		private Kind(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * A single operation of the patch.
+	 * @param id The position of the operation in the patch.
+	 */
+	private static record Op(int id, Kind kind, JsonSelector[] path, String pointer, @Nullable JsonElement value, boolean inverse) {
+		@Override
+		public String toString() {
+			return kind.name + " at '" + pointer + "'";
+		}
+	}
+
+	/**
+	 * A position in the document that operations apply at or inside of.
+	 */
+	private static final class Node {
+
+		private final Map<JsonSelector, Node> children = new TreeMap<>(StreamingPatch::compare);
+
+		/**
+		 * The operation applying at this position, if there is one.
+		 */
+		@Nullable
+		private Op op;
+
+		/**
+		 * The operation inserting into or removing from this array, if there is one. Every other child is before it.
+		 */
+		@Nullable
+		private Op structural;
+	}
+
+	private static int compare(JsonSelector a, JsonSelector b) {
+		return name(a).compareTo(name(b));
+	}
+}
@@ -0,0 +1,163 @@
+package net.enderturret.patched.patch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patched.ITestEvaluator;
+import net.enderturret.patched.patch.context.ElementContext;
+import net.enderturret.patched.patch.context.PatchContext;
+
+/**
+ * <p>A group of tests that must all pass, such as the tests of a {@link FindPatch} or a run of consecutive tests in a {@link CompoundPatch}.</p>
+ * <p>
+ * Normally, the tests are evaluated in the order they were declared in, stopping at the first one that fails.
+ * When {@linkplain PatchContext#adaptiveTestOrder() adaptive test ordering} is enabled, the group also keeps statistics about each test,
+ * and every so often reorders the tests by their average cost divided by how often they fail, which minimizes the expected cost of evaluating the group
+ * (assuming the tests are independent). Tests are only reordered if none of them can have side-effects, and if failed tests don't throw exceptions
+ * (in which case the order determines which exception is thrown).
+ * </p>
+ * <p>Groups are thread-safe.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class TestGroup {
+
+	/**
+	 * The number of times a group is evaluated between reorderings.
+	 */
+	static final int REORDER_INTERVAL = 64;
+
+	private final TestPatch[] tests;
+	private final Counters[] counters;
+	private final AtomicLong runs = new AtomicLong();
+
+	/**
+	 * The order to evaluate the tests in, or {@code null} for declaration order.
+	 */
+	@Nullable
+	private volatile int[] order;
+
+	TestGroup(List<TestPatch> tests) {
+		this.tests = tests.toArray(new TestPatch[0]);
+		counters = new Counters[this.tests.length];
+		for (int i = 0; i < counters.length; i++)
+			counters[i] = new Counters();
+	}
+
+	/**
+	 * @return The number of tests in this group.
+	 */
+	int size() {
+		return tests.length;
+	}
+
+	/**
+	 * Evaluates the tests in this group.
+	 * @param root The element to test.
+	 * @return {@code true} if all of the tests pass.
+	 */
+	boolean test(ElementContext root) {
+		final PatchContext context = root.context();
+
+		if (!context.adaptiveTestOrder()) {
+			for (TestPatch test : tests)
+				if (!test.test(root))
+					return false;
+
+			return true;
+		}
+
+		final int[] order = context.throwOnFailedTest() || !isSideEffectFree(context.testEvaluator()) ? null : this.order;
+		boolean passed = true;
+
+		for (int k = 0; k < tests.length && passed; k++) {
+			final int i = order != null ? order[k] : k;
+
+			final long start = System.nanoTime();
+			passed = tests[i].test(root);
+			counters[i].record(passed, System.nanoTime() - start);
+		}
+
+		if (runs.incrementAndGet() % REORDER_INTERVAL == 0 && tests.length > 1)
+			reorder();
+
+		return passed;
+	}
+
+	/**
+	 * @return {@code true} if all of the tests in this group are {@linkplain JsonPatch#isChildLocal(ITestEvaluator) child-local}.
+	 */
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		for (TestPatch test : tests)
+			if (!test.isChildLocal(evaluator))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * @return {@code true} if none of the tests in this group can have side-effects.
+	 */
+	boolean isSideEffectFree(@Nullable ITestEvaluator evaluator) {
+		for (TestPatch test : tests)
+			if (!test.isSideEffectFree(evaluator))
+				return false;
+
+		return true;
+	}
+
+	private void reorder() {
+		final double[] ranks = new double[tests.length];
+		final Integer[] order = new Integer[tests.length];
+
+		for (int i = 0; i < tests.length; i++) {
+			order[i] = i;
+
+			final long evaluations = counters[i].evaluations.sum();
+			final long failures = evaluations - counters[i].passes.sum();
+
+			// Tests that never failed (or never ran) can't save any time by going first.
+			ranks[i] = failures <= 0 ? Double.POSITIVE_INFINITY : (double) counters[i].nanos.sum() / failures;
+		}
+
+		// The sort is stable, so tests with equal ranks keep their declared order.
+		Arrays.sort(order, Comparator.comparingDouble(i -> ranks[i]));
+
+		final int[] ret = new int[order.length];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = order[i];
+
+		this.order = ret;
+	}
+
+	/**
+	 * @return The statistics of each test, in declaration order.
+	 */
+	List<TestStatistics> statistics() {
+		final List<TestStatistics> ret = new ArrayList<>(tests.length);
+
+		for (int i = 0; i < tests.length; i++)
+			ret.add(new TestStatistics(tests[i], counters[i].evaluations.sum(), counters[i].passes.sum(), counters[i].nanos.sum()));
+
+		return ret;
+	}
+
+	private static final class Counters {
+
+		private final LongAdder evaluations = new LongAdder();
+		private final LongAdder passes = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		void record(boolean passed, long nanos) {
+			evaluations.increment();
+			if (passed) passes.increment();
+			this.nanos.add(nanos);
+		}
+	}
+}
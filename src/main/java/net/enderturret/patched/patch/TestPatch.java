@@ -1,13 +1,19 @@
 package net.enderturret.patched.patch;
 
+import java.io.IOException;
+import java.util.List;
+
 import org.jetbrains.annotations.ApiStatus.Internal;
 import org.jetbrains.annotations.Nullable;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
+import com.google.gson.stream.JsonWriter;
 
 import net.enderturret.patched.ITestEvaluator;
+import net.enderturret.patched.ITestEvaluator.CompiledTest;
 import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.exception.PatchingException;
 import net.enderturret.patched.exception.TraversalException;
@@ -23,25 +29,54 @@ import net.enderturret.patched.patch.context.PatchContext;
 public final class TestPatch extends JsonPatch {
 
 	@Nullable
-	protected final String type;
+	final String type;
+	@Nullable
+	final JsonElement test;
+	final boolean inverse;
+
+	/**
+	 * A summary of {@link #test} for rejecting elements without comparing them in full, or {@code null} if there's nothing to compare against.
+	 */
+	@Nullable
+	private final ValueShape shape;
+
+	/**
+	 * The condition of a {@linkplain BuiltinTests built-in test type}, or {@code null} if the type isn't built-in.
+	 */
 	@Nullable
-	protected final JsonElement test;
-	protected final boolean inverse;
+	private final CompiledTest builtin;
+
+	/**
+	 * The custom condition, compiled by the evaluator it was last tested with.
+	 */
+	@Nullable
+	private volatile Compiled compiled;
 
 	/**
 	 * Users: don't instantiate directly. Use {@link PatchUtil#test(String, JsonElement, boolean)} instead.
-	 * @param type If non-{@code null}, specifies a custom type for {@link ITestEvaluator}.
+	 * @param type If non-{@code null}, specifies a custom type for {@link ITestEvaluator}, or one of the built-in types prefixed with {@code patched:}.
 	 * @param path The path to the element to test. May be {@code null} only if {@code type} is not.
 	 * @param test The test element. May be {@code null}.
 	 * @param inverse Whether the check is inverted, i.e checking to see if something doesn't exist.
+	 * @throws PatchingException If {@code type} is a built-in type and {@code test} isn't valid for it.
 	 * @since 1.1.0
 	 */
 	@Internal
 	protected TestPatch(@Nullable String type, @Nullable String path, @Nullable JsonElement test, boolean inverse) {
+		this(type, path == null ? null : JsonSelector.of(path), test, inverse);
+	}
+
+	/**
+	 * Equivalent to {@link #TestPatch(String, String, JsonElement, boolean)}, but with already-parsed paths.
+	 * @since 2.1.0
+	 */
+	TestPatch(@Nullable String type, @Nullable JsonSelector path, @Nullable JsonElement test, boolean inverse) {
 		super(path);
 		this.type = type;
 		this.test = test;
 		this.inverse = inverse;
+		builtin = type != null ? BuiltinTests.compile(type, test) : null;
+		shape = type == null && test != null ? ValueShape.of(test) : null;
 	}
 
 	/**
@@ -53,6 +88,15 @@ public final class TestPatch extends JsonPatch {
 	 * @since 1.0.0
 	 */
 	public boolean test(ElementContext root) {
+		return Metering.test(this, root);
+	}
+
+	/**
+	 * Evaluates this test without {@linkplain Metering measuring} it.
+	 * @param root The root {@link ElementContext}.
+	 * @return {@code true} if the test passes.
+	 */
+	boolean evaluate(ElementContext root) {
 		ElementContext ctx = null;
 
 		if (path != null)
@@ -80,18 +124,87 @@ public final class TestPatch extends JsonPatch {
 	}
 
 	private boolean _test(JsonElement root, JsonElement target, PatchContext context, ElementContext elemContext) {
+		if (builtin != null)
+			return builtin.test(root, target, context);
+
 		if (type != null) {
 			if (context.testEvaluator() == null)
 				throw new PatchingException("Cannot handle custom test type '" + type + "' as no evaluator is installed!");
-			return context.testEvaluator().test(root, type, target, test, context);
+			return compiled(context.testEvaluator()).test(root, target, context);
 		}
 
-		return elemContext != null && (test == null || test.equals(target));
+		return elemContext != null && (test == null || shape.mayEqual(target) && test.equals(target));
 	}
 
 	@Override
 	public void patch(ElementContext root, PatchContext context) {}
 
+	/**
+	 * Evaluates this test ahead of time, if its result can't depend on the document.
+	 * @param context The context the test will be evaluated with.
+	 * @return The result, or {@code null} if the test must be evaluated when it is reached.
+	 */
+	@Nullable
+	Boolean constantResult(PatchContext context) {
+		final ITestEvaluator evaluator = context.testEvaluator();
+		if (type == null || builtin != null || path != null || evaluator == null || !evaluator.isDocumentIndependent(type))
+			return null;
+
+		final boolean result;
+		try {
+			result = compiled(evaluator).test(JsonNull.INSTANCE, null, context) != (context.testExtensions() && inverse);
+		} catch (RuntimeException e) {
+			// Let it fail when (and if) the test is reached.
+			return null;
+		}
+
+		// Failing tests must still throw when they're reached.
+		if (!result && context.throwOnFailedTest())
+			return null;
+
+		return result;
+	}
+
+	private CompiledTest compiled(ITestEvaluator evaluator) {
+		if (builtin != null) return builtin;
+
+		Compiled ret = compiled;
+
+		if (ret == null || ret.evaluator() != evaluator)
+			compiled = ret = new Compiled(evaluator, evaluator.compile(type, test));
+
+		return ret.test();
+	}
+
+	@Override
+	void compileTests(ITestEvaluator evaluator) {
+		if (type != null && builtin == null) compiled(evaluator);
+	}
+
+	/**
+	 * @return {@code true} if this test can't have side-effects.
+	 */
+	boolean isSideEffectFree(@Nullable ITestEvaluator evaluator) {
+		// Custom tests may do anything, unless the evaluator says otherwise.
+		return type == null || builtin != null || evaluator != null && evaluator.isSideEffectFree(type);
+	}
+
+	@Override
+	boolean reportsMutations() {
+		return true;
+	}
+
+	@Override
+	boolean isChildLocal(@Nullable ITestEvaluator evaluator) {
+		return isSideEffectFree(evaluator) && isLocal(path);
+	}
+
+	@Override
+	boolean collectFootprint(List<JsonSelector[]> into, @Nullable ITestEvaluator evaluator) {
+		// Custom tests are given the root element, so they may look at anything.
+		return (type == null || builtin != null) && collectFootprint(path, into);
+	}
+
 	@Override
 	protected void writeAdditional(JsonObject obj, JsonSerializationContext context) {
 		if (test != null)
@@ -118,8 +231,41 @@ public final class TestPatch extends JsonPatch {
 		return obj;
 	}
 
+	@Override
+	protected void writeAdditional(JsonWriter out, JsonPatchAdapter adapter) throws IOException {
+		if (test != null) {
+			out.name("value");
+			JsonPatchAdapter.ELEMENT_ADAPTER.write(out, test);
+		}
+		if (inverse)
+			out.name("inverse").value(inverse);
+	}
+
+	@Override
+	protected void write(JsonWriter out, JsonPatchAdapter adapter, @Nullable String omitOperation) throws IOException {
+		out.beginObject();
+
+		if (!operation().equals(omitOperation))
+			out.name("op").value(operation());
+
+		if (type != null)
+			out.name("type").value(type);
+
+		if (path != null)
+			out.name("path").value(path.toString());
+
+		writeAdditional(out, adapter);
+
+		out.endObject();
+	}
+
 	@Override
 	protected String operation() {
 		return "test";
 	}
+
+	/**
+	 * A compiled custom condition, along with the evaluator that compiled it.
+	 */
+	private static record Compiled(ITestEvaluator evaluator, CompiledTest test) {}
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package net.enderturret.patched.patch;
+
+import net.enderturret.patched.patch.context.PatchContext;
+
+/**
+ * <p>Statistics about how a test in a {@code find} or compound patch has performed so far.</p>
+ * <p>
+ * Statistics are only collected while {@linkplain PatchContext#adaptiveTestOrder() adaptive test ordering} is enabled.
+ * They can be used to reorder tests by hand: generally, tests that are cheap and fail often should come first.
+ * </p>
+ * @param test The test.
+ * @param evaluations The number of times the test was evaluated.
+ * @param passes The number of times the test passed.
+ * @param nanos The total time spent evaluating the test, in nanoseconds.
+ * @author EnderTurret
+ * @see FindPatch#testStatistics()
+ * @see CompoundPatch#testStatistics()
+ * @since 2.1.0
+ */
+public record TestStatistics(TestPatch test, long evaluations, long passes, long nanos) {
+
+	/**
+	 * @return The fraction of evaluations in which the test passed, or {@code 1} if it was never evaluated.
+	 * @since 2.1.0
+	 */
+	public double passRate() {
+		return evaluations == 0 ? 1 : (double) passes / evaluations;
+	}
+
+	/**
+	 * @return The average time spent evaluating the test, in nanoseconds, or {@code 0} if it was never evaluated.
+	 * @since 2.1.0
+	 */
+	public double averageNanos() {
+		return evaluations == 0 ? 0 : (double) nanos / evaluations;
+	}
+}
@@ -0,0 +1,143 @@
+package net.enderturret.patched.patch;
+
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * <p>A summary of the value of a {@link TestPatch}, computed once when the patch is created, used to quickly reject elements that can't be equal to it.</p>
+ * <p>
+ * The summary holds the value's JSON type, its size (for arrays and objects), a hash (for strings, compared against the string's own cached hash),
+ * the value itself as a {@code double} (for numbers), and the same information for the children of arrays and objects, down to {@link #DEPTH} levels.
+ * An element that doesn't fit the summary is never {@linkplain JsonElement#equals(Object) equal} to the value; an element that does is
+ * only likely to be, so it must still be compared in full.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class ValueShape {
+
+	/**
+	 * How many levels of children are summarized. Anything deeper is left to the full comparison.
+	 */
+	static final int DEPTH = 2;
+
+	private static final int NULL = 0, BOOLEAN = 1, NUMBER = 2, STRING = 3, ARRAY = 4, OBJECT = 5;
+
+	private final int kind;
+	private final int size;
+	private final int hash;
+	private final double number;
+
+	@Nullable
+	private final String[] names;
+	@Nullable
+	private final ValueShape[] children;
+
+	private ValueShape(JsonElement value, int depth) {
+		kind = kind(value);
+
+		if (value instanceof JsonPrimitive prim) {
+			size = 0;
+			hash = prim.isString() ? prim.getAsString().hashCode() : prim.isBoolean() ? Boolean.hashCode(prim.getAsBoolean()) : 0;
+			number = prim.isNumber() ? prim.getAsDouble() : 0;
+			names = null;
+			children = null;
+			return;
+		}
+
+		hash = 0;
+		number = 0;
+
+		if (value instanceof JsonArray arr) {
+			size = arr.size();
+			names = null;
+			children = depth > 0 ? new ValueShape[size] : null;
+
+			if (children != null)
+				for (int i = 0; i < size; i++)
+					children[i] = new ValueShape(arr.get(i), depth - 1);
+		} else if (value instanceof JsonObject obj) {
+			size = obj.size();
+			names = depth > 0 ? new String[size] : null;
+			children = depth > 0 ? new ValueShape[size] : null;
+
+			if (children != null) {
+				int i = 0;
+				for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+					names[i] = entry.getKey();
+					children[i++] = new ValueShape(entry.getValue(), depth - 1);
+				}
+			}
+		} else {
+			size = 0;
+			names = null;
+			children = null;
+		}
+	}
+
+	/**
+	 * Summarizes the given value.
+	 * @param value The value of a test.
+	 * @return The summary.
+	 */
+	static ValueShape of(JsonElement value) {
+		return new ValueShape(value, DEPTH);
+	}
+
+	/**
+	 * @param target The element to check.
+	 * @return {@code false} if the element is definitely not equal to the summarized value, or {@code true} if it may be.
+	 */
+	boolean mayEqual(@Nullable JsonElement target) {
+		if (target == null || kind(target) != kind) return false;
+
+		switch (kind) {
+			case BOOLEAN:
+				return Boolean.hashCode(target.getAsBoolean()) == hash;
+			case STRING:
+				// Strings cache their hash, so this is usually free.
+				return target.getAsString().hashCode() == hash;
+			case NUMBER:
+				// Numbers that Gson considers equal always have the same double value, whichever way they're compared.
+				final double d = target.getAsDouble();
+				return d == number || Double.isNaN(d) && Double.isNaN(number);
+			case ARRAY: {
+				final JsonArray arr = (JsonArray) target;
+				if (arr.size() != size) return false;
+
+				if (children != null)
+					for (int i = 0; i < size; i++)
+						if (!children[i].mayEqual(arr.get(i)))
+							return false;
+
+				return true;
+			}
+			case OBJECT: {
+				final JsonObject obj = (JsonObject) target;
+				if (obj.size() != size) return false;
+
+				if (children != null)
+					for (int i = 0; i < size; i++)
+						if (!children[i].mayEqual(obj.get(names[i])))
+							return false;
+
+				return true;
+			}
+			default:
+				return true;
+		}
+	}
+
+	private static int kind(JsonElement elem) {
+		if (elem instanceof JsonPrimitive prim) return prim.isBoolean() ? BOOLEAN : prim.isNumber() ? NUMBER : STRING;
+		if (elem instanceof JsonArray) return ARRAY;
+		if (elem instanceof JsonObject) return OBJECT;
+		return NULL;
+	}
+}
@@ -4,6 +4,8 @@ import org.jetbrains.annotations.Nullable;
 
 import net.enderturret.patched.IDataSource;
 import net.enderturret.patched.IFileAccess;
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.IPatchMetrics;
 import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.audit.PatchAudit;
 import net.enderturret.patched.patch.IncludePatch;
@@ -83,6 +85,38 @@ public sealed interface ConfigurablePatchContext extends PatchContext permits Mu
 	 */
 	public ConfigurablePatchContext audit(@Nullable PatchAudit value);
 
+	/**
+	 * Returns a {@code ConfigurablePatchContext} with {@link #parallelFindThreshold} set to the given value.
+	 * @param value The number of children an array or object must have before {@code find} patches test them in parallel, or {@code 0} to never do so.
+	 * @return A new {@code ConfigurablePatchContext} or {@code this}, depending on implementation.
+	 * @since 2.1.0
+	 */
+	public ConfigurablePatchContext parallelFindThreshold(int value);
+
+	/**
+	 * Returns a {@code ConfigurablePatchContext} with {@link #adaptiveTestOrder} set to the given value.
+	 * @param value Whether groups of tests should be evaluated in an adaptive order.
+	 * @return A new {@code ConfigurablePatchContext} or {@code this}, depending on implementation.
+	 * @since 2.1.0
+	 */
+	public ConfigurablePatchContext adaptiveTestOrder(boolean value);
+
+	/**
+	 * Returns a {@code ConfigurablePatchContext} with {@link #metrics} set to the given value.
+	 * @param value A listener to receive measurements about applied patches. May be {@code null}.
+	 * @return A new {@code ConfigurablePatchContext} or {@code this}, depending on implementation.
+	 * @since 2.1.0
+	 */
+	public ConfigurablePatchContext metrics(@Nullable IPatchMetrics value);
+
+	/**
+	 * Returns a {@code ConfigurablePatchContext} with {@link #mutationListener} set to the given value.
+	 * @param value A listener to receive modifications made to documents. May be {@code null}.
+	 * @return A new {@code ConfigurablePatchContext} or {@code this}, depending on implementation.
+	 * @since 2.1.0
+	 */
+	public ConfigurablePatchContext mutationListener(@Nullable IMutationListener value);
+
 	/**
 	 * Returns an {@code ImmutablePatchContext} based on this one.
 	 * If this {@code ConfigurablePatchContext} is already an {@code ImmutablePatchContext}, {@code this} is returned.
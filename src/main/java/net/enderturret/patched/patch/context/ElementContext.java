@@ -38,6 +38,26 @@ public interface ElementContext {
 	 */
 	public void setPlaceholder(String name, @Nullable JsonSelector value);
 
+	/**
+	 * Returns the {@link JsonSelector} associated with the placeholder in the specified {@linkplain PlaceholderSlots slot}, or {@code null} if one does not exist.
+	 * @param slot The slot of the placeholder.
+	 * @return The {@code JsonSelector}, or {@code null}.
+	 * @since 2.1.0
+	 */
+	public default @Nullable JsonSelector getPlaceholder(int slot) {
+		return getPlaceholder(PlaceholderSlots.name(slot));
+	}
+
+	/**
+	 * Associates the given {@code JsonSelector} with the placeholder in the specified {@linkplain PlaceholderSlots slot}.
+	 * @param slot The slot of the placeholder.
+	 * @param value The {@code JsonSelector} to associate with the placeholder.
+	 * @since 2.1.0
+	 */
+	public default void setPlaceholder(int slot, @Nullable JsonSelector value) {
+		setPlaceholder(PlaceholderSlots.name(slot), value);
+	}
+
 	/**
 	 * Returns the root document, for use with absolute paths.
 	 * @return The root document.
@@ -61,6 +81,26 @@ public interface ElementContext {
 	@Nullable
 	public JsonElement elem();
 
+	/**
+	 * Returns the context of the parent element, i.e. the context this one was created from using {@link #child(String, JsonElement)} or {@link #child(int, JsonElement)}.
+	 * @return The parent context, or {@code null} if this is a root context or the parent context is not known.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public default ElementContext parentContext() {
+		return null;
+	}
+
+	/**
+	 * Returns the session of the patch application this context is part of.
+	 * @return The session, or {@code null} if this context does not track one.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public default PatchSession session() {
+		return null;
+	}
+
 	/**
 	 * Creates a new {@link ElementContext} with this set as its parent and the given values as its name and element.
 	 * @param name The name of {@code elem}.
@@ -1,6 +1,5 @@
 package net.enderturret.patched.patch.context;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -26,16 +25,25 @@ public final class ElementContexts {
 
 		protected final PatchContext context;
 		protected final JsonDocument doc;
-		protected Map<String, JsonSelector> placeholders;
+		protected PlaceholderBindings placeholders;
+		@Nullable
+		protected final ElementContext parentContext;
+		protected final PatchSession session;
 
-		AbstractElementContext(PatchContext context, JsonDocument doc, @Nullable Map<String, JsonSelector> placeholders) {
+		AbstractElementContext(PatchContext context, JsonDocument doc, PlaceholderBindings placeholders, @Nullable ElementContext parentContext, @Nullable PatchSession session) {
 			this.context = Objects.requireNonNull(context, "context");
 			this.doc = doc;
 			this.placeholders = placeholders;
+			this.parentContext = parentContext;
+			this.session = session != null ? session : new PatchSession();
+		}
+
+		AbstractElementContext(PatchContext context, JsonDocument doc, @Nullable Map<String, JsonSelector> placeholders) {
+			this(context, doc, PlaceholderBindings.of(placeholders), null, null);
 		}
 
 		AbstractElementContext(ElementContext context) {
-			this(context.context(), context.doc(), ((AbstractElementContext) context).placeholders);
+			this(context.context(), context.doc(), ((AbstractElementContext) context).placeholders, null, context.session());
 		}
 
 		@Override
@@ -48,19 +56,37 @@ public final class ElementContexts {
 			return doc;
 		}
 
+		@Override
+		@Nullable
+		public ElementContext parentContext() {
+			return parentContext;
+		}
+
+		@Override
+		public PatchSession session() {
+			return session;
+		}
+
 		@Override
 		@Nullable
 		public JsonSelector getPlaceholder(String name) {
-			return placeholders != null ? placeholders.get(name) : null;
+			return placeholders.get(name);
 		}
 
 		@Override
 		public void setPlaceholder(String name, @Nullable JsonSelector value) {
-			if (placeholders == null)
-				placeholders = new HashMap<>(4);
+			placeholders = placeholders.with(name, value);
+		}
+
+		@Override
+		@Nullable
+		public JsonSelector getPlaceholder(int slot) {
+			return placeholders.get(slot);
+		}
 
-			if (value == null) placeholders.remove(name);
-			else placeholders.put(name, value);
+		@Override
+		public void setPlaceholder(int slot, @Nullable JsonSelector value) {
+			placeholders = placeholders.with(slot, value);
 		}
 	}
 
@@ -134,7 +160,7 @@ public final class ElementContexts {
 		 * @since 1.3.0
 		 */
 		public Document(ElementContext derived, JsonDocument doc) {
-			this(derived.context(), ((AbstractElementContext) derived).placeholders, doc);
+			super(derived.context(), doc, ((AbstractElementContext) derived).placeholders, null, derived.session());
 		}
 
 		@Override
@@ -178,14 +204,17 @@ public final class ElementContexts {
 
 		/**
 		 * Constructs a new object-parent context.
-		 * @param context The element context to inherit the patch context and placeholders from.
+		 * @param context The context of the parent element. The patch context, placeholders and session are inherited from it.
 		 * @param parent The parent object.
 		 * @param name The name of the current element.
 		 * @param elem The current element.
 		 * @since 2.0.0
 		 */
 		public Object(ElementContext context, JsonObject parent, String name, @Nullable JsonElement elem) {
-			this(context.context(), ((AbstractElementContext) context).doc, ((AbstractElementContext) context).placeholders, parent, name, elem);
+			super(context.context(), context.doc(), ((AbstractElementContext) context).placeholders, context, context.session());
+			this.parent = Objects.requireNonNull(parent, "parent");
+			this.name = Objects.requireNonNull(name, "name");
+			this.elem = elem;
 		}
 
 		/**
@@ -239,14 +268,17 @@ public final class ElementContexts {
 
 		/**
 		 * Constructs a new array-parent context.
-		 * @param context The element context to inherit the patch context and placeholders from.
+		 * @param context The context of the parent element. The patch context, placeholders and session are inherited from it.
 		 * @param parent The parent array.
 		 * @param index The index of the current element.
 		 * @param elem The current element.
 		 * @since 2.0.0
 		 */
 		public Array(ElementContext context, JsonArray parent, int index, @Nullable JsonElement elem) {
-			this(context.context(), ((AbstractElementContext) context).doc, ((AbstractElementContext) context).placeholders, parent, index, elem);
+			super(context.context(), context.doc(), ((AbstractElementContext) context).placeholders, context, context.session());
+			this.parent = Objects.requireNonNull(parent, "parent");
+			this.index = index;
+			this.elem = elem;
 		}
 
 		/**
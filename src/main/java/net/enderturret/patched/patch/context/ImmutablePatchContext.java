@@ -6,6 +6,8 @@ import org.jetbrains.annotations.Nullable;
 
 import net.enderturret.patched.IDataSource;
 import net.enderturret.patched.IFileAccess;
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.IPatchMetrics;
 import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.audit.PatchAudit;
 import net.enderturret.patched.patch.IncludePatch;
@@ -27,6 +29,10 @@ import net.enderturret.patched.patch.PastePatch;
  * @param fileAccess File access for {@linkplain IncludePatch include patches}. May be {@code null}.
  * @param dataSource A data source for {@linkplain PastePatch paste patches}. May be {@code null}.
  * @param audit An audit to record changes made by patches. May be {@code null}.
+ * @param parallelFindThreshold The number of children an array or object must have before {@code find} patches test them in parallel, or {@code 0} to never do so.
+ * @param adaptiveTestOrder Whether groups of tests should be evaluated in an adaptive order.
+ * @param metrics A listener to receive measurements about applied patches. May be {@code null}.
+ * @param mutationListener A listener to receive modifications made to documents. May be {@code null}.
  * @author EnderTurret
  * @since 2.0.0
  */
@@ -36,7 +42,11 @@ public record ImmutablePatchContext(
 		@Nullable ITestEvaluator testEvaluator,
 		@Nullable IFileAccess fileAccess,
 		@Nullable IDataSource dataSource,
-		@Nullable PatchAudit audit) implements ConfigurablePatchContext {
+		@Nullable PatchAudit audit,
+		int parallelFindThreshold,
+		boolean adaptiveTestOrder,
+		@Nullable IPatchMetrics metrics,
+		@Nullable IMutationListener mutationListener) implements ConfigurablePatchContext {
 
 	/**
 	 * <p>Constructs a new {@code ImmutablePatchContext} with the specified values.</p>
@@ -52,6 +62,10 @@ public record ImmutablePatchContext(
 	 * @param fileAccess File access for {@linkplain IncludePatch include patches}. May be {@code null}.
 	 * @param dataSource A data source for {@linkplain PastePatch paste patches}. May be {@code null}.
 	 * @param audit An audit to record changes made by patches. May be {@code null}.
+	 * @param parallelFindThreshold The number of children an array or object must have before {@code find} patches test them in parallel, or {@code 0} to never do so.
+	 * @param adaptiveTestOrder Whether groups of tests should be evaluated in an adaptive order.
+	 * @param metrics A listener to receive measurements about applied patches. May be {@code null}.
+	 * @param mutationListener A listener to receive modifications made to documents. May be {@code null}.
 	 * @since 2.0.0
 	 */
 	@Internal
@@ -64,7 +78,7 @@ public record ImmutablePatchContext(
 	 * @since 2.0.0
 	 */
 	public static ImmutablePatchContext newContext() {
-		return new ImmutablePatchContext(false, false, false, true, null, null, null, null);
+		return new ImmutablePatchContext(false, false, false, true, null, null, null, null, 0, false, null, null);
 	}
 
 	/**
@@ -77,47 +91,67 @@ public record ImmutablePatchContext(
 		return from instanceof ImmutablePatchContext i ? i : new ImmutablePatchContext(
 				from.testExtensions(), from.patchedExtensions(), from.throwOnFailedTest(),
 				from.throwOnOobAdd(), from.testEvaluator(), from.fileAccess(), from.dataSource(),
-				from.audit()
+				from.audit(), from.parallelFindThreshold(), from.adaptiveTestOrder(), from.metrics(), from.mutationListener()
 				);
 	}
 
 	@Override
 	public ImmutablePatchContext testExtensions(boolean value) {
-		return new ImmutablePatchContext(value, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit);
+		return new ImmutablePatchContext(value, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext patchedExtensions(boolean value) {
-		return new ImmutablePatchContext(testExtensions, value, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit);
+		return new ImmutablePatchContext(testExtensions, value, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext throwOnFailedTest(boolean value) {
-		return new ImmutablePatchContext(testExtensions, patchedExtensions, value, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit);
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, value, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext throwOnOobAdd(boolean value) {
-		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, value, testEvaluator, fileAccess, dataSource, audit);
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, value, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext testEvaluator(@Nullable ITestEvaluator value) {
-		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, value, fileAccess, dataSource, audit);
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, value, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext fileAccess(@Nullable IFileAccess value) {
-		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, value, dataSource, audit);
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, value, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext dataSource(@Nullable IDataSource value) {
-		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, value, audit);
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, value, audit, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
 	}
 
 	@Override
 	public ImmutablePatchContext audit(@Nullable PatchAudit value) {
-		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, value);
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, value, parallelFindThreshold, adaptiveTestOrder, metrics, mutationListener);
+	}
+
+	@Override
+	public ImmutablePatchContext parallelFindThreshold(int value) {
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, value, adaptiveTestOrder, metrics, mutationListener);
+	}
+
+	@Override
+	public ImmutablePatchContext adaptiveTestOrder(boolean value) {
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, value, metrics, mutationListener);
+	}
+
+	@Override
+	public ImmutablePatchContext metrics(@Nullable IPatchMetrics value) {
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, value, mutationListener);
+	}
+
+	@Override
+	public ImmutablePatchContext mutationListener(@Nullable IMutationListener value) {
+		return new ImmutablePatchContext(testExtensions, patchedExtensions, throwOnFailedTest, throwOnOobAdd, testEvaluator, fileAccess, dataSource, audit, parallelFindThreshold, adaptiveTestOrder, metrics, value);
 	}
 }
\ No newline at end of file
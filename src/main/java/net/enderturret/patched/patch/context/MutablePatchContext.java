@@ -4,6 +4,8 @@ import org.jetbrains.annotations.Nullable;
 
 import net.enderturret.patched.IDataSource;
 import net.enderturret.patched.IFileAccess;
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.IPatchMetrics;
 import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.audit.PatchAudit;
 
@@ -23,6 +25,10 @@ public final class MutablePatchContext implements ConfigurablePatchContext {
 	private @Nullable IFileAccess fileAccess;
 	private @Nullable IDataSource dataSource;
 	private @Nullable PatchAudit audit;
+	private int parallelFindThreshold;
+	private boolean adaptiveTestOrder;
+	private @Nullable IPatchMetrics metrics;
+	private @Nullable IMutationListener mutationListener;
 
 	/**
 	 * Constructs a new, empty {@code MutablePatchContext}.
@@ -44,6 +50,10 @@ public final class MutablePatchContext implements ConfigurablePatchContext {
 		fileAccess = from.fileAccess();
 		dataSource = from.dataSource();
 		audit = from.audit();
+		parallelFindThreshold = from.parallelFindThreshold();
+		adaptiveTestOrder = from.adaptiveTestOrder();
+		metrics = from.metrics();
+		mutationListener = from.mutationListener();
 	}
 
 	@Override
@@ -90,6 +100,28 @@ public final class MutablePatchContext implements ConfigurablePatchContext {
 		return audit;
 	}
 
+	@Override
+	public int parallelFindThreshold() {
+		return parallelFindThreshold;
+	}
+
+	@Override
+	public boolean adaptiveTestOrder() {
+		return adaptiveTestOrder;
+	}
+
+	@Override
+	@Nullable
+	public IPatchMetrics metrics() {
+		return metrics;
+	}
+
+	@Override
+	@Nullable
+	public IMutationListener mutationListener() {
+		return mutationListener;
+	}
+
 	@Override
 	public MutablePatchContext testExtensions(boolean value) {
 		testExtensions = value;
@@ -137,4 +169,28 @@ public final class MutablePatchContext implements ConfigurablePatchContext {
 		audit = value;
 		return this;
 	}
+
+	@Override
+	public MutablePatchContext parallelFindThreshold(int value) {
+		parallelFindThreshold = value;
+		return this;
+	}
+
+	@Override
+	public MutablePatchContext adaptiveTestOrder(boolean value) {
+		adaptiveTestOrder = value;
+		return this;
+	}
+
+	@Override
+	public MutablePatchContext metrics(@Nullable IPatchMetrics value) {
+		metrics = value;
+		return this;
+	}
+
+	@Override
+	public MutablePatchContext mutationListener(@Nullable IMutationListener value) {
+		mutationListener = value;
+		return this;
+	}
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import org.jetbrains.annotations.Nullable;
 
 import net.enderturret.patched.IDataSource;
 import net.enderturret.patched.IFileAccess;
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.IPatchMetrics;
 import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.audit.PatchAudit;
 import net.enderturret.patched.patch.IncludePatch;
@@ -76,4 +78,45 @@ public sealed interface PatchContext permits ConfigurablePatchContext {
 	 * @since 2.0.0
 	 */
 	public @Nullable PatchAudit audit();
+
+	/**
+	 * <p>Returns the number of children an array or object must have before {@code find} patches test them in parallel.</p>
+	 * <p>
+	 * Testing in parallel only happens when the tests of a {@code find} patch only look inside each child,
+	 * and any custom tests are {@linkplain ITestEvaluator#isSideEffectFree(String) side-effect-free}.
+	 * It never happens while {@linkplain #metrics() metrics} are installed.
+	 * Matching children are still patched one at a time, in order.
+	 * </p>
+	 * @return The threshold, or {@code 0} if tests are never run in parallel.
+	 * @since 2.1.0
+	 */
+	public int parallelFindThreshold();
+
+	/**
+	 * <p>Returns whether groups of tests, such as those of a {@code find} patch, should be evaluated in an adaptive order.</p>
+	 * <p>
+	 * In this mode, each group keeps statistics about how long each of its tests takes and how often it fails,
+	 * and evaluates the tests in the order expected to be cheapest. Tests are only reordered when they can't have side-effects,
+	 * and never when {@link #throwOnFailedTest()} is enabled.
+	 * </p>
+	 * @return {@code true} if tests may be reordered.
+	 * @since 2.1.0
+	 */
+	public boolean adaptiveTestOrder();
+
+	/**
+	 * <p>Returns a listener that receives measurements about every patch as it is applied, such as how long it took.</p>
+	 * <p>Nothing is measured if this is {@code null}.</p>
+	 * @return The metrics listener. May be {@code null}.
+	 * @since 2.1.0
+	 */
+	public @Nullable IPatchMetrics metrics();
+
+	/**
+	 * <p>Returns a listener that is told about every modification made to documents while patching.</p>
+	 * <p>Nothing is reported if this is {@code null}.</p>
+	 * @return The mutation listener. May be {@code null}.
+	 * @since 2.1.0
+	 */
+	public @Nullable IMutationListener mutationListener();
 }
\ No newline at end of file
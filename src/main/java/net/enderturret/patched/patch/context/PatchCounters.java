@@ -0,0 +1,112 @@
+package net.enderturret.patched.patch.context;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patched.IPatchMetrics;
+
+/**
+ * <p>Counts work done during an application of a patch, for {@linkplain IPatchMetrics metrics}.</p>
+ * <p>
+ * Counters belong to a {@link PatchSession}, and are only updated while a metrics listener is installed.
+ * Events are computed from the difference between the counters before and after each patch.
+ * </p>
+ * <p>Counters are not thread-safe.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+@Internal
+public final class PatchCounters {
+
+	private long traversed;
+	private long copied;
+	private int depth;
+	@Nullable
+	private String source;
+
+	/**
+	 * @return The number of path segments traversed so far.
+	 * @since 2.1.0
+	 */
+	public long traversed() {
+		return traversed;
+	}
+
+	/**
+	 * Counts traversed path segments.
+	 * @param count The number of segments.
+	 * @since 2.1.0
+	 */
+	public void countTraversed(int count) {
+		traversed += count;
+	}
+
+	/**
+	 * @return The number of elements deep-copied so far.
+	 * @since 2.1.0
+	 */
+	public long copied() {
+		return copied;
+	}
+
+	/**
+	 * Counts a deep-copied element.
+	 * @since 2.1.0
+	 */
+	public void countCopied() {
+		copied++;
+	}
+
+	/**
+	 * @return The nesting depth of the patch currently being applied, within its source.
+	 * @since 2.1.0
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * @param value The nesting depth of the patch about to be applied, within its source.
+	 * @since 2.1.0
+	 */
+	public void depth(int value) {
+		depth = value;
+	}
+
+	/**
+	 * @return The path of the included patch currently being applied, or {@code null} if none is.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public String source() {
+		return source;
+	}
+
+	/**
+	 * @param value The path of the included patch about to be applied, or {@code null} to go back to the patch being applied.
+	 * @since 2.1.0
+	 */
+	public void source(@Nullable String value) {
+		source = value;
+	}
+
+	/**
+	 * Continues counting from another session's counters, as when patching children in a session of their own.
+	 * @param from The counters to continue from.
+	 * @since 2.1.0
+	 */
+	public void inherit(PatchCounters from) {
+		depth = from.depth;
+		source = from.source;
+	}
+
+	/**
+	 * Adds the counts from another session's counters to these.
+	 * @param other The counters to add.
+	 * @since 2.1.0
+	 */
+	public void merge(PatchCounters other) {
+		traversed += other.traversed;
+		copied += other.copied;
+	}
+}
@@ -0,0 +1,194 @@
+package net.enderturret.patched.patch.context;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.gson.JsonElement;
+
+import net.enderturret.patched.patch.PatchUtil;
+
+/**
+ * <p>Holds state shared by everything that happens during a single application of a patch, such as caches built by patches.</p>
+ * <p>
+ * A new session is started whenever a root {@link ElementContext} is constructed, and is shared by every context derived from it.
+ * Patches can {@linkplain #watch(JsonElement, MutationWatcher) watch} containers to learn when something inside them is modified,
+ * which is what keeps cached information about the document correct.
+ * </p>
+ * <p>Sessions are not thread-safe.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+@Internal
+public final class PatchSession {
+
+	@Nullable
+	private Map<Object, Object> data;
+	@Nullable
+	private Map<JsonElement, List<MutationWatcher>> watchers;
+	@Nullable
+	private PatchCounters counters;
+	@Nullable
+	private UndoLog undoLog;
+	private int untracked;
+
+	/**
+	 * Returns the value associated with the given key in this session.
+	 * @param key The key.
+	 * @return The value, or {@code null} if there is none.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public Object get(Object key) {
+		return data != null ? data.get(key) : null;
+	}
+
+	/**
+	 * Associates the given value with the given key in this session.
+	 * @param key The key.
+	 * @param value The value, or {@code null} to remove the existing value.
+	 * @since 2.1.0
+	 */
+	public void put(Object key, @Nullable Object value) {
+		if (value == null) {
+			if (data != null) data.remove(key);
+		} else {
+			if (data == null) data = new HashMap<>();
+			data.put(key, value);
+		}
+	}
+
+	/**
+	 * @return The counters used for {@linkplain net.enderturret.patched.IPatchMetrics metrics} in this session.
+	 * @since 2.1.0
+	 */
+	public PatchCounters counters() {
+		if (counters == null) counters = new PatchCounters();
+		return counters;
+	}
+
+	/**
+	 * @return The log modifications are recorded into so they can be rolled back, or {@code null} if they aren't being recorded.
+	 * @since 2.1.0
+	 */
+	@Nullable
+	public UndoLog undoLog() {
+		return undoLog;
+	}
+
+	/**
+	 * @param value The log to record modifications into from now on, or {@code null} to stop recording them.
+	 * @since 2.1.0
+	 */
+	public void undoLog(@Nullable UndoLog value) {
+		undoLog = value;
+	}
+
+	/**
+	 * Starts watching the given container for modifications.
+	 * The watcher is notified about every modification to the container itself or anything inside it, until it asks to stop.
+	 * @param container The container to watch. Containers are compared by identity.
+	 * @param watcher The watcher to notify.
+	 * @since 2.1.0
+	 */
+	public void watch(JsonElement container, MutationWatcher watcher) {
+		if (watchers == null) watchers = new IdentityHashMap<>();
+		watchers.computeIfAbsent(container, k -> new ArrayList<>(2)).add(watcher);
+	}
+
+	/**
+	 * <p>Notifies the watchers of all containers holding the element represented by the given context that the element is about to be modified.</p>
+	 * <p>This is called by {@link PatchUtil#applyAdd(ElementContext, JsonElement, boolean)} and {@link PatchUtil#applyRemove(ElementContext)}.</p>
+	 * @param target The context of the element being added, replaced or removed.
+	 * @since 2.1.0
+	 */
+	public void mutated(ElementContext target) {
+		if (watchers == null || watchers.isEmpty()) return;
+
+		final ArrayDeque<Object> path = new ArrayDeque<>();
+
+		for (ElementContext ctx = target;; ctx = ctx.parentContext()) {
+			final JsonElement container;
+
+			if (ctx instanceof ElementContexts.Object obj) {
+				container = obj.parent();
+				path.addFirst(obj.name());
+			} else if (ctx instanceof ElementContexts.Array arr) {
+				container = arr.parent();
+				path.addFirst(arr.index());
+			} else {
+				// Either we've reached the root of the document (which is fine, unless the root itself is being replaced),
+				// or we've lost track of where we are and can't tell which containers are affected.
+				if (!(ctx instanceof ElementContexts.Document) || ctx == target)
+					invalidateAll(null);
+				return;
+			}
+
+			final List<MutationWatcher> list = watchers.get(container);
+			if (list != null) {
+				final Object[] relative = path.toArray();
+				list.removeIf(watcher -> !watcher.mutated(relative));
+				if (list.isEmpty()) watchers.remove(container);
+			}
+		}
+	}
+
+	/**
+	 * <p>Starts a part of this session in which the document may be modified without being {@linkplain #mutated(ElementContext) reported}, such as by a patch not built into Patched.</p>
+	 * <p>Until the matching {@link #endUntracked()}, cached information about the document must not be used, as there's no telling whether it's still correct.</p>
+	 * @since 2.1.0
+	 */
+	public void beginUntracked() {
+		untracked++;
+	}
+
+	/**
+	 * Ends a part of this session started by {@link #beginUntracked()}.
+	 * Since anything may have been modified, every watcher is notified about a modification at an unknown location.
+	 * @since 2.1.0
+	 */
+	public void endUntracked() {
+		untracked--;
+		if (watchers != null) invalidateAll(null);
+	}
+
+	/**
+	 * @return {@code true} if every modification to the document is being {@linkplain #mutated(ElementContext) reported}, meaning that cached information about it can be used.
+	 * @see #beginUntracked()
+	 * @since 2.1.0
+	 */
+	public boolean isTracked() {
+		return untracked == 0;
+	}
+
+	private void invalidateAll(@Nullable Object[] path) {
+		watchers.values().removeIf(list -> {
+			list.removeIf(watcher -> !watcher.mutated(path));
+			return list.isEmpty();
+		});
+	}
+
+	/**
+	 * Receives notifications about modifications to a watched container.
+	 * @see PatchSession#watch(JsonElement, MutationWatcher)
+	 * @since 2.1.0
+	 */
+	@FunctionalInterface
+	public static interface MutationWatcher {
+
+		/**
+		 * Called before something inside the watched container is modified.
+		 * @param path The path from the watched container to the modified element, as a series of names ({@code String}s) and indices ({@code Integer}s).
+		 * The first entry is always a child of the container. May be {@code null} if the location is unknown, in which case the watcher should assume the worst.
+		 * @return {@code true} to keep watching the container, or {@code false} to stop.
+		 * @since 2.1.0
+		 */
+		public boolean mutated(@Nullable Object[] path);
+	}
+}
@@ -0,0 +1,135 @@
+package net.enderturret.patched.patch.context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.enderturret.patched.JsonSelector;
+
+/**
+ * <p>The placeholders bound in an {@link ElementContext}.</p>
+ * <p>
+ * Placeholders with {@linkplain PlaceholderSlots slots} are kept in a small array sorted by slot, which is only as long as the number of bound placeholders.
+ * The rest are kept in a map by name.
+ * </p>
+ * <p>Bindings are immutable: binding a placeholder returns new bindings, so that contexts derived beforehand are unaffected.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+final class PlaceholderBindings {
+
+	static final PlaceholderBindings EMPTY = new PlaceholderBindings(new int[0], new JsonSelector[0], Map.of());
+
+	/**
+	 * The slots of the bound placeholders that have slots, in ascending order.
+	 */
+	private final int[] slots;
+
+	/**
+	 * The selectors bound to each of {@link #slots}.
+	 */
+	private final JsonSelector[] values;
+
+	/**
+	 * The selectors bound to placeholders without slots, by name.
+	 */
+	private final Map<String, JsonSelector> unslotted;
+
+	private PlaceholderBindings(int[] slots, JsonSelector[] values, Map<String, JsonSelector> unslotted) {
+		this.slots = slots;
+		this.values = values;
+		this.unslotted = unslotted;
+	}
+
+	/**
+	 * @param placeholders The placeholders to bind. May be {@code null}.
+	 * @return The bindings.
+	 */
+	static PlaceholderBindings of(@Nullable Map<String, JsonSelector> placeholders) {
+		PlaceholderBindings ret = EMPTY;
+
+		if (placeholders != null)
+			for (Map.Entry<String, JsonSelector> entry : placeholders.entrySet())
+				ret = ret.with(entry.getKey(), entry.getValue());
+
+		return ret;
+	}
+
+	/**
+	 * @param slot The slot of the placeholder.
+	 * @return The selector bound to the placeholder, or {@code null} if there is none.
+	 */
+	@Nullable
+	JsonSelector get(int slot) {
+		final int i = Arrays.binarySearch(slots, slot);
+		return i >= 0 ? values[i] : null;
+	}
+
+	/**
+	 * @param name The name of the placeholder.
+	 * @return The selector bound to the placeholder, or {@code null} if there is none.
+	 */
+	@Nullable
+	JsonSelector get(String name) {
+		final int slot = PlaceholderSlots.slot(name);
+		return slot != PlaceholderSlots.NONE ? get(slot) : unslotted.get(name);
+	}
+
+	/**
+	 * @param slot The slot of the placeholder.
+	 * @param value The selector to bind the placeholder to, or {@code null} to unbind it.
+	 * @return Bindings with the placeholder changed.
+	 */
+	PlaceholderBindings with(int slot, @Nullable JsonSelector value) {
+		final int i = Arrays.binarySearch(slots, slot);
+
+		if (i >= 0) {
+			if (value == null) {
+				final int[] newSlots = new int[slots.length - 1];
+				final JsonSelector[] newValues = new JsonSelector[values.length - 1];
+				System.arraycopy(slots, 0, newSlots, 0, i);
+				System.arraycopy(slots, i + 1, newSlots, i, slots.length - i - 1);
+				System.arraycopy(values, 0, newValues, 0, i);
+				System.arraycopy(values, i + 1, newValues, i, values.length - i - 1);
+				return new PlaceholderBindings(newSlots, newValues, unslotted);
+			}
+
+			final JsonSelector[] newValues = values.clone();
+			newValues[i] = value;
+			return new PlaceholderBindings(slots, newValues, unslotted);
+		}
+
+		if (value == null) return this;
+
+		final int at = -i - 1;
+		final int[] newSlots = new int[slots.length + 1];
+		final JsonSelector[] newValues = new JsonSelector[values.length + 1];
+		System.arraycopy(slots, 0, newSlots, 0, at);
+		System.arraycopy(slots, at, newSlots, at + 1, slots.length - at);
+		System.arraycopy(values, 0, newValues, 0, at);
+		System.arraycopy(values, at, newValues, at + 1, values.length - at);
+		newSlots[at] = slot;
+		newValues[at] = value;
+		return new PlaceholderBindings(newSlots, newValues, unslotted);
+	}
+
+	/**
+	 * @param name The name of the placeholder.
+	 * @param value The selector to bind the placeholder to, or {@code null} to unbind it.
+	 * @return Bindings with the placeholder changed.
+	 */
+	PlaceholderBindings with(String name, @Nullable JsonSelector value) {
+		final int slot = PlaceholderSlots.slot(name);
+		if (slot != PlaceholderSlots.NONE) return with(slot, value);
+
+		if (value == null && !unslotted.containsKey(name)) return this;
+
+		final Map<String, JsonSelector> map = new HashMap<>(unslotted);
+		if (value != null) map.put(name, value);
+		else map.remove(name);
+
+		return new PlaceholderBindings(slots, values, map);
+	}
+}
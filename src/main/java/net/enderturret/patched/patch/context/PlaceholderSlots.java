@@ -0,0 +1,80 @@
+package net.enderturret.patched.patch.context;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import net.enderturret.patched.JsonSelector;
+
+/**
+ * <p>Assigns each placeholder name a numeric slot, so that placeholder bindings can be looked up by number instead of by name. See {@link PlaceholderBindings}.</p>
+ * <p>
+ * Names are resolved to slots once, when the {@linkplain JsonSelector.PlaceholderSelector selectors} and {@code find} patches using them are created.
+ * Slots are global and never reused, so the same name always has the same slot.
+ * Only the first {@value #LIMIT} names get slots, so that patches with ever-changing placeholder names can't grow the registry without bound;
+ * placeholders with any other name don't have a slot, and are bound by name instead (which is slower).
+ * </p>
+ * <p>
+ * Bindings are copy-on-write: {@linkplain ElementContext#setPlaceholder(int, JsonSelector) binding} a placeholder in a context
+ * only affects that context and the contexts derived from it afterwards. This way, a nested {@code find} can't clobber the bindings of an outer one.
+ * </p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+@Internal
+public final class PlaceholderSlots {
+
+	/**
+	 * The maximum number of placeholder names that get slots.
+	 * @since 2.1.0
+	 */
+	public static final int LIMIT = 1024;
+
+	/**
+	 * The "slot" of placeholders that don't have one.
+	 * @since 2.1.0
+	 */
+	public static final int NONE = -1;
+
+	private static final Map<String, Integer> SLOTS = new ConcurrentHashMap<>();
+	private static final AtomicReferenceArray<String> NAMES = new AtomicReferenceArray<>(LIMIT);
+	private static final AtomicInteger NEXT = new AtomicInteger();
+
+	private PlaceholderSlots() {}
+
+	/**
+	 * Returns the slot of the given placeholder, assigning it one if it doesn't have one yet.
+	 * @param name The name of the placeholder.
+	 * @return The slot, or {@link #NONE} if every slot has been taken.
+	 * @since 2.1.0
+	 */
+	public static int slot(String name) {
+		final Integer ret = SLOTS.get(name);
+		if (ret != null) return ret;
+		if (NEXT.get() >= LIMIT) return NONE;
+
+		final Integer assigned = SLOTS.computeIfAbsent(name, k -> {
+			final int slot = NEXT.getAndIncrement();
+			if (slot >= LIMIT) return null; // Another thread took the last slot.
+			NAMES.set(slot, k);
+			return slot;
+		});
+
+		return assigned != null ? assigned : NONE;
+	}
+
+	/**
+	 * @param slot The slot of a placeholder.
+	 * @return The name of the placeholder.
+	 * @throws IndexOutOfBoundsException If the slot doesn't belong to a placeholder.
+	 * @since 2.1.0
+	 */
+	public static String name(int slot) {
+		final String ret = slot >= 0 && slot < LIMIT ? NAMES.get(slot) : null;
+		if (ret == null) throw new IndexOutOfBoundsException("No placeholder has slot " + slot + "!");
+		return ret;
+	}
+}
@@ -0,0 +1,155 @@
+package net.enderturret.patched.patch.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.jetbrains.annotations.ApiStatus.Internal;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import net.enderturret.patched.JsonDocument;
+import net.enderturret.patched.patch.PatchUtil;
+
+/**
+ * <p>Records how to undo the modifications made to a document, so that they can be {@linkplain #rollback() rolled back} if patching fails.</p>
+ * <p>
+ * Modifications are recorded by {@link PatchUtil#applyAdd(ElementContext, JsonElement, boolean)} and {@link PatchUtil#applyRemove(ElementContext)}
+ * while the log is installed in the {@link PatchSession}. Each entry only holds the modified container and the replaced or removed element,
+ * so the cost of a transaction is mostly proportional to the number of modifications, not to the size of the document.
+ * </p>
+ * <p>
+ * The exception is removing members from objects: objects can only be appended to, so putting a removed member back where it was
+ * means appending every member after it again. The first time a member is removed from an object, the order of all of its members is copied,
+ * and rolling back reorders the whole object. Each object that members are removed from therefore costs time proportional to its size,
+ * once when it is first removed from and once more when it is rolled back.
+ * </p>
+ * <p>Undo logs are not thread-safe.</p>
+ * @author EnderTurret
+ * @since 2.1.0
+ */
+@Internal
+public final class UndoLog {
+
+	private final List<Runnable> entries = new ArrayList<>();
+
+	/**
+	 * The objects whose members' order is restored once everything recorded for them has been undone.
+	 */
+	private final Set<JsonObject> ordered = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Records that the given member is about to be added to or replaced in the given object.
+	 * @param object The object.
+	 * @param name The name of the member.
+	 * @since 2.1.0
+	 */
+	public void put(JsonObject object, String name) {
+		final JsonElement old = object.get(name);
+
+		// Replacing a member keeps its position, so putting the old value back restores it.
+		if (old != null)
+			entries.add(() -> object.add(name, old));
+		else
+			entries.add(() -> object.remove(name));
+	}
+
+	/**
+	 * Records that the given member is about to be removed from the given object.
+	 * @param object The object.
+	 * @param name The name of the member.
+	 * @since 2.1.0
+	 */
+	public void remove(JsonObject object, String name) {
+		final JsonElement old = object.get(name);
+		if (old == null) return;
+
+		// Putting members back appends them, so the order of the object is remembered the first time a member is removed from it,
+		// and restored after undoing everything since then. This keeps the cost of each removal constant.
+		if (ordered.add(object)) {
+			final List<String> order = new ArrayList<>(object.keySet());
+			entries.add(() -> reorder(object, order));
+		}
+
+		entries.add(() -> object.add(name, old));
+	}
+
+	/**
+	 * Records that an element is about to be inserted into the given array.
+	 * @param array The array.
+	 * @param index The index the element will be inserted at.
+	 * @since 2.1.0
+	 */
+	public void insert(JsonArray array, int index) {
+		// Out-of-bounds insertions end up at the end.
+		final int actual = Math.min(index, array.size());
+		entries.add(() -> array.remove(actual));
+	}
+
+	/**
+	 * Records that the element at the given index of the given array is about to be replaced.
+	 * @param array The array.
+	 * @param index The index of the element.
+	 * @since 2.1.0
+	 */
+	public void set(JsonArray array, int index) {
+		final JsonElement old = array.get(index);
+		entries.add(() -> array.set(index, old));
+	}
+
+	/**
+	 * Records that the element at the given index of the given array is about to be removed.
+	 * @param array The array.
+	 * @param index The index of the element.
+	 * @since 2.1.0
+	 */
+	public void remove(JsonArray array, int index) {
+		final JsonElement old = array.get(index);
+		entries.add(() -> PatchUtil.add(array, index, old));
+	}
+
+	/**
+	 * Records that the root of the given document is about to be replaced.
+	 * @param doc The document.
+	 * @since 2.1.0
+	 */
+	public void setRoot(JsonDocument doc) {
+		final JsonElement old = doc.getRoot();
+		entries.add(() -> doc.setRoot(old));
+	}
+
+	/**
+	 * @return The number of entries recorded and not yet rolled back. This is roughly the number of modifications.
+	 * @since 2.1.0
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Undoes every modification recorded so far, newest first, and clears the log.
+	 * @since 2.1.0
+	 */
+	public void rollback() {
+		for (int i = entries.size() - 1; i >= 0; i--)
+			entries.get(i).run();
+		entries.clear();
+		ordered.clear();
+	}
+
+	private static void reorder(JsonObject object, List<String> order) {
+		if (new ArrayList<>(object.keySet()).equals(order)) return;
+
+		// Objects can only be appended to, so every member has to be appended again in order.
+		final List<JsonElement> values = new ArrayList<>(order.size());
+		for (String name : order)
+			values.add(object.remove(name));
+
+		for (int i = 0; i < order.size(); i++)
+			object.add(order.get(i), values.get(i));
+	}
+}
@@ -2,32 +2,73 @@ package tests;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.Test;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import net.enderturret.patched.ChangeSet;
+import net.enderturret.patched.DryRun;
+import net.enderturret.patched.IMutationListener;
+import net.enderturret.patched.ITestEvaluator;
 import net.enderturret.patched.JsonDocument;
 import net.enderturret.patched.JsonSelector;
 import net.enderturret.patched.JsonSelector.CompoundSelector;
+import net.enderturret.patched.LazyDocument;
 import net.enderturret.patched.Patches;
 import net.enderturret.patched.audit.PatchAudit;
+import net.enderturret.patched.diff.JsonDiff;
 import net.enderturret.patched.exception.PatchingException;
 import net.enderturret.patched.exception.TraversalException;
+import net.enderturret.patched.metrics.PatchMetrics;
+import net.enderturret.patched.metrics.PatchProfiler;
+import net.enderturret.patched.patch.FindPatch;
 import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.JsonPatchAdapter;
+import net.enderturret.patched.patch.PatchArchive;
+import net.enderturret.patched.patch.PatchInterner;
 import net.enderturret.patched.patch.PatchUtil;
+import net.enderturret.patched.patch.StreamingPatch;
 import net.enderturret.patched.patch.TestPatch;
+import net.enderturret.patched.patch.TestStatistics;
 import net.enderturret.patched.patch.context.ElementContext;
 import net.enderturret.patched.patch.context.ElementContexts;
 import net.enderturret.patched.patch.context.ImmutablePatchContext;
 import net.enderturret.patched.patch.context.MutablePatchContext;
+import net.enderturret.patched.patch.context.PatchContext;
 
 import tests.util.TestUtil;
 
@@ -83,6 +124,883 @@ final class MiscTests {
 		assertThrows(IllegalArgumentException.class, () -> new JsonPatch.Serializer(null, true, false, false), "Should throw for enforced null operation");
 	}
 
+	@Test
+	void testPatchAdapter() {
+		new JsonPatchAdapter();
+
+		assertThrows(IllegalArgumentException.class, () -> new JsonPatchAdapter(null, true, false, false), "Should throw for enforced null operation");
+
+		final Gson tree = new GsonBuilder().registerTypeHierarchyAdapter(JsonPatch.class, new JsonPatch.Serializer()).serializeNulls().create();
+		final Gson streaming = Patches.patchGson(true, true).create();
+
+		// The operation comes after the fields that depend on it, so these have to be buffered.
+		final String outOfOrder = "{\"then\":{\"op\":\"remove\",\"path\":\"\"},\"test\":[{\"path\":\"/a\",\"value\":null}],\"path\":\"/find\",\"op\":\"find\"}";
+		assertEquals(tree.toJson(Patches.readPatch(tree, outOfOrder)), streaming.toJson(Patches.readPatch(streaming, outOfOrder)));
+
+		// Fields irrelevant to the operation are ignored, even if they would be invalid for a find patch.
+		final String irrelevant = "{\"op\":\"add\",\"path\":\"/a\",\"value\":1,\"then\":3,\"test\":[true]}";
+		assertEquals(tree.toJson(Patches.readPatch(tree, irrelevant)), streaming.toJson(Patches.readPatch(streaming, irrelevant)));
+
+		final String nested = TestUtil.read("/tests/built_patch.json");
+		assertEquals(tree.toJson(Patches.readPatch(tree, nested)), streaming.toJson(Patches.readPatch(streaming, nested)));
+
+		// Patches that only know how to write themselves as trees are written the same way by both.
+		final JsonPatch custom = PatchUtil.compound(new TreeOnlyPatch());
+		assertEquals("[{\"op\":\"custom\",\"written\":\"as a tree\"}]", streaming.toJson(custom));
+		assertEquals(tree.toJson(custom), streaming.toJson(custom));
+	}
+
+	@Test
+	void testApplyPatch() {
+		final Gson gson = Patches.patchGson(true, true).create();
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext();
+
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString("{\"a\":1}"));
+		Patches.applyPatch(gson, new StringReader("[{\"op\":\"add\",\"path\":\"/b\",\"value\":2},{\"op\":\"test\",\"path\":\"/a\",\"value\":3},{\"op\":\"unknown\"}]"), doc, context);
+		assertEquals(JsonParser.parseString("{\"a\":1,\"b\":2}"), doc.getRoot(), "Patches after a failed test should be skipped");
+
+		Patches.applyPatch(gson, new StringReader("{\"op\":\"remove\",\"path\":\"/b\"}"), doc, context);
+		assertEquals(JsonParser.parseString("{\"a\":1}"), doc.getRoot());
+
+		assertThrows(PatchingException.class, () -> Patches.applyPatch(gson, new StringReader("[{\"op\":\"unknown\"}]"), doc, context));
+		assertThrows(JsonSyntaxException.class, () -> Patches.applyPatch(gson, new StringReader("[{\"op\":\"remove\",\"path\":\"/a\"}] {}"), doc, context));
+	}
+
+	@Test
+	void testPatchArchive() throws IOException {
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, TestUtil.read("/tests/built_patch.json"));
+		final JsonPatch include = PatchUtil.add("/a", JsonParser.parseString("[1, 1.0, -5, 1e400, \"x\", null, {\"b\": false}]"));
+
+		final Map<String, JsonPatch> patches = new LinkedHashMap<>();
+		patches.put("built", patch);
+		patches.put("include", include);
+
+		final Path file = Files.createTempFile("patched", ".bin");
+		try {
+			try (OutputStream out = Files.newOutputStream(file)) {
+				PatchArchive.write(patches, out);
+			}
+
+			final PatchArchive archive = PatchArchive.open(file);
+
+			assertEquals(List.of("built", "include"), List.copyOf(archive.names()));
+			assertNull(archive.get("missing"));
+			assertSame(archive.get("built"), archive.get("built"), "Decoded patches should be cached");
+
+			assertEquals(PatchingTests.GSON.toJson(patch), PatchingTests.GSON.toJson(archive.get("built")));
+			assertEquals(PatchingTests.GSON.toJson(include), PatchingTests.GSON.toJson(archive.readIncludedPatch("include")));
+
+			final byte[] bytes = Files.readAllBytes(file);
+			bytes[bytes.length - 1] ^= 1;
+			assertThrows(IOException.class, () -> PatchArchive.read(ByteBuffer.wrap(bytes)), "Should detect corruption");
+			assertThrows(IOException.class, () -> PatchArchive.read(ByteBuffer.wrap(new byte[] { 'n', 'o', 'p', 'e' })));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	void testPatchInterner() {
+		final PatchInterner interner = new PatchInterner();
+		final Gson gson = Patches.patchGson(true, true, interner).create();
+		final Gson tree = new GsonBuilder().registerTypeHierarchyAdapter(JsonPatch.class, new JsonPatch.Serializer(null, false, true, true, interner)).serializeNulls().create();
+
+		final String src = TestUtil.read("/tests/built_patch.json");
+		final JsonPatch patch = Patches.readPatch(gson, src);
+		assertEquals(PatchingTests.GSON.toJson(Patches.readPatch(PatchingTests.GSON, src)), PatchingTests.GSON.toJson(patch));
+		assertEquals(PatchingTests.GSON.toJson(patch), PatchingTests.GSON.toJson(Patches.readPatch(tree, src)));
+
+		assertSame(interner.parse("/a/0/{b}"), interner.parse("/a/0/{b}"));
+		assertSame(interner.parse("/a/0"), interner.intern(JsonSelector.of("/a/0")));
+
+		final JsonArray values = JsonParser.parseString("[{\"a\":[1]},{\"a\":[1]},1,1.0]").getAsJsonArray();
+		assertSame(interner.intern(values.get(0)), interner.intern(values.get(1)), "Equal subtrees should be shared");
+		assertNotSame(interner.intern(values.get(2)), interner.intern(values.get(3)), "Numbers with different text should not be shared");
+		assertEquals("[{\"a\":[1]},{\"a\":[1]},1,1.0]", interner.intern(values).toString());
+	}
+
+	@Test
+	void testPatchInternerSharing() {
+		// The data source sees the patches' own type strings and values, so it can tell whether they are shared.
+		final List<String> types = new ArrayList<>();
+		final List<JsonElement> values = new ArrayList<>();
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().patchedExtensions(true).dataSource((type, from, value) -> {
+			types.add(type);
+			values.add(value);
+			return new JsonPrimitive(true);
+		});
+
+		final String src = "{\"op\": \"paste\", \"path\": \"/key/S\", \"type\": \"recipe\", \"value\": {\"item\": \"minecraft:stone\", \"count\": 1}}";
+		final Gson interning = Patches.patchGson(true, true, new PatchInterner()).create();
+		final Gson plain = Patches.patchGson(true, true).create();
+
+		for (Gson gson : List.of(interning, interning, plain, plain))
+			Patches.readPatch(gson, src).patch(new JsonDocument(JsonParser.parseString("{\"key\": {}}")), context);
+
+		assertSame(types.get(0), types.get(1), "Patches loaded with the same interner should share strings");
+		assertSame(values.get(0), values.get(1), "Patches loaded with the same interner should share values");
+		assertNotSame(values.get(2), values.get(3));
+		assertEquals(values.get(2), values.get(3));
+	}
+
+	@Test
+	void testFindIndex() {
+		final JsonArray arr = new JsonArray();
+		for (int i = 0; i < 100; i++)
+			arr.add(JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\", \"n\": " + (i % 7) + ", \"sub\": {\"x\": " + (i % 3) + "}}"));
+
+		final String src = """
+				[
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item3"}, "then": {"op": "replace", "path": "/n", "value": -1}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item4"}, "then": {"op": "replace", "path": "/n", "value": -2}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": [{"path": "/n", "value": 1.0}, {"path": "/id", "value": "item1"}], "then": {"op": "add", "path": "/hit", "value": true}},
+				  {"op": "find", "path": "/arr", "test": {"path": "/n", "value": 1}, "then": {"op": "replace", "path": "/n", "value": 2}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/n", "value": 1}, "then": {"op": "add", "path": "/hit2", "value": true}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item5"}, "then": {"op": "remove", "path": ""}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item6"}, "then": {"op": "replace", "path": "/id", "value": "item7"}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item7"}, "then": {"op": "remove", "path": "/sub"}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/sub/x", "value": 2}, "then": {"op": "add", "path": "/hit3", "value": true}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/sub/x", "value": 2}, "then": {"op": "replace", "path": "/sub", "value": {"x": 5}}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/sub/x", "value": 5}, "then": {"op": "add", "path": "/hit4", "value": true}}
+				]
+				""";
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true);
+
+		// Patches applied separately don't share a session, so they never use an index.
+		final JsonDocument expected = new JsonDocument(JsonParser.parseString("{}"));
+		expected.getRoot().getAsJsonObject().add("arr", arr.deepCopy());
+		for (JsonElement elem : JsonParser.parseString(src).getAsJsonArray())
+			Patches.readPatch(PatchingTests.GSON, elem).patch(expected, context);
+
+		final JsonDocument actual = new JsonDocument(JsonParser.parseString("{}"));
+		actual.getRoot().getAsJsonObject().add("arr", arr.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(actual, context);
+
+		assertEquals(expected.getRoot(), actual.getRoot());
+	}
+
+	@Test
+	void testFindIndexWithCustomPatch() {
+		final JsonArray arr = new JsonArray();
+		for (int i = 0; i < 100; i++)
+			arr.add(JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\"}"));
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().patchedExtensions(true);
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString("{}"));
+		doc.getRoot().getAsJsonObject().add("arr", arr);
+
+		// The first two finds build an index of the ids, which the custom patch then changes without reporting it.
+		PatchUtil.compound(
+				Patches.readPatch(PatchingTests.GSON, "{\"op\": \"find\", \"path\": \"/arr\", \"test\": {\"path\": \"/id\", \"value\": \"item1\"}, \"then\": {\"op\": \"add\", \"path\": \"/a\", \"value\": 1}}"),
+				Patches.readPatch(PatchingTests.GSON, "{\"op\": \"find\", \"path\": \"/arr\", \"test\": {\"path\": \"/id\", \"value\": \"item2\"}, \"then\": {\"op\": \"add\", \"path\": \"/b\", \"value\": 1}}"),
+				new RenameAllPatch(),
+				Patches.readPatch(PatchingTests.GSON, "{\"op\": \"find\", \"path\": \"/arr\", \"multi\": true, \"test\": {\"path\": \"/id\", \"value\": \"renamed\"}, \"then\": {\"op\": \"add\", \"path\": \"/hit\", \"value\": true}}"))
+				.patch(doc, context);
+
+		for (JsonElement elem : arr)
+			assertTrue(elem.getAsJsonObject().has("hit"), () -> "Missed " + elem);
+	}
+
+	@Test
+	void testParallelFind() {
+		final JsonObject root = new JsonObject();
+		final JsonArray arr = new JsonArray();
+		final JsonObject obj = new JsonObject();
+		for (int i = 0; i < 500; i++) {
+			arr.add(JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\", \"n\": " + (i % 7) + "}"));
+			obj.add("key" + i, JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\", \"n\": " + (i % 7) + "}"));
+		}
+		root.add("arr", arr);
+		root.add("obj", obj);
+
+		final String src = """
+				[
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item3"}, "then": {"op": "replace", "path": "/n", "value": -1}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item5"}, "then": {"op": "remove", "path": ""}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"type": "even", "path": "/n"}, "then": {"op": "replace", "path": "", "value": {"id": "even"}}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item1"}, "then": {"op": "remove", "path": "^/arr/0"}},
+				  {"op": "find", "path": "/arr", "test": {"path": "/n", "value": 3}, "then": {"op": "add", "path": "/hit", "value": true}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"path": "/id", "value": "item2"}, "then": {"op": "remove", "path": ""}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"type": "even", "path": "/n"}, "then": {"op": "add", "path": "/hit", "value": true}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"path": "/id", "value": "item4"}, "then": [{"op": "add", "path": "/hit4", "value": true}, {"op": "replace", "path": "^/obj/key499/id", "value": "item4"}]}
+				]
+				""";
+
+		final Thread caller = Thread.currentThread();
+		final ImmutablePatchContext base = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true)
+				.testEvaluator(new ITestEvaluator() {
+					@Override
+					public boolean test(JsonElement root, String type, @Nullable JsonElement target, @Nullable JsonElement value, PatchContext context) {
+						return target != null && target.getAsInt() % 2 == 0;
+					}
+
+					@Override
+					public boolean isSideEffectFree(String type) {
+						return true;
+					}
+				});
+
+		final JsonDocument expected = new JsonDocument(root.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(expected, base);
+
+		final JsonDocument actual = new JsonDocument(root.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(actual, base.parallelFindThreshold(16));
+
+		assertEquals(expected.getRoot(), actual.getRoot());
+
+		// Evaluators that aren't side-effect-free must only ever be called from the thread applying the patch.
+		final JsonDocument serial = new JsonDocument(root.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(serial, base.parallelFindThreshold(16).testEvaluator((r, type, target, value, context) -> {
+			assertSame(caller, Thread.currentThread());
+			return target != null && target.getAsInt() % 2 == 0;
+		}));
+
+		assertEquals(expected.getRoot(), serial.getRoot());
+	}
+
+	@Test
+	void testParallelFindPatching() {
+		final JsonObject root = new JsonObject();
+		final JsonArray arr = new JsonArray();
+		final JsonObject obj = new JsonObject();
+		for (int i = 0; i < 300; i++) {
+			arr.add(JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\", \"n\": " + (i % 7) + ", \"tags\": [{\"t\": \"a\"}, {\"t\": \"b\"}, {\"t\": \"c\"}]}"));
+			obj.add("key" + i, JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\", \"n\": " + (i % 7) + "}"));
+		}
+		root.add("arr", arr);
+		root.add("obj", obj);
+
+		final String src = """
+				[
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item3"}, "then": [
+				    {"op": "replace", "path": "/n", "value": -1},
+				    {"op": "copy", "from": "/id", "path": "/old"},
+				    {"op": "find", "path": "/tags", "multi": true, "test": {"path": "/t", "value": "b"}, "then": {"op": "add", "path": "/x", "value": 1}}
+				  ]},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/n", "value": 2}, "then": [
+				    {"op": "test", "path": "/id", "value": "item2"},
+				    {"op": "remove", "path": "/tags/0"},
+				    {"op": "move", "from": "/id", "path": "/moved"}
+				  ]},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/n", "value": 4}, "then": {"op": "remove", "path": "/tags/1"}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"path": "/id", "value": "item2"}, "then": {"op": "remove", "path": "/n"}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"path": "/n", "value": 1}, "then": {"op": "add", "path": "/hit", "value": true}}
+				]
+				""";
+
+		final ImmutablePatchContext base = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true);
+
+		final PatchAudit expectedAudit = new PatchAudit("serial");
+		final JsonDocument expected = new JsonDocument(root.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(expected, base.audit(expectedAudit));
+
+		final PatchAudit actualAudit = new PatchAudit("serial");
+		final JsonDocument actual = new JsonDocument(root.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(actual, base.parallelFindThreshold(16).audit(actualAudit));
+
+		assertEquals(expected.getRoot(), actual.getRoot());
+		assertEquals(expectedAudit.toString(expected.getRoot()), actualAudit.toString(actual.getRoot()));
+
+		// The first failure is reported, regardless of which thread got to it first.
+		final JsonPatch failing = Patches.readPatch(PatchingTests.GSON, """
+				{"op": "find", "path": "/arr", "multi": true, "test": {"path": "/n", "value": 3}, "then": {"op": "remove", "path": "/missing"}}
+				""");
+
+		final Exception expectedError = assertThrows(TraversalException.class, () -> failing.patch(new JsonDocument(root.deepCopy()), base));
+		final Exception actualError = assertThrows(TraversalException.class, () -> failing.patch(new JsonDocument(root.deepCopy()), base.parallelFindThreshold(16)));
+		assertEquals(expectedError.getMessage(), actualError.getMessage());
+	}
+
+	@Test
+	void testParallelFindWithIndex() {
+		final JsonObject root = new JsonObject();
+		final JsonArray arr = new JsonArray();
+		final JsonObject obj = new JsonObject();
+		for (int i = 0; i < 200; i++) {
+			arr.add(JsonParser.parseString("{\"id\": \"item" + (i % 10) + "\"}"));
+			obj.add("key" + i, JsonParser.parseString("{\"n\": " + (i % 3) + ", \"tags\": [{\"t\": \"a\"}, {\"t\": \"b\"}, {\"t\": \"b\"}]}"));
+		}
+		root.add("arr", arr);
+		root.add("obj", obj);
+
+		// The first find caches an index of /arr in the session, which the finds tested and patched in parallel
+		// (each building indexes of their own) must leave alone, so that the last find can still use it.
+		final String src = """
+				[
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item3"}, "then": {"op": "add", "path": "/hit", "value": 1}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"path": "/n", "value": 1}, "then":
+				    {"op": "find", "path": "/tags", "multi": true, "test": {"path": "/t", "value": "b"}, "then": {"op": "add", "path": "/x", "value": true}}},
+				  {"op": "find", "path": "/obj", "multi": true, "test": {"path": "/tags/0/t", "value": "a"}, "then": {"op": "remove", "path": "/tags/0"}},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": "item3"}, "then": {"op": "add", "path": "/hit", "value": 2}}
+				]
+				""";
+
+		final ImmutablePatchContext base = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true);
+
+		final JsonDocument expected = new JsonDocument(root.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(expected, base);
+
+		for (int i = 0; i < 10; i++) {
+			final JsonDocument actual = new JsonDocument(root.deepCopy());
+			Patches.readPatch(PatchingTests.GSON, src).patch(actual, base.parallelFindThreshold(1));
+			assertEquals(expected.getRoot(), actual.getRoot());
+		}
+	}
+
+	@Test
+	void testFindEntrySnapshot() {
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString("{\"log\": [], \"obj\": {\"a\": {\"n\": 1}, \"b\": {\"n\": 1}, \"c\": {\"n\": 1}}}"));
+
+		// "c" is removed while patching "a", so it must not be found afterwards.
+		Patches.readPatch(PatchingTests.GSON, """
+				{"op": "find", "path": "/obj", "multi": true, "test": {"path": "/n", "value": 1}, "then": [
+				  {"op": "add", "path": "^/log/-", "value": 1},
+				  {"op": "test", "path": "^/obj/c"},
+				  {"op": "remove", "path": "^/obj/c"}
+				]}
+				""").patch(doc, ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true));
+
+		assertEquals(JsonParser.parseString("{\"log\": [1, 1], \"obj\": {\"a\": {\"n\": 1}, \"b\": {\"n\": 1}}}"), doc.getRoot());
+	}
+
+	@Test
+	void testAdaptiveTestOrder() {
+		final JsonArray arr = new JsonArray();
+		for (int i = 0; i < 1000; i++)
+			arr.add(JsonParser.parseString("{\"id\": \"item" + (i % 50) + "\"}"));
+
+		final AtomicInteger calls = new AtomicInteger();
+		final ITestEvaluator evaluator = new ITestEvaluator() {
+			@Override
+			public boolean test(JsonElement root, String type, @Nullable JsonElement target, @Nullable JsonElement value, PatchContext context) {
+				calls.incrementAndGet();
+				return true;
+			}
+
+			@Override
+			public boolean isSideEffectFree(String type) {
+				return true;
+			}
+		};
+
+		final String src = """
+				{"op": "find", "path": "", "multi": true, "test": [{"type": "slow"}, {"path": "/id", "value": "item7"}], "then": {"op": "add", "path": "/hit", "value": true}}
+				""";
+		final ImmutablePatchContext base = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true).testEvaluator(evaluator);
+
+		final JsonDocument expected = new JsonDocument(arr.deepCopy());
+		Patches.readPatch(PatchingTests.GSON, src).patch(expected, base);
+		assertEquals(1000, calls.getAndSet(0));
+
+		final FindPatch patch = (FindPatch) Patches.readPatch(PatchingTests.GSON, src);
+		final JsonDocument actual = new JsonDocument(arr.deepCopy());
+		patch.patch(actual, base.adaptiveTestOrder(true));
+
+		assertEquals(expected.getRoot(), actual.getRoot());
+		// After the first few children, the selective test should be evaluated first.
+		assertTrue(calls.get() < 200, "custom test evaluated " + calls.get() + " times");
+
+		final List<TestStatistics> stats = patch.testStatistics();
+		assertEquals(2, stats.size());
+		assertEquals((long) calls.get(), stats.get(0).evaluations());
+		assertEquals(1.0, stats.get(0).passRate());
+		assertEquals(1000L, stats.get(1).evaluations());
+		assertEquals(20L, stats.get(1).passes());
+
+		// Failing tests must throw in declaration order, so nothing is reordered.
+		calls.set(0);
+		assertThrows(PatchingException.class, () -> patch.patch(new JsonDocument(arr.deepCopy()), base.adaptiveTestOrder(true).throwOnFailedTest(true)));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void testFold() {
+		final AtomicInteger calls = new AtomicInteger();
+		final ITestEvaluator evaluator = new ITestEvaluator() {
+			@Override
+			public boolean test(JsonElement root, String type, @Nullable JsonElement target, @Nullable JsonElement value, PatchContext context) {
+				calls.incrementAndGet();
+				return type.equals("loaded") ? value.getAsString().equals("present") : target != null;
+			}
+
+			@Override
+			public boolean isDocumentIndependent(String type) {
+				return type.equals("loaded");
+			}
+		};
+
+		final String src = """
+				[
+				  {"op": "test", "type": "loaded", "value": "present"},
+				  {"op": "add", "path": "/a", "value": 1},
+				  {"op": "find", "path": "/arr", "multi": true, "test": [{"type": "loaded", "value": "present"}, {"path": "/id", "value": 1}], "then": {"op": "add", "path": "/hit", "value": true}},
+				  {"op": "find", "path": "/arr", "test": {"type": "loaded", "value": "absent"}, "then": {"op": "remove", "path": ""}},
+				  {"op": "find", "path": "/arr", "test": {"path": "/id", "value": 2}, "then": [{"op": "test", "type": "loaded", "value": "absent"}, {"op": "remove", "path": ""}]},
+				  {"op": "test", "type": "other", "path": "/a"},
+				  {"op": "test", "type": "loaded", "value": "absent"},
+				  {"op": "add", "path": "/b", "value": 2}
+				]
+				""";
+		final String expected = """
+				[\
+				{"op":"add","path":"/a","value":1},\
+				{"op":"find","path":"/arr","multi":true,"test":{"path":"/id","value":1},"then":{"op":"add","path":"/hit","value":true}},\
+				{"op":"test","type":"other","path":"/a"}\
+				]""";
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true).testEvaluator(evaluator);
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, src);
+		final JsonPatch folded = PatchUtil.fold(patch, context);
+
+		assertEquals(JsonParser.parseString(expected), PatchingTests.GSON.toJsonTree(folded));
+		assertSame(folded, PatchUtil.fold(folded, context));
+
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString("{\"arr\": [{\"id\": 1}, {\"id\": 2}]}"));
+		final JsonDocument foldedDoc = new JsonDocument(doc.getRoot().deepCopy());
+		patch.patch(doc, context);
+
+		calls.set(0);
+		folded.patch(foldedDoc, context);
+		assertEquals(doc.getRoot(), foldedDoc.getRoot());
+		assertEquals(1, calls.get());
+
+		// Failing tests must still throw when they're reached.
+		final JsonPatch strict = PatchUtil.fold(patch, context.throwOnFailedTest(true));
+		assertTrue(PatchingTests.GSON.toJson(strict).contains("absent"));
+	}
+
+	@Test
+	void testCompiledTests() {
+		final AtomicInteger compiles = new AtomicInteger();
+		final ITestEvaluator evaluator = new ITestEvaluator() {
+			@Override
+			public boolean test(JsonElement root, String type, @Nullable JsonElement target, @Nullable JsonElement value, PatchContext context) {
+				throw new AssertionError("Compiled tests should be used instead");
+			}
+
+			@Override
+			public CompiledTest compile(String type, @Nullable JsonElement value) {
+				compiles.incrementAndGet();
+				final int min = value.getAsInt();
+				return (root, target, context) -> target.getAsInt() >= min;
+			}
+		};
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().patchedExtensions(true).testEvaluator(evaluator);
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				{"op": "find", "path": "/arr", "multi": true, "test": {"type": "atleast", "path": "/n", "value": 3}, "then": {"op": "add", "path": "/big", "value": true}}
+				""");
+
+		PatchUtil.compileTests(patch, evaluator);
+		assertEquals(1, compiles.get());
+
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString("{\"arr\": [{\"n\": 1}, {\"n\": 3}, {\"n\": 5}]}"));
+		patch.patch(doc, context);
+		patch.patch(new JsonDocument(doc.getRoot().deepCopy()), context);
+
+		assertEquals(JsonParser.parseString("{\"arr\": [{\"n\": 1}, {\"n\": 3, \"big\": true}, {\"n\": 5, \"big\": true}]}"), doc.getRoot());
+		assertEquals(1, compiles.get());
+
+		// A different evaluator compiles the test again.
+		final ITestEvaluator simple = (root, type, target, value, ctx) -> target.getAsInt() == value.getAsInt();
+		final JsonDocument other = new JsonDocument(JsonParser.parseString("{\"arr\": [{\"n\": 1}, {\"n\": 3}]}"));
+		patch.patch(other, context.testEvaluator(simple));
+		assertEquals(JsonParser.parseString("{\"arr\": [{\"n\": 1}, {\"n\": 3, \"big\": true}]}"), other.getRoot());
+	}
+
+	@Test
+	void testValueShapes() {
+		final String[][] cases = {
+				// value, target, expected
+				{ "1", "1.0", "true" },
+				{ "1", "1e0", "true" },
+				{ "1", "2", "false" },
+				{ "1", "\"1\"", "false" },
+				{ "\"abc\"", "\"abc\"", "true" },
+				{ "\"abc\"", "\"abd\"", "false" },
+				{ "true", "false", "false" },
+				{ "null", "null", "true" },
+				{ "[1, [2, 3]]", "[1, [2, 3]]", "true" },
+				{ "[1, [2, 3]]", "[1, [2, 4]]", "false" },
+				{ "[1, [2, 3]]", "[1, [2]]", "false" },
+				{ "{\"a\": 1, \"b\": {\"c\": [1]}}", "{\"b\": {\"c\": [1]}, \"a\": 1.0}", "true" },
+				{ "{\"a\": 1, \"b\": {\"c\": [1]}}", "{\"a\": 1, \"b\": {\"c\": [2]}}", "false" },
+				{ "{\"a\": {\"b\": {\"c\": {\"d\": 1}}}}", "{\"a\": {\"b\": {\"c\": {\"d\": 2}}}}", "false" },
+				{ "{\"a\": null}", "{\"b\": null}", "false" },
+		};
+
+		for (String[] c : cases) {
+			final TestPatch test = PatchUtil.test("/v", JsonParser.parseString(c[0]), false);
+			final JsonDocument doc = new JsonDocument(JsonParser.parseString("{\"v\": " + c[1] + "}"));
+			final ElementContext root = new ElementContexts.Document(ImmutablePatchContext.newContext(), null, doc);
+
+			assertEquals(Boolean.parseBoolean(c[2]), test.test(root), c[0] + " == " + c[1]);
+		}
+	}
+
+	@Test
+	void testPatchMetrics() {
+		final PatchMetrics metrics = new PatchMetrics();
+		final JsonPatch included = Patches.readPatch(PatchingTests.GSON, "{\"op\": \"add\", \"path\": \"/included\", \"value\": {\"a\": 1}}");
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "test", "path": "/arr"},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": 1}, "then": {"op": "add", "path": "/hit", "value": true}},
+				  {"op": "include", "path": "inc"}
+				]
+				""");
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true)
+				.fileAccess(path -> included).metrics(metrics.forSource("main"));
+		patch.patch(new JsonDocument(JsonParser.parseString("{\"arr\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 1}]}")), context);
+
+		final Map<String, PatchMetrics.Stats> ops = metrics.operations();
+		assertEquals(Set.of("test", "find", "add", "include"), ops.keySet());
+
+		// One top-level test, plus one per child of the array.
+		assertEquals(4L, ops.get("test").count());
+		assertEquals(3L, ops.get("test").passed());
+		assertEquals(1L, ops.get("test").failed());
+
+		// The two hits, and the included patch.
+		assertEquals(3L, ops.get("add").count());
+		assertEquals(3L, ops.get("add").copied());
+		assertEquals(ops.get("add").count(), ops.get("add").latencies().count());
+
+		assertEquals(Set.of("main", "inc"), metrics.sources().keySet());
+		assertEquals(3L, metrics.sources().get("main").count());
+		assertEquals(1L, metrics.sources().get("inc").count());
+		// The find's own path, the test's path in each child, and the add's path in each hit.
+		assertEquals(6L, ops.get("find").traversed());
+
+		// Parallel finds count the same as serial ones.
+		final PatchMetrics parallel = new PatchMetrics();
+		patch.patch(new JsonDocument(JsonParser.parseString("{\"arr\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 1}]}")),
+				context.metrics(parallel.forSource("main")).parallelFindThreshold(1));
+		assertEquals(4L, parallel.operations().get("test").count());
+		assertEquals(6L, parallel.operations().get("find").traversed());
+	}
+
+	@Test
+	void testPatchProfiler() {
+		final PatchProfiler profiler = new PatchProfiler();
+		final JsonPatch included = Patches.readPatch(PatchingTests.GSON, "{\"op\": \"add\", \"path\": \"/included\", \"value\": {\"a\": [1, 2]}}");
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "/id", "value": 1}, "then": {"op": "add", "path": "/hit", "value": [true]}},
+				  {"op": "include", "path": "inc"}
+				]
+				""");
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true)
+				.fileAccess(path -> included).audit(new PatchAudit("main")).metrics(profiler);
+
+		for (int i = 0; i < 2; i++)
+			patch.patch(new JsonDocument(JsonParser.parseString("{\"arr\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 1}]}")), context);
+
+		final PatchProfiler.Report report = profiler.report(10);
+		assertEquals(Set.of("main", "inc"), Set.copyOf(report.slowestFiles().stream().map(PatchProfiler.Entry::name).toList()));
+		assertTrue(report.slowestFiles().get(0).nanos() >= report.slowestFiles().get(1).nanos(), "Files should be sorted by time");
+
+		// Not every JVM can measure allocations.
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+				&& threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+			assertTrue(report.slowestFiles().get(0).allocated() > 0, "Allocations should be measured");
+
+		assertEquals(1, report.slowestFinds().size());
+		final PatchProfiler.Entry find = report.slowestFinds().get(0);
+		assertEquals("main find /arr", find.name());
+		assertEquals(2L, find.count());
+		assertEquals(4L, find.copied());
+
+		// Two hits per document for the find's add, but only one for the included add.
+		assertEquals(List.of("main add /hit", "inc add /included"), report.biggestCopies().stream().map(PatchProfiler.Entry::name).toList());
+		assertEquals(2L, report.biggestCopies().get(1).copied());
+
+		assertEquals(1, profiler.report(1).slowestFiles().size());
+		assertEquals("main find /arr", report.toJson().getAsJsonArray("slowestFinds").get(0).getAsJsonObject().get("name").getAsString());
+		assertTrue(report.toString().contains("Slowest finds:\n"), "Text report should have sections");
+	}
+
+	@Test
+	void testMutationListener() {
+		final List<String> mutations = new ArrayList<>();
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "add", "path": "/a~1b", "value": 1},
+				  {"op": "add", "path": "/a~1b", "value": 2},
+				  {"op": "add", "path": "/arr/1", "value": "x"},
+				  {"op": "replace", "path": "/arr/0", "value": "y"},
+				  {"op": "move", "from": "/arr/2", "path": "/moved"},
+				  {"op": "find", "path": "/arr", "multi": true, "test": {"path": "", "value": "x"}, "then": {"op": "remove", "path": ""}}
+				]
+				""");
+
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString("{\"arr\": [1, 2]}"));
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true).parallelFindThreshold(1)
+				.mutationListener(m -> {
+					assertSame(doc, m.doc());
+					mutations.add(m.type() + " " + m.path() + " " + m.oldValue() + " " + m.newValue());
+				});
+
+		patch.patch(doc, context);
+
+		assertEquals(List.of(
+				"ADD /a~1b null 1",
+				"REPLACE /a~1b 1 2",
+				"ADD /arr/1 null \"x\"",
+				"REPLACE /arr/0 1 \"y\"",
+				"REMOVE /arr/2 2 null",
+				"ADD /moved null 2",
+				"REMOVE /arr/1 \"x\" null"), mutations);
+	}
+
+	@Test
+	void testChangeSet() {
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "replace", "path": "/a/b/c", "value": {"new": [1, 2]}},
+				  {"op": "add", "path": "/a/b/c/d", "value": true},
+				  {"op": "add", "path": "/list/-", "value": {"x": "y"}},
+				  {"op": "remove", "path": "/obj/x~1y"},
+				  {"op": "replace", "path": "/list/0", "value": 0},
+				  {"op": "test", "path": "/untouched", "value": "same"}
+				]
+				""");
+
+		final String original = "{\"untouched\": \"same\", \"a\": {\"b\": {\"c\": 1, \"e\": 2}}, \"list\": [1, [2]], \"obj\": {\"x/y\": 1, \"z\": 2}}";
+		final Gson pretty = new GsonBuilder().setPrettyPrinting().create();
+		final Gson compact = new Gson();
+
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString(original));
+		final String previousPretty = pretty.toJson(doc.getRoot());
+		final String previousCompact = compact.toJson(doc.getRoot());
+
+		final ChangeSet changes = patch.patchTracked(doc, ImmutablePatchContext.newContext().testExtensions(true));
+		assertEquals(List.of("/a/b/c", "/list", "/obj"), changes.roots());
+
+		assertEquals(pretty.toJson(doc.getRoot()), changes.splice(previousPretty, doc, pretty));
+		assertEquals(compact.toJson(doc.getRoot()), changes.splice(previousCompact, doc, compact));
+
+		final ChangeSet none = Patches.readPatch(PatchingTests.GSON, "[]").patchTracked(doc, ImmutablePatchContext.newContext());
+		assertTrue(none.isEmpty(), "Nothing should have changed");
+		assertSame(previousCompact, none.splice(previousCompact, doc, compact));
+
+		assertThrows(IllegalArgumentException.class, () -> changes.splice("{\"a\": 1}", doc, compact));
+	}
+
+	@Test
+	void testTransactionalPatch() {
+		final JsonPatch failing = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "remove", "path": "/obj/b"},
+				  {"op": "add", "path": "/obj/b", "value": "new"},
+				  {"op": "add", "path": "/obj/d", "value": 4},
+				  {"op": "move", "from": "/arr/0", "path": "/arr/-"},
+				  {"op": "replace", "path": "/arr/1", "value": {"x": 1}},
+				  {"op": "add", "path": "/arr/0", "value": 0},
+				  {"op": "remove", "path": "/obj/c"},
+				  {"op": "replace", "path": "", "value": []},
+				  {"op": "remove", "path": "/missing"}
+				]
+				""");
+
+		final JsonElement original = JsonParser.parseString("{\"obj\": {\"a\": 1, \"b\": 2, \"c\": 3}, \"arr\": [1, 2, 3]}");
+		final JsonDocument doc = new JsonDocument(original.deepCopy());
+		final PatchAudit audit = new PatchAudit("main");
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().audit(audit);
+
+		assertThrows(PatchingException.class, () -> failing.patchTransactional(doc, context));
+		// Compare the text too, since member order doesn't matter for equality.
+		assertEquals(original.toString(), doc.getRoot().toString());
+		assertFalse(audit.hasRecords(), "Audit should be untouched");
+
+		// Errors are rolled back too.
+		final JsonPatch erroring = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "remove", "path": "/obj/a"},
+				  {"op": "test", "type": "overflow", "path": "/obj"}
+				]
+				""");
+		assertThrows(StackOverflowError.class, () -> erroring.patchTransactional(doc, context.testEvaluator((root, type, target, value, ctx) -> {
+			throw new StackOverflowError();
+		})));
+		assertEquals(original.toString(), doc.getRoot().toString());
+
+		final JsonPatch succeeding = Patches.readPatch(PatchingTests.GSON, "{\"op\": \"remove\", \"path\": \"/obj/a\"}");
+		succeeding.patchTransactional(doc, context);
+		assertEquals("{\"obj\":{\"b\":2,\"c\":3},\"arr\":[1,2,3]}", doc.getRoot().toString());
+		assertTrue(audit.toString(doc.getRoot()).contains("removed by main"), "Audit should have been merged");
+	}
+
+	@Test
+	void testDryRun() {
+		final JsonElement original = JsonParser.parseString("{\"obj\": {\"a\": 1, \"b\": 2}, \"arr\": [1, 2, 3]}");
+		final JsonDocument doc = new JsonDocument(original.deepCopy());
+		final JsonElement root = doc.getRoot();
+		final List<String> reported = new ArrayList<>();
+		final PatchMetrics metrics = new PatchMetrics();
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).mutationListener(m -> reported.add(m.path())).metrics(metrics);
+
+		final DryRun success = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "remove", "path": "/obj/a"},
+				  {"op": "add", "path": "/arr/0", "value": 0},
+				  {"op": "test", "path": "/arr/0", "value": 0}
+				]
+				""").dryRun(doc, context);
+
+		assertTrue(success.succeeded(), "Patch should succeed");
+		assertEquals(List.of("/obj/a", "/arr/0"), success.mutations().stream().map(IMutationListener.Mutation::path).toList());
+		assertEquals(List.of("/arr", "/obj"), success.changes().roots());
+
+		final DryRun failure = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "replace", "path": "/obj/b", "value": 3},
+				  {"op": "remove", "path": "/missing"}
+				]
+				""").dryRun(doc, context);
+
+		assertFalse(failure.succeeded(), "Patch should fail");
+		assertTrue(failure.failure() instanceof PatchingException, "Failure should be a PatchingException");
+		assertEquals(List.of("/obj/b"), failure.changes().roots());
+
+		// Nothing is kept, and the document is modified in place rather than copied.
+		assertSame(root, doc.getRoot());
+		assertEquals(original.toString(), doc.getRoot().toString());
+		assertEquals(List.of(), reported);
+		assertTrue(metrics.operations().isEmpty(), "Dry runs shouldn't be measured");
+	}
+
+	@Test
+	void testJsonDiff() {
+		final Gson gson = Patches.patchGson(false, false).create();
+
+		// An insertion in the middle of an array is a single add, and a changed element is only changed inside.
+		assertEquals("[{\"op\":\"add\",\"path\":\"/1\",\"value\":9},{\"op\":\"replace\",\"path\":\"/4/a\",\"value\":2}]",
+				gson.toJson(JsonDiff.diff(JsonParser.parseString("[1, 2, 3, {\"a\": 1, \"b\": 1}]"), JsonParser.parseString("[1, 9, 2, 3, {\"a\": 2, \"b\": 1}]"))));
+
+		// Moving an element is a single move, in arrays and objects alike.
+		assertEquals("[{\"op\":\"move\",\"path\":\"/4\",\"from\":\"/0\"}]",
+				gson.toJson(JsonDiff.diff(JsonParser.parseString("[[0], 1, 2, 3, 4]"), JsonParser.parseString("[1, 2, 3, 4, [0]]"))));
+		assertEquals("[{\"op\":\"move\",\"path\":\"/c~1d\",\"from\":\"/a\"}]",
+				gson.toJson(JsonDiff.diff(JsonParser.parseString("{\"a\": {\"x\": 1}, \"b\": 2}"), JsonParser.parseString("{\"b\": 2, \"c/d\": {\"x\": 1}}"))));
+
+		assertEquals("[]", gson.toJson(JsonDiff.diff(JsonParser.parseString("{\"a\": [1]}"), JsonParser.parseString("{\"a\": [1]}"))));
+
+		// Random documents, with and without enough work to align arrays, must round-trip.
+		final Random random = new Random(42);
+		for (int iteration = 0; iteration < 500; iteration++) {
+			final JsonElement source = randomElement(random, 3);
+			final JsonElement target = mutate(random, source.deepCopy(), 3);
+
+			for (long maxWork : new long[] { JsonDiff.DEFAULT_MAX_WORK, 1 }) {
+				final String serialized = gson.toJson(JsonDiff.diff(source, target, maxWork));
+				final JsonDocument doc = new JsonDocument(source.deepCopy());
+				Patches.readPatch(gson, serialized).patch(doc, ImmutablePatchContext.newContext());
+				assertEquals(target, doc.getRoot(), "Diff of " + source + " -> " + target + ": " + serialized);
+			}
+		}
+	}
+
+	private static JsonElement randomElement(Random random, int depth) {
+		final int kind = random.nextInt(depth > 0 ? 5 : 3);
+
+		if (kind == 3) {
+			final JsonArray array = new JsonArray();
+			for (int i = random.nextInt(6); i > 0; i--) array.add(randomElement(random, depth - 1));
+			return array;
+		}
+
+		if (kind == 4) {
+			final JsonObject object = new JsonObject();
+			for (int i = random.nextInt(5); i > 0; i--) object.add("k" + random.nextInt(6), randomElement(random, depth - 1));
+			return object;
+		}
+
+		return kind == 0 ? new JsonPrimitive(random.nextInt(4)) : kind == 1 ? new JsonPrimitive("s" + random.nextInt(3)) : JsonNull.INSTANCE;
+	}
+
+	private static JsonElement mutate(Random random, JsonElement elem, int depth) {
+		if (random.nextInt(8) == 0) return randomElement(random, depth);
+
+		if (elem instanceof JsonArray array) {
+			for (int i = random.nextInt(4); i > 0; i--) {
+				final int op = random.nextInt(4);
+				if (op == 0 || array.isEmpty()) PatchUtil.add(array, random.nextInt(array.size() + 1), randomElement(random, depth - 1));
+				else if (op == 1) array.remove(random.nextInt(array.size()));
+				else if (op == 2) PatchUtil.add(array, random.nextInt(array.size()), array.remove(random.nextInt(array.size())));
+				else {
+					final int index = random.nextInt(array.size());
+					array.set(index, mutate(random, array.get(index), depth - 1));
+				}
+			}
+		} else if (elem instanceof JsonObject object) {
+			for (int i = random.nextInt(4); i > 0; i--) {
+				final List<String> keys = new ArrayList<>(object.keySet());
+				final int op = random.nextInt(3);
+				if (op == 0 || keys.isEmpty()) object.add("k" + random.nextInt(8), randomElement(random, depth - 1));
+				else if (op == 1) object.remove(keys.get(random.nextInt(keys.size())));
+				else {
+					final String key = keys.get(random.nextInt(keys.size()));
+					object.add(key, mutate(random, object.get(key), depth - 1));
+				}
+			}
+		}
+
+		return elem;
+	}
+
+	@Test
+	void testFlightRecorderEvents() throws IOException {
+		final JsonPatch included = Patches.readPatch(PatchingTests.GSON, "{\"op\": \"add\", \"path\": \"/included\", \"value\": 1}");
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "find", "path": "/arr", "test": {"path": "/id", "value": 2}, "then": {"op": "remove", "path": "/id"}},
+				  {"op": "include", "path": "inc"}
+				]
+				""");
+
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true)
+				.fileAccess(path -> included).audit(new PatchAudit("main"));
+		final Path file = Files.createTempFile("patched", ".jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable("net.enderturret.patched.Patch").withThreshold(Duration.ZERO);
+			recording.enable("net.enderturret.patched.Find").withThreshold(Duration.ZERO);
+			recording.enable("net.enderturret.patched.Include").withThreshold(Duration.ZERO);
+			recording.start();
+			patch.patch(new JsonDocument(JsonParser.parseString("{\"arr\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 3}]}")), context);
+			recording.stop();
+			recording.dump(file);
+
+			final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			final Map<String, List<RecordedEvent>> byName = new LinkedHashMap<>();
+			for (RecordedEvent event : events)
+				byName.computeIfAbsent(event.getEventType().getName(), k -> new ArrayList<>()).add(event);
+
+			// Compound patches aren't recorded, so: the find, the remove it applied, the include and the add it applied.
+			final List<RecordedEvent> applied = byName.get("net.enderturret.patched.Patch");
+			assertEquals(List.of("remove", "find", "add", "include"), applied.stream().map(e -> e.getString("operation")).toList());
+			assertEquals("/id", applied.get(0).getString("path"));
+			assertEquals("main", applied.get(1).getString("source"));
+			assertEquals("inc", applied.get(2).getString("source"));
+
+			final RecordedEvent find = byName.get("net.enderturret.patched.Find").get(0);
+			assertEquals("/arr", find.getString("path"));
+			// The find stops at the first match.
+			assertEquals(2, find.getInt("children"));
+			assertEquals(1, find.getInt("matches"));
+
+			final RecordedEvent include = byName.get("net.enderturret.patched.Include").get(0);
+			assertEquals("inc", include.getString("path"));
+			assertTrue(include.getBoolean("found"), "Include should be found");
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
 	@Test
 	void testAuditMethods() {
 		final ImmutablePatchContext context = ImmutablePatchContext.newContext();
@@ -137,6 +1055,19 @@ final class MiscTests {
 		assertEquals(context.context(), array.context());
 		assertEquals(context.doc(), array.doc());
 		assertEquals(context.elem(), array.elem());
+
+		// Placeholders are copy-on-write, so binding one in a derived context doesn't affect the context it was derived from.
+		final JsonSelector.PlaceholderSelector placeholder = new JsonSelector.PlaceholderSelector("slot", "{slot}");
+		final JsonSelector a = JsonSelector.of("/a"), c = JsonSelector.of("/c");
+		final ElementContext root = new ElementContexts.Document(context.context(), Map.of("slot", a), new JsonDocument(new JsonObject()));
+		final ElementContext child = root.child("b", JsonNull.INSTANCE);
+		assertSame(a, child.getPlaceholder(placeholder.slot()));
+
+		child.setPlaceholder("slot", c);
+		assertSame(c, child.getPlaceholder(placeholder.slot()));
+		assertSame(a, root.getPlaceholder("slot"));
+
+		assertThrows(IllegalArgumentException.class, () -> new JsonSelector.PlaceholderSelector("slot", "{slot}", placeholder.slot() + 1));
 	}
 
 	@Test
@@ -155,10 +1086,10 @@ final class MiscTests {
 	void testMutableContext() {
 		final ImmutablePatchContext expected = ImmutablePatchContext.newContext()
 				.testExtensions(true).patchedExtensions(true).throwOnOobAdd(true).throwOnFailedTest(true)
-				.testEvaluator(null).fileAccess(null).dataSource(null).audit(null);
+				.testEvaluator(null).fileAccess(null).dataSource(null).audit(null).parallelFindThreshold(64).adaptiveTestOrder(true).metrics(null).mutationListener(null);
 		final MutablePatchContext mutable = new MutablePatchContext()
 				.testExtensions(true).patchedExtensions(true).throwOnOobAdd(true).throwOnFailedTest(true)
-				.testEvaluator(null).fileAccess(null).dataSource(null).audit(null);
+				.testEvaluator(null).fileAccess(null).dataSource(null).audit(null).parallelFindThreshold(64).adaptiveTestOrder(true).metrics(null).mutationListener(null);
 
 		assertEquals(expected, mutable.asImmutableContext());
 		assertEquals(expected, new MutablePatchContext(expected).asImmutableContext());
@@ -201,4 +1132,167 @@ final class MiscTests {
 		assertFalse(JsonSelector.of("/a/b/c").isEmpty());
 		assertTrue(new JsonSelector.CompoundSelector(new JsonSelector[0], false).isEmpty());
 	}
-}
\ No newline at end of file
+
+	@Test
+	void testStreamingPatch() throws IOException {
+		final String source = "{\"a\": {\"b\": 1.50, \"c\": [1, 2, 3]}, \"d\": [{\"e\": true}, null], \"f\": \"x\"}";
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).throwOnFailedTest(true);
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "test", "path": "/d/0", "value": {"e": true}},
+				  {"op": "replace", "path": "/a/b", "value": [2]},
+				  {"op": "add", "path": "/a/c/3", "value": 4},
+				  {"op": "remove", "path": "/f"},
+				  {"op": "add", "path": "/g", "value": {"h": 1}},
+				  {"op": "add", "path": "/d/1", "value": "y"}
+				]
+				""");
+
+		final JsonDocument doc = new JsonDocument(JsonParser.parseString(source));
+		patch.patch(doc, context);
+
+		// Streaming gives the same result as patching the parsed document, and leaves everything else as it was written.
+		final String streamed = stream(StreamingPatch.of(patch, context), source);
+		assertEquals(doc.getRoot(), JsonParser.parseString(streamed));
+		assertEquals("{\"a\":{\"b\":[2],\"c\":[1,2,3,4]},\"d\":[{\"e\":true},\"y\",null],\"g\":{\"h\":1}}", streamed);
+		assertTrue(stream(StreamingPatch.of(PatchUtil.add("/x", new JsonPrimitive(1)), context), "{\"n\": 1.50}").contains("1.50"), "Numbers should be copied as written");
+
+		// Failures are reported the same way as when patching.
+		final StreamingPatch failingTest = StreamingPatch.of(PatchUtil.test("/d/0/e", new JsonPrimitive(false), false), context);
+		assertThrows(PatchingException.class, () -> stream(failingTest, source));
+		final StreamingPatch missing = StreamingPatch.of(PatchUtil.replace("/a/z", new JsonPrimitive(1)), context);
+		assertThrows(TraversalException.class, () -> stream(missing, source));
+		final StreamingPatch oob = StreamingPatch.of(PatchUtil.add("/a/c/9", new JsonPrimitive(1)), context);
+		assertThrows(TraversalException.class, () -> stream(oob, source));
+		assertEquals("{\"c\":[1,9]}", stream(StreamingPatch.of(PatchUtil.add("/c/9", new JsonPrimitive(9)), context.throwOnOobAdd(false)), "{\"c\": [1]}"));
+
+		// Patches that can't be streamed are refused up front.
+		assertThrows(PatchingException.class, () -> StreamingPatch.of(PatchUtil.add("/a/-", new JsonPrimitive(1)), context));
+		assertThrows(PatchingException.class, () -> StreamingPatch.of(PatchUtil.move("/a", "/b"), context));
+		assertThrows(PatchingException.class, () -> StreamingPatch.of(PatchUtil.compound(PatchUtil.remove("/a/b"), PatchUtil.add("/a", new JsonObject())), context));
+		assertThrows(PatchingException.class, () -> StreamingPatch.of(PatchUtil.compound(PatchUtil.remove("/c/0"), PatchUtil.replace("/c/2", JsonNull.INSTANCE)), context));
+		assertThrows(PatchingException.class, () -> StreamingPatch.of(PatchUtil.test("/a", new JsonObject(), false), context.throwOnFailedTest(false)));
+	}
+
+	@Test
+	void testLazyDocument() {
+		// The malformed "tru" is never loaded, so it's copied as-is.
+		final String source = "{\"big\": {\"x\": 1, \"y\": tru},\n \"obj\": {\"a\": 1,  \"b\": [1.50, 2]}, \"n\": null}";
+		final ImmutablePatchContext context = ImmutablePatchContext.newContext().testExtensions(true).patchedExtensions(true);
+		final LazyDocument doc = LazyDocument.of(source.getBytes(StandardCharsets.UTF_8));
+
+		doc.patch(PatchUtil.compound(), context);
+		assertEquals(source, doc.toString());
+
+		doc.patch(Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "test", "path": "/obj/b/0", "value": 1.5},
+				  {"op": "replace", "path": "/obj/a", "value": "\u00e9"}
+				]
+				"""), context);
+
+		// Only what changed is written again.
+		assertEquals("{\"big\":{\"x\": 1, \"y\": tru},\"obj\":{\"a\":\"\u00e9\",\"b\":[1.50, 2]},\"n\":null}", doc.toString());
+		assertEquals(new JsonPrimitive(1.5), doc.get("/obj/b/0"));
+		assertNull(doc.get("/obj/c"));
+		assertEquals("Absolute paths are not supported!", assertThrows(TraversalException.class, () -> doc.get("^/obj")).getMessage());
+
+		// Elements are only parsed when a patch looks inside them, and patches that may look anywhere load everything.
+		doc.patch(PatchUtil.remove("/big/x"), context);
+		assertEquals("{\"big\":{\"y\":tru},\"obj\":{\"a\":\"\u00e9\",\"b\":[1.50, 2]},\"n\":null}", doc.toString());
+		assertThrows(JsonSyntaxException.class, () -> doc.patch(PatchUtil.test("/big", new JsonObject(), false), context));
+		assertThrows(JsonSyntaxException.class, () -> doc.patch(PatchUtil.test("custom", "/n", null, false), context));
+		assertEquals("{\"big\":{\"y\":tru},\"obj\":{\"a\":\"\u00e9\",\"b\":[1.50, 2]},\"n\":null}", doc.toString());
+
+		// Numbers are parsed strictly, rather than being read as strings.
+		assertThrows(JsonSyntaxException.class, () -> LazyDocument.of("[1x]".getBytes(StandardCharsets.UTF_8)).get("/0"));
+		assertEquals(new JsonPrimitive(-500), LazyDocument.of("[-0.5e3]".getBytes(StandardCharsets.UTF_8)).get("/0"));
+
+		// Lazily patched documents match eagerly patched ones.
+		final String valid = "{\"a\": [1, {\"b\": [2, 3]}, 4], \"c\": {\"d\": \"e\", \"f\": [5]}, \"g\": 6}";
+		final JsonPatch patch = Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "add", "path": "/a/1/b/1", "value": 9},
+				  {"op": "remove", "path": "/c/d"},
+				  {"op": "move", "path": "/h", "from": "/g"},
+				  {"op": "find", "path": "/a", "test": {"path": "/b/0", "value": 2}, "then": {"op": "add", "path": "/z", "value": true}}
+				]
+				""");
+		assertEquals(List.of("/a/1/b/1", "/c/d", "/g", "/h", "/a"), patch.footprint(null).stream().map(path -> new CompoundSelector(path, false).toString()).toList());
+		final LazyDocument lazy = LazyDocument.of(valid.getBytes(StandardCharsets.UTF_8));
+		lazy.patch(patch, context);
+		final JsonDocument eager = new JsonDocument(JsonParser.parseString(valid));
+		patch.patch(eager, context);
+
+		assertEquals(eager.getRoot(), JsonParser.parseString(lazy.toString()));
+		assertEquals(eager.getRoot(), JsonParser.parseString(new String(lazy.toByteArray(), StandardCharsets.UTF_8)));
+
+		// Removing an element shifts the ones after it into paths that were loaded, so those must have been loaded too.
+		final LazyDocument shifted = LazyDocument.of("{\"l\": [{\"v\": 1}, {\"v\": 2}], \"m\": 3}".getBytes(StandardCharsets.UTF_8));
+		shifted.patch(Patches.readPatch(PatchingTests.GSON, """
+				[
+				  {"op": "remove", "path": "/l/0"},
+				  {"op": "test", "path": "/l/0/v", "value": 2}
+				]
+				"""), context.throwOnFailedTest(true));
+		assertEquals("{\"l\":[{\"v\": 2}],\"m\":3}", shifted.toString());
+
+		// Errors show what is actually in the document.
+		final TraversalException e = assertThrows(TraversalException.class, () -> shifted.patch(PatchUtil.remove("/l/v"), context));
+		assertEquals("/l/v: Expected object to find 'v' in, found [{\"v\":2}]!", e.getMessage());
+	}
+
+	private static String stream(StreamingPatch patch, String source) throws IOException {
+		final StringWriter writer = new StringWriter();
+		patch.apply(new JsonReader(new StringReader(source)), new JsonWriter(writer));
+		return writer.toString();
+	}
+
+	/**
+	 * A patch that modifies the document directly, without going through {@link PatchUtil}.
+	 */
+	private static final class RenameAllPatch extends JsonPatch {
+
+		RenameAllPatch() {
+			super("/arr");
+		}
+
+		@Override
+		protected String operation() {
+			return "rename_all";
+		}
+
+		@Override
+		public void patch(ElementContext root, PatchContext context) {
+			for (JsonElement elem : path.select(root, false).elem().getAsJsonArray())
+				elem.getAsJsonObject().addProperty("id", "renamed");
+		}
+	}
+
+	/**
+	 * A patch that only overrides the tree-based {@code write}, like those written before the streaming one existed.
+	 * It isn't anonymous, since Gson won't serialize anonymous classes.
+	 */
+	private static final class TreeOnlyPatch extends JsonPatch {
+
+		TreeOnlyPatch() {
+			super("/custom");
+		}
+
+		@Override
+		protected String operation() {
+			return "custom";
+		}
+
+		@Override
+		protected JsonElement write(JsonSerializationContext context, String omitOperation) {
+			final JsonObject obj = new JsonObject();
+			obj.addProperty("op", "custom");
+			obj.addProperty("written", "as a tree");
+			return obj;
+		}
+
+		@Override
+		public void patch(ElementContext root, PatchContext context) {}
+	}
+}
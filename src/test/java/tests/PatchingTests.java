@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -174,6 +175,8 @@ public final class PatchingTests {
 		if (test.doOutputTest)
 			assertEquals(input.patchSrc, GSON.toJson(patch));
 
+		assertEquals(GSON.toJson(patch), GSON.toJson(TestUtil.archive(patch)), "Patch changed after a round trip through a PatchArchive");
+
 		String expected = TestUtil.read(input.path() + "/result.json");
 		final JsonElement expectedElem = JsonParser.parseString(expected);
 
@@ -186,6 +189,14 @@ public final class PatchingTests {
 
 		// -----
 
+		{
+			final JsonDocument streamed = new JsonDocument(input.input().deepCopy());
+			assertDoesNotThrow(() -> Patches.applyPatch(gson, new StringReader(input.patchSrc), streamed, input.contexts()[1]));
+			assertEquals(expectedElem, streamed.getRoot());
+		}
+
+		// -----
+
 		final PatchAudit audit = new PatchAudit(test.path);
 		final JsonDocument doc = new JsonDocument(input.input());
 
@@ -1,11 +1,17 @@
 package tests.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import net.enderturret.patched.patch.JsonPatch;
+import net.enderturret.patched.patch.PatchArchive;
 
 import tests.PatchingTests;
 
@@ -44,4 +50,19 @@ public final class TestUtil {
 			throw new UncheckedIOException("Exception reading " + path + ":", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes the given patch to a {@link PatchArchive} and reads it back again.
+	 * @param patch The patch.
+	 * @return The patch, as read from the archive.
+	 */
+	public static JsonPatch archive(JsonPatch patch) {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			PatchArchive.write(Map.of("patch", patch), out);
+			return PatchArchive.read(ByteBuffer.wrap(out.toByteArray())).get("patch");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}